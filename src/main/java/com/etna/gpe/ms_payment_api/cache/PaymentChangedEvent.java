@@ -0,0 +1,12 @@
+package com.etna.gpe.ms_payment_api.cache;
+
+import java.util.UUID;
+
+/**
+ * Événement applicatif publié sur cette instance lorsqu'un paiement a changé (après le commit),
+ * ou lorsqu'une autre instance l'a signalé par le message d'invalidation du cache.
+ * @param paymentId ID du paiement
+ * @param appointmentId ID du rendez-vous du paiement, éventuellement null
+ */
+public record PaymentChangedEvent(UUID paymentId, UUID appointmentId) {
+}
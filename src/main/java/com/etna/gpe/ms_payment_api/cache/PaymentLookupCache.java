@@ -0,0 +1,160 @@
+package com.etna.gpe.ms_payment_api.cache;
+
+import com.etna.gpe.ms_payment_api.dto.PaymentCacheInvalidationDto;
+import com.etna.gpe.ms_payment_api.dto.PaymentView;
+import com.etna.gpe.ms_payment_api.entity.Payment;
+import com.etna.gpe.ms_payment_api.repositories.PaymentRepository;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.LoadingCache;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * Cache borné des paiements consultés par l'application pendant le checkout (polling par ID et par rendez-vous).
+ * Les entrées sont invalidées à chaque changement de statut, localement et sur les autres instances
+ * via un message diffusé sur l'exchange fanout d'invalidation ; la durée de vie borne l'obsolescence
+ * si un message d'invalidation est perdu. Chaque invalidation publie un PaymentChangedEvent sur l'instance
+ * concernée : les abonnés locaux sont notifiés même si la diffusion échoue.
+ * Le cache contient des copies immuables (PaymentView), jamais les entités managées : une entrée partagée
+ * entre requêtes ne peut pas être modifiée par l'une d'elles.
+ * Pour un rendez-vous ayant plusieurs paiements (paiement abandonné puis nouveau checkout), le plus récent est servi.
+ */
+@Component
+@Slf4j
+public class PaymentLookupCache {
+
+    public static final String BY_ID_CACHE_NAME = "payment.by-id";
+    public static final String BY_APPOINTMENT_CACHE_NAME = "payment.by-appointment";
+
+    private final RabbitTemplate rabbitTemplate;
+    private final ApplicationEventPublisher eventPublisher;
+    private final LoadingCache<UUID, Optional<PaymentView>> byId;
+    private final LoadingCache<UUID, Optional<PaymentView>> byAppointment;
+
+    /**
+     * Identifiant de cette instance : ses propres messages d'invalidation, déjà appliqués, sont ignorés.
+     */
+    private final String instanceId = UUID.randomUUID().toString();
+
+    @Value("${rabbitmq.exchange.cache-invalidation:payment.cache.invalidation}")
+    private String invalidationExchange;
+
+    @Autowired
+    public PaymentLookupCache(PaymentRepository paymentRepository, RabbitTemplate rabbitTemplate,
+                              ApplicationEventPublisher eventPublisher, MeterRegistry meterRegistry,
+                              @Value("${app.payments.cache.max-size:10000}") long maxSize,
+                              @Value("${app.payments.cache.ttl:30s}") Duration ttl) {
+        this.rabbitTemplate = rabbitTemplate;
+        this.eventPublisher = eventPublisher;
+        this.byId = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .build(paymentId -> paymentRepository.findById(paymentId).map(PaymentView::from));
+        this.byAppointment = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .build(appointmentId -> paymentRepository
+                        .findFirstByAppointmentIdOrderByCreatedAtDescIdDesc(appointmentId)
+                        .map(PaymentView::from));
+        CaffeineCacheMetrics.monitor(meterRegistry, byId, BY_ID_CACHE_NAME);
+        CaffeineCacheMetrics.monitor(meterRegistry, byAppointment, BY_APPOINTMENT_CACHE_NAME);
+    }
+
+    /**
+     * Retourne un paiement, en interrogeant la base uniquement en cas d'absence dans le cache.
+     * @param paymentId ID du paiement
+     * @return Le paiement, s'il existe
+     */
+    public Optional<PaymentView> getById(UUID paymentId) {
+        return byId.get(paymentId);
+    }
+
+    /**
+     * Retourne le paiement le plus récent d'un rendez-vous, en interrogeant la base uniquement en cas d'absence
+     * dans le cache.
+     * @param appointmentId ID du rendez-vous
+     * @return Le paiement, s'il existe
+     */
+    public Optional<PaymentView> getByAppointmentId(UUID appointmentId) {
+        return byAppointment.get(appointmentId);
+    }
+
+    /**
+     * Invalide les entrées d'un paiement sur toutes les instances.
+     * Dans une transaction, l'invalidation a lieu après le commit, pour qu'une lecture concurrente
+     * ne remette pas en cache l'état précédent.
+     * @param payment Le paiement modifié
+     */
+    public void invalidate(Payment payment) {
+        PaymentCacheInvalidationDto invalidation =
+                new PaymentCacheInvalidationDto(payment.getId(), payment.getAppointmentId(), instanceId);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    invalidateEverywhere(invalidation);
+                }
+            });
+        } else {
+            invalidateEverywhere(invalidation);
+        }
+    }
+
+    /**
+     * Applique un message d'invalidation reçu par l'exchange fanout : les entrées du paiement sont invalidées
+     * sur cette instance et ses abonnés notifiés. Les messages émis par cette instance sont ignorés.
+     * @param invalidation Le message d'invalidation
+     */
+    public void onRemoteInvalidation(PaymentCacheInvalidationDto invalidation) {
+        if (instanceId.equals(invalidation.getOrigin())) {
+            return;
+        }
+        evictAndNotify(invalidation);
+    }
+
+    private void evictAndNotify(PaymentCacheInvalidationDto invalidation) {
+        evict(invalidation);
+        try {
+            eventPublisher.publishEvent(new PaymentChangedEvent(invalidation.getPaymentId(), invalidation.getAppointmentId()));
+        } catch (Exception e) {
+            // Appelé après le commit : un abonné en échec ne doit pas faire échouer le changement de statut
+            log.warn("Could not notify payment change for payment: {} - Error: {}",
+                    invalidation.getPaymentId(), e.getMessage());
+        }
+    }
+
+    private void evict(PaymentCacheInvalidationDto invalidation) {
+        if (invalidation.getPaymentId() != null) {
+            byId.invalidate(invalidation.getPaymentId());
+        }
+        if (invalidation.getAppointmentId() != null) {
+            byAppointment.invalidate(invalidation.getAppointmentId());
+        }
+    }
+
+    private void invalidateEverywhere(PaymentCacheInvalidationDto invalidation) {
+        // Cette instance d'abord, sans dépendre du broker ; le fanout ne sert qu'aux autres instances
+        evictAndNotify(invalidation);
+        try {
+            rabbitTemplate.convertAndSend(invalidationExchange, "", invalidation);
+        } catch (Exception e) {
+            // Les autres instances serviront l'ancienne valeur au plus jusqu'à expiration de l'entrée
+            log.warn("Could not broadcast cache invalidation for payment: {} - Error: {}",
+                    invalidation.getPaymentId(), e.getMessage());
+        }
+    }
+}
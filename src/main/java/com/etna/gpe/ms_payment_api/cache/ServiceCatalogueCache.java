@@ -0,0 +1,107 @@
+package com.etna.gpe.ms_payment_api.cache;
+
+import com.etna.gpe.ms_payment_api.clients.IShopApiClient;
+import com.etna.gpe.ms_payment_api.dto.ServiceDto;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.LoadingCache;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Cache du catalogue des services de ms-shop-api (stale-while-revalidate).
+ * Passé le délai de rafraîchissement, l'entrée existante continue d'être servie pendant
+ * qu'un rechargement est lancé en arrière-plan ; elle n'est supprimée qu'à expiration.
+ * En cas d'échec du rechargement, l'ancienne valeur est conservée.
+ */
+@Component
+@Slf4j
+public class ServiceCatalogueCache {
+
+    public static final String CACHE_NAME = "shop.service";
+
+    private final IShopApiClient shopApiClient;
+    private final ExecutorService refreshExecutor;
+    private final LoadingCache<UUID, Optional<ServiceDto>> cache;
+
+    @Value("${microservices.shop-api.cache.service.warmup.enabled:false}")
+    private boolean warmupEnabled;
+
+    @Value("${microservices.shop-api.cache.service.warmup.path:/service}")
+    private String warmupPath;
+
+    @Autowired
+    public ServiceCatalogueCache(IShopApiClient shopApiClient, MeterRegistry meterRegistry,
+                                 @Value("${microservices.shop-api.cache.service.max-size:5000}") long maxSize,
+                                 @Value("${microservices.shop-api.cache.service.refresh-after:5m}") Duration refreshAfter,
+                                 @Value("${microservices.shop-api.cache.service.ttl:1h}") Duration ttl,
+                                 @Value("${microservices.shop-api.cache.service.refresh-threads:2}") int refreshThreads) {
+        this.shopApiClient = shopApiClient;
+        // Pool dédié : les rechargements font des appels HTTP bloquants, à ne pas exécuter sur le commonPool
+        this.refreshExecutor = Executors.newFixedThreadPool(refreshThreads,
+                new CustomizableThreadFactory("service-cache-refresh-"));
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .refreshAfterWrite(refreshAfter)
+                .expireAfterWrite(ttl)
+                .executor(refreshExecutor)
+                .recordStats()
+                .build(shopApiClient::fetchServiceDetails);
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, CACHE_NAME);
+    }
+
+    /**
+     * Retourne les détails d'un service, en appelant ms-shop-api uniquement en cas d'absence dans le cache.
+     * @param serviceId ID du service
+     * @return Les détails du service, ou null si le service est inconnu ou si ms-shop-api est indisponible
+     */
+    public ServiceDto get(UUID serviceId) {
+        try {
+            return cache.get(serviceId).orElse(null);
+        } catch (Exception e) {
+            log.warn("Could not retrieve service details for service: {} - Error: {}", serviceId, e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Préchauffe le cache à partir de l'endpoint de liste de ms-shop-api, en arrière-plan.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void warmUp() {
+        if (!warmupEnabled) {
+            return;
+        }
+
+        refreshExecutor.execute(() -> {
+            try {
+                List<ServiceDto> services = shopApiClient.fetchAllServices(warmupPath);
+                services.stream()
+                        .filter(service -> service.getId() != null)
+                        .forEach(service -> cache.put(service.getId(), Optional.of(service)));
+                log.info("Service catalogue cache warmed up with {} services", services.size());
+            } catch (Exception e) {
+                log.warn("Could not warm up service catalogue cache - Error: {}", e.getMessage());
+            }
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        refreshExecutor.shutdown();
+    }
+}
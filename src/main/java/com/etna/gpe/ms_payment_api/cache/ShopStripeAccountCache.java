@@ -0,0 +1,92 @@
+package com.etna.gpe.ms_payment_api.cache;
+
+import com.etna.gpe.ms_payment_api.clients.IShopApiClient;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.github.benmanes.caffeine.cache.LoadingCache;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * Cache borné des IDs de compte Stripe des shops.
+ * Les shops sans compte sont aussi mis en cache (cache négatif) avec une durée de vie plus courte ;
+ * les erreurs d'appel à ms-shop-api ne sont jamais mises en cache.
+ * Les statistiques (hits, miss, évictions) sont exposées via Micrometer sous le nom "shop.stripe-account".
+ */
+@Component
+@Slf4j
+public class ShopStripeAccountCache {
+
+    public static final String CACHE_NAME = "shop.stripe-account";
+
+    private final LoadingCache<UUID, Optional<String>> cache;
+
+    @Autowired
+    public ShopStripeAccountCache(IShopApiClient shopApiClient, MeterRegistry meterRegistry,
+                                  @Value("${microservices.shop-api.cache.stripe-account.max-size:10000}") long maxSize,
+                                  @Value("${microservices.shop-api.cache.stripe-account.ttl:10m}") Duration ttl,
+                                  @Value("${microservices.shop-api.cache.stripe-account.negative-ttl:1m}") Duration negativeTtl) {
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfter(new Expiry<UUID, Optional<String>>() {
+                    @Override
+                    public long expireAfterCreate(UUID shopId, Optional<String> accountId, long currentTime) {
+                        return accountId.isPresent() ? ttl.toNanos() : negativeTtl.toNanos();
+                    }
+
+                    @Override
+                    public long expireAfterUpdate(UUID shopId, Optional<String> accountId, long currentTime,
+                                                  long currentDuration) {
+                        return expireAfterCreate(shopId, accountId, currentTime);
+                    }
+
+                    @Override
+                    public long expireAfterRead(UUID shopId, Optional<String> accountId, long currentTime,
+                                                long currentDuration) {
+                        return currentDuration;
+                    }
+                })
+                .recordStats()
+                .build(shopApiClient::fetchStripeAccountId);
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, CACHE_NAME);
+    }
+
+    /**
+     * Retourne l'ID du compte Stripe d'un shop, en appelant ms-shop-api uniquement en cas d'absence dans le cache.
+     * @param shopId ID du shop
+     * @return L'ID du compte Stripe, ou null si le shop n'en a pas ou si ms-shop-api est indisponible
+     */
+    public String get(UUID shopId) {
+        try {
+            return cache.get(shopId).orElse(null);
+        } catch (Exception e) {
+            log.warn("Could not retrieve Stripe account ID for shop: {} - Error: {}", shopId, e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Enregistre l'ID du compte Stripe d'un shop qui vient d'être écrit dans ms-shop-api.
+     * @param shopId ID du shop
+     * @param stripeAccountId ID du compte Stripe
+     */
+    public void put(UUID shopId, String stripeAccountId) {
+        cache.put(shopId, Optional.ofNullable(stripeAccountId));
+    }
+
+    /**
+     * Invalide l'entrée d'un shop.
+     * @param shopId ID du shop
+     */
+    public void invalidate(UUID shopId) {
+        cache.invalidate(shopId);
+    }
+}
@@ -0,0 +1,51 @@
+package com.etna.gpe.ms_payment_api.clients;
+
+import com.etna.gpe.ms_payment_api.dto.ServiceDto;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * Interface du client HTTP vers ms-shop-api.
+ * Contrairement aux services, les méthodes du client propagent les erreurs de transport
+ * afin que l'appelant (cache, service) décide du repli à appliquer.
+ */
+public interface IShopApiClient {
+
+    /**
+     * Récupère l'ID du compte Stripe connecté d'un shop.
+     * @param shopId ID du shop
+     * @return L'ID du compte Stripe, ou Optional.empty() si le shop n'en a pas
+     */
+    Optional<String> fetchStripeAccountId(UUID shopId);
+
+    /**
+     * Récupère les détails d'un service.
+     * @param serviceId ID du service
+     * @return Les détails du service, ou Optional.empty() si le service n'existe pas
+     */
+    Optional<ServiceDto> fetchServiceDetails(UUID serviceId);
+
+    /**
+     * Récupère en un seul appel le catalogue des services (préchauffage du cache).
+     * @param path Chemin de l'endpoint de ms-shop-api retournant la liste des services
+     * @return La liste des services
+     */
+    List<ServiceDto> fetchAllServices(String path);
+
+    /**
+     * Passe un rendez-vous au statut "payé".
+     * @param appointmentId ID du rendez-vous
+     * @return true si ms-shop-api a accepté la mise à jour
+     */
+    boolean markAppointmentPaid(UUID appointmentId);
+
+    /**
+     * Enregistre l'ID du compte Stripe connecté d'un shop.
+     * @param shopId ID du shop
+     * @param stripeAccountId ID du compte Stripe connecté
+     * @return true si ms-shop-api a accepté la mise à jour
+     */
+    boolean updateStripeAccountId(UUID shopId, String stripeAccountId);
+}
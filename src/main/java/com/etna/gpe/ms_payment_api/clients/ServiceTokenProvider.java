@@ -0,0 +1,123 @@
+package com.etna.gpe.ms_payment_api.clients;
+
+import com.etna.gpe.mycloseshop.security_api.config.JwtTokenUtil;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Fournit le token JWT de service utilisé pour tous les appels sortants vers les autres microservices.
+ * Le token est signé une seule fois puis réutilisé jusqu'à peu avant son expiration ;
+ * une tâche planifiée le renouvelle en arrière-plan pour que les threads de requête n'aient pas à le faire.
+ */
+@Component
+@Slf4j
+public class ServiceTokenProvider {
+
+    public static final String MS_PAYMENT_API = "ms-payment-api";
+    public static final String ROLE_ADMIN = "ROLE_ADMIN";
+
+    private final JwtTokenUtil jwtTokenUtil;
+    private final ObjectMapper objectMapper;
+    private final ReentrantLock refreshLock = new ReentrantLock();
+
+    /**
+     * Marge avant expiration à partir de laquelle le token n'est plus distribué.
+     */
+    @Value("${microservices.auth.token.refresh-margin:1m}")
+    private Duration refreshMargin;
+
+    /**
+     * Durée de vie supposée si le token ne contient pas de claim "exp".
+     */
+    @Value("${microservices.auth.token.default-ttl:10m}")
+    private Duration defaultTtl;
+
+    private volatile CachedToken current;
+
+    @Autowired
+    public ServiceTokenProvider(JwtTokenUtil jwtTokenUtil, ObjectMapper objectMapper) {
+        this.jwtTokenUtil = jwtTokenUtil;
+        this.objectMapper = objectMapper;
+    }
+
+    /**
+     * Retourne un token de service valide.
+     * @return Le token JWT (sans le préfixe "Bearer ")
+     */
+    public String getToken() {
+        CachedToken token = current;
+        if (token == null || token.expiresWithin(refreshMargin)) {
+            token = refresh(refreshMargin);
+        }
+        return token.value();
+    }
+
+    /**
+     * Renouvelle le token en arrière-plan lorsqu'il approche de sa fin de validité.
+     */
+    @Scheduled(fixedDelayString = "${microservices.auth.token.refresh-check-interval-ms:30000}")
+    public void refreshIfNeeded() {
+        try {
+            refresh(refreshMargin.multipliedBy(2));
+        } catch (Exception e) {
+            log.warn("Could not refresh service token - Error: {}", e.getMessage());
+        }
+    }
+
+    private CachedToken refresh(Duration margin) {
+        refreshLock.lock();
+        try {
+            CachedToken token = current;
+            if (token != null && !token.expiresWithin(margin)) {
+                // Un autre thread vient de renouveler le token
+                return token;
+            }
+            String value = jwtTokenUtil.generateTokenForMsWith(MS_PAYMENT_API, UUID.randomUUID(), List.of(ROLE_ADMIN));
+            token = new CachedToken(value, resolveExpiration(value));
+            current = token;
+            log.debug("Service token renewed, valid until {}", token.expiresAt());
+            return token;
+        } finally {
+            refreshLock.unlock();
+        }
+    }
+
+    /**
+     * Lit le claim "exp" du token sans revérifier sa signature (le token vient d'être signé localement).
+     */
+    private Instant resolveExpiration(String token) {
+        try {
+            String[] parts = token.split("\\.");
+            if (parts.length >= 2) {
+                byte[] claims = Base64.getUrlDecoder().decode(parts[1]);
+                JsonNode exp = objectMapper.readTree(new String(claims, StandardCharsets.UTF_8)).get("exp");
+                if (exp != null && exp.canConvertToLong()) {
+                    return Instant.ofEpochSecond(exp.asLong());
+                }
+            }
+        } catch (Exception e) {
+            log.debug("Could not read service token expiration - Error: {}", e.getMessage());
+        }
+        return Instant.now().plus(defaultTtl);
+    }
+
+    private record CachedToken(String value, Instant expiresAt) {
+
+        boolean expiresWithin(Duration margin) {
+            return Instant.now().plus(margin).isAfter(expiresAt);
+        }
+    }
+}
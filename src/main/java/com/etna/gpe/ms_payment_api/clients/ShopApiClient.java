@@ -0,0 +1,148 @@
+package com.etna.gpe.ms_payment_api.clients;
+
+import com.etna.gpe.ms_payment_api.dto.ServiceDto;
+import io.github.resilience4j.bulkhead.Bulkhead;
+import io.github.resilience4j.bulkhead.BulkheadRegistry;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.RestTemplate;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.function.Supplier;
+
+/**
+ * Client HTTP vers ms-shop-api.
+ * Chaque appel passe par un bulkhead (nombre d'appels simultanés borné) puis par un circuit breaker :
+ * lorsque ms-shop-api est identifié comme indisponible, les appels échouent immédiatement
+ * (CallNotPermittedException) et les appelants appliquent leur repli sans attendre de timeout.
+ */
+@Component
+@Slf4j
+public class ShopApiClient implements IShopApiClient {
+
+    public static final String AUTHORIZATION = "Authorization";
+    public static final String BEARER = "Bearer ";
+    public static final String CALLING_MS_SHOP_API_AT = "Calling ms-shop-api at: {}";
+    public static final String SHOP_API = "shopApi";
+
+    @Value("${microservices.shop-api.url}")
+    private String shopApiUrl;
+
+    private final RestTemplate restTemplate;
+    private final ServiceTokenProvider serviceTokenProvider;
+    private final CircuitBreaker circuitBreaker;
+    private final Bulkhead bulkhead;
+
+    @Autowired
+    public ShopApiClient(RestTemplate restTemplate, ServiceTokenProvider serviceTokenProvider,
+                         CircuitBreakerRegistry circuitBreakerRegistry, BulkheadRegistry bulkheadRegistry) {
+        this.restTemplate = restTemplate;
+        this.serviceTokenProvider = serviceTokenProvider;
+        this.circuitBreaker = circuitBreakerRegistry.circuitBreaker(SHOP_API);
+        this.bulkhead = bulkheadRegistry.bulkhead(SHOP_API);
+        this.circuitBreaker.getEventPublisher().onStateTransition(event ->
+                log.warn("ms-shop-api circuit breaker: {}", event.getStateTransition()));
+    }
+
+    @Override
+    public Optional<String> fetchStripeAccountId(UUID shopId) {
+        String url = shopApiUrl + "/shop/" + shopId + "/stripe-account";
+        log.debug(CALLING_MS_SHOP_API_AT, url);
+
+        return protect(() -> {
+            try {
+                ResponseEntity<String> response = restTemplate.exchange(url, HttpMethod.GET, authorizedRequest(), String.class);
+                String stripeAccountId = response.getBody();
+                if (stripeAccountId == null || stripeAccountId.isEmpty()) {
+                    return Optional.empty();
+                }
+                return Optional.of(stripeAccountId);
+            } catch (HttpClientErrorException.NotFound e) {
+                // Shop inconnu ou sans compte Stripe : réponse définitive, elle peut être mise en cache
+                return Optional.empty();
+            }
+        });
+    }
+
+    @Override
+    public Optional<ServiceDto> fetchServiceDetails(UUID serviceId) {
+        String url = shopApiUrl + "/service/" + serviceId;
+        log.debug(CALLING_MS_SHOP_API_AT, url);
+
+        return protect(() -> {
+            try {
+                ResponseEntity<ServiceDto> response = restTemplate.exchange(url, HttpMethod.GET, authorizedRequest(), ServiceDto.class);
+                return Optional.ofNullable(response.getBody());
+            } catch (HttpClientErrorException.NotFound e) {
+                return Optional.empty();
+            }
+        });
+    }
+
+    @Override
+    public List<ServiceDto> fetchAllServices(String path) {
+        String url = shopApiUrl + path;
+        log.debug(CALLING_MS_SHOP_API_AT, url);
+
+        return protect(() -> {
+            ResponseEntity<ServiceDto[]> response = restTemplate.exchange(url, HttpMethod.GET, authorizedRequest(), ServiceDto[].class);
+            ServiceDto[] services = response.getBody();
+            return services != null ? Arrays.asList(services) : List.of();
+        });
+    }
+
+    @Override
+    public boolean markAppointmentPaid(UUID appointmentId) {
+        String url = shopApiUrl + "/appointment/paid/" + appointmentId;
+        log.debug(CALLING_MS_SHOP_API_AT, url);
+
+        return protect(() -> {
+            HttpHeaders headers = authorizedHeaders();
+            headers.setContentType(MediaType.APPLICATION_JSON);
+            ResponseEntity<Object> response = restTemplate.exchange(url, HttpMethod.PATCH, new HttpEntity<>(headers), Object.class);
+            return response.getStatusCode().is2xxSuccessful();
+        });
+    }
+
+    @Override
+    public boolean updateStripeAccountId(UUID shopId, String stripeAccountId) {
+        String url = shopApiUrl + "/shop/" + shopId + "/stripe-account";
+        log.debug(CALLING_MS_SHOP_API_AT, url);
+
+        return protect(() -> {
+            HttpHeaders headers = authorizedHeaders();
+            headers.setContentType(MediaType.APPLICATION_JSON);
+            HttpEntity<Map<String, String>> request = new HttpEntity<>(Map.of("stripeAccountId", stripeAccountId), headers);
+            ResponseEntity<String> response = restTemplate.exchange(url, HttpMethod.PUT, request, String.class);
+            return response.getStatusCode().is2xxSuccessful();
+        });
+    }
+
+    private <T> T protect(Supplier<T> call) {
+        return CircuitBreaker.decorateSupplier(circuitBreaker, Bulkhead.decorateSupplier(bulkhead, call)).get();
+    }
+
+    private HttpEntity<Void> authorizedRequest() {
+        return new HttpEntity<>(authorizedHeaders());
+    }
+
+    private HttpHeaders authorizedHeaders() {
+        HttpHeaders headers = new HttpHeaders();
+        headers.set(AUTHORIZATION, BEARER + serviceTokenProvider.getToken());
+        return headers;
+    }
+}
@@ -0,0 +1,223 @@
+package com.etna.gpe.ms_payment_api.clients;
+
+import com.etna.gpe.ms_payment_api.exceptions.StripeThrottledException;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.stripe.exception.RateLimitException;
+import com.stripe.exception.StripeException;
+import com.stripe.model.StripeError;
+import io.github.resilience4j.ratelimiter.RateLimiter;
+import io.github.resilience4j.ratelimiter.RateLimiterConfig;
+import io.github.resilience4j.ratelimiter.RateLimiterRegistry;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Limiteur de débit partagé par tous les appels à l'API Stripe.
+ * Chaque appel prend une place dans le bucket du compte connecté visé (en-tête Stripe-Account), pour qu'un shop
+ * ne consomme pas tout le débit, puis dans le bucket d'écriture de la plateforme. Le service n'émet que des
+ * écritures (sessions Checkout, remboursements) : un bucket de lecture sera à ajouter avec le premier appel
+ * de lecture, Stripe comptant les deux débits séparément.
+ * Une réponse 429 suspend tout le bucket pendant la durée indiquée par Retry-After (ou un backoff
+ * exponentiel avec jitter) avant de rejouer l'appel : les appelants ralentissent ensemble au lieu
+ * d'enchaîner les 429.
+ */
+@Component
+@Slf4j
+public class StripeRateLimiter {
+
+    public static final String STRIPE_WRITE = "stripeWrite";
+    public static final String STRIPE_ACCOUNT_CONFIG = "stripeAccount";
+    public static final String WAITING_METRIC = "stripe.api.waiting";
+    public static final String THROTTLED_METRIC = "stripe.api.throttled";
+
+    private static final String RETRY_AFTER = "Retry-After";
+
+    /**
+     * Appel à l'API Stripe.
+     */
+    @FunctionalInterface
+    public interface StripeCall<T> {
+        T call() throws StripeException;
+    }
+
+    @Value("${stripe.rate-limit.max-retries:3}")
+    private int maxRetries;
+
+    @Value("${stripe.rate-limit.initial-backoff:500ms}")
+    private Duration initialBackoff;
+
+    @Value("${stripe.rate-limit.max-backoff:8s}")
+    private Duration maxBackoff;
+
+    private final MeterRegistry meterRegistry;
+    private final Bucket writeBucket;
+    private final RateLimiterConfig accountConfig;
+
+    /**
+     * Buckets des comptes connectés, bornés : un shop inactif libère le sien.
+     */
+    private final Cache<String, RateLimiter> accountLimiters;
+
+    @Autowired
+    public StripeRateLimiter(RateLimiterRegistry rateLimiterRegistry, MeterRegistry meterRegistry,
+                             @Value("${stripe.rate-limit.accounts.max-size:10000}") long maxAccounts,
+                             @Value("${stripe.rate-limit.accounts.idle-ttl:10m}") Duration accountIdleTtl) {
+        this.meterRegistry = meterRegistry;
+        this.writeBucket = new Bucket("write", rateLimiterRegistry.rateLimiter(STRIPE_WRITE));
+        this.accountConfig = rateLimiterRegistry.getConfiguration(STRIPE_ACCOUNT_CONFIG)
+                .orElse(rateLimiterRegistry.getDefaultConfig());
+        this.accountLimiters = Caffeine.newBuilder()
+                .maximumSize(maxAccounts)
+                .expireAfterAccess(accountIdleTtl)
+                .build();
+    }
+
+    /**
+     * Exécute un appel d'écriture (create, update, delete).
+     * Une 429 signifie que Stripe n'a pas traité la requête : la rejouer ne crée pas de doublon.
+     * @param stripeAccountId Compte connecté visé par l'appel, ou null pour le compte de la plateforme
+     * @param call Appel à exécuter
+     * @return Le résultat de l'appel
+     * @throws StripeThrottledException si aucune place ne s'est libérée à temps (l'appel n'a pas été envoyé)
+     *                                  ou si Stripe répond encore 429 après les rejeux
+     */
+    public <T> T write(String stripeAccountId, StripeCall<T> call) throws StripeException {
+        return execute(writeBucket, stripeAccountId, call);
+    }
+
+    private <T> T execute(Bucket bucket, String stripeAccountId, StripeCall<T> call) throws StripeException {
+        for (int attempt = 0; ; attempt++) {
+            acquire(bucket, stripeAccountId);
+            try {
+                return call.call();
+            } catch (RateLimitException e) {
+                throttled(bucket, "stripe");
+                Duration delay = backoff(attempt, retryAfter(e));
+                bucket.pauseFor(delay);
+                if (attempt >= maxRetries) {
+                    log.warn("Stripe {} call rate limited, giving up after {} retries", bucket.name, maxRetries);
+                    // Une 429 n'est pas traitée par Stripe : l'appelant peut rejouer plus tard, pas changer de stratégie
+                    throw new StripeThrottledException("Débit d'appels Stripe atteint côté Stripe", delay, e);
+                }
+                log.warn("Stripe {} call rate limited (attempt {}/{}), retrying in {} ms",
+                        bucket.name, attempt + 1, maxRetries + 1, delay.toMillis());
+            }
+        }
+    }
+
+    private void acquire(Bucket bucket, String stripeAccountId) {
+        bucket.waiting.incrementAndGet();
+        try {
+            bucket.awaitPause();
+
+            // Bucket du compte d'abord : une place de la plateforme ne peut pas être rendue, un shop qui dépasse
+            // son propre débit ne doit pas consommer celui des autres. Un refus de la plateforme ne coûte
+            // en retour qu'une place du compte appelant, sur la période en cours.
+            if (stripeAccountId != null && !stripeAccountId.isEmpty()) {
+                RateLimiter accountLimiter = accountLimiters.get(stripeAccountId,
+                        accountId -> RateLimiter.of(STRIPE_ACCOUNT_CONFIG + "-" + accountId, accountConfig));
+                if (!accountLimiter.acquirePermission()) {
+                    throttled(bucket, "account");
+                    throw new StripeThrottledException("Débit d'appels Stripe atteint pour le compte " + stripeAccountId,
+                            accountConfig.getLimitRefreshPeriod());
+                }
+            }
+
+            if (!bucket.limiter.acquirePermission()) {
+                throttled(bucket, "client");
+                throw new StripeThrottledException("Débit d'appels Stripe atteint",
+                        bucket.limiter.getRateLimiterConfig().getLimitRefreshPeriod());
+            }
+        } finally {
+            bucket.waiting.decrementAndGet();
+        }
+    }
+
+    /**
+     * Backoff exponentiel avec jitter, jamais inférieur au délai demandé par Stripe.
+     */
+    private Duration backoff(int attempt, Duration retryAfter) {
+        long ceiling = Math.min(maxBackoff.toMillis(), initialBackoff.toMillis() << Math.min(attempt, 20));
+        long delay = ceiling / 2 + ThreadLocalRandom.current().nextLong(ceiling / 2 + 1);
+        if (retryAfter != null && retryAfter.toMillis() > delay) {
+            return retryAfter;
+        }
+        return Duration.ofMillis(delay);
+    }
+
+    private Duration retryAfter(RateLimitException e) {
+        StripeError error = e.getStripeError();
+        if (error == null || error.getLastResponse() == null) {
+            return null;
+        }
+        return error.getLastResponse().headers().firstValue(RETRY_AFTER)
+                .map(value -> {
+                    try {
+                        return Duration.ofSeconds(Long.parseLong(value.trim()));
+                    } catch (NumberFormatException ex) {
+                        return null;
+                    }
+                })
+                .orElse(null);
+    }
+
+    private void throttled(Bucket bucket, String source) {
+        meterRegistry.counter(THROTTLED_METRIC, "access", bucket.name, "source", source).increment();
+    }
+
+    /**
+     * Bucket de la plateforme pour un type d'accès, avec sa suspension après une 429.
+     */
+    private final class Bucket {
+
+        private final String name;
+        private final RateLimiter limiter;
+        private final AtomicInteger waiting = new AtomicInteger();
+        private final AtomicLong pausedUntilNanos = new AtomicLong(System.nanoTime());
+
+        private Bucket(String name, RateLimiter limiter) {
+            this.name = name;
+            this.limiter = limiter;
+            Gauge.builder(WAITING_METRIC, waiting, AtomicInteger::get)
+                    .description("Appels Stripe en attente d'une place dans le débit autorisé")
+                    .tag("access", name)
+                    .register(meterRegistry);
+        }
+
+        private void pauseFor(Duration delay) {
+            long until = System.nanoTime() + delay.toNanos();
+            pausedUntilNanos.accumulateAndGet(until, (current, next) -> next - current > 0 ? next : current);
+        }
+
+        /**
+         * Attend la fin de la suspension en cours ; l'attente est bornée par le timeout du limiteur.
+         */
+        private void awaitPause() {
+            long remaining = pausedUntilNanos.get() - System.nanoTime();
+            if (remaining <= 0) {
+                return;
+            }
+            if (remaining > limiter.getRateLimiterConfig().getTimeoutDuration().toNanos()) {
+                throttled(this, "client");
+                throw new StripeThrottledException("Appels Stripe suspendus après une limite de débit",
+                        Duration.ofNanos(remaining));
+            }
+            try {
+                Thread.sleep(Duration.ofNanos(remaining));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new StripeThrottledException("Attente du débit Stripe interrompue", Duration.ofNanos(remaining));
+            }
+        }
+    }
+}
@@ -1,12 +1,23 @@
 package com.etna.gpe.ms_payment_api.config;
 
+import com.etna.gpe.ms_payment_api.messaging.RetryTopology;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.core.AnonymousQueue;
 import org.springframework.amqp.core.Binding;
 import org.springframework.amqp.core.BindingBuilder;
+import org.springframework.amqp.core.Declarable;
+import org.springframework.amqp.core.Declarables;
 import org.springframework.amqp.core.DirectExchange;
+import org.springframework.amqp.core.FanoutExchange;
 import org.springframework.amqp.core.Queue;
 import org.springframework.amqp.core.QueueBuilder;
+import org.springframework.amqp.rabbit.config.SimpleRabbitListenerContainerFactory;
 import org.springframework.amqp.rabbit.connection.ConnectionFactory;
 import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.amqp.support.converter.Jackson2JavaTypeMapper;
 import org.springframework.amqp.support.converter.Jackson2JsonMessageConverter;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
@@ -14,15 +25,24 @@ import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Profile;
 
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
 /**
  * Configuration RabbitMQ complète pour les événements de paiement Stripe.
  * Désactivée pendant les tests via @Profile.
  */
 @Configuration
+@Slf4j
 @Profile("!test")
 @ConditionalOnProperty(name = "spring.rabbitmq.host", matchIfMissing = true)
 public class RabbitMQPaymentConfig {
 
+    public static final String PUBLISH_CONFIRMS_METRIC = "rabbitmq.publish.confirms";
+    public static final String PUBLISH_RETURNED_METRIC = "rabbitmq.publish.returned";
+    public static final String PUBLISH_UNCONFIRMED_METRIC = "rabbitmq.publish.unconfirmed";
+
     @Value("${rabbitmq.exchange.payment}")
     private String paymentExchange;
 
@@ -53,6 +73,36 @@ public class RabbitMQPaymentConfig {
     @Value("${rabbitmq.routing-keys.appointment-cancelled}")
     private String appointmentCancelledRoutingKey;
 
+    @Value("${rabbitmq.exchange.dead-letter:payment.dlx}")
+    private String deadLetterExchange;
+
+    @Value("${rabbitmq.exchange.retry:payment.retry.exchange}")
+    private String retryExchange;
+
+    @Value("${rabbitmq.exchange.cache-invalidation:payment.cache.invalidation}")
+    private String cacheInvalidationExchange;
+
+    /**
+     * Délais des paliers de rejeu successifs (backoff exponentiel).
+     */
+    @Value("${rabbitmq.retry.delays:5s,30s,5m}")
+    private List<Duration> retryDelays;
+
+    @Value("${rabbitmq.listener.appointment.concurrency:2}")
+    private int appointmentListenerConcurrency;
+
+    @Value("${rabbitmq.listener.appointment.max-concurrency:8}")
+    private int appointmentListenerMaxConcurrency;
+
+    @Value("${rabbitmq.listener.appointment.prefetch:50}")
+    private int appointmentListenerPrefetch;
+
+    @Value("${rabbitmq.listener.appointment.batch-size:20}")
+    private int appointmentListenerBatchSize;
+
+    @Value("${rabbitmq.listener.appointment.receive-timeout-ms:1000}")
+    private long appointmentListenerReceiveTimeoutMs;
+
     // Exchanges
     @Bean
     public DirectExchange paymentExchange() {
@@ -64,7 +114,25 @@ public class RabbitMQPaymentConfig {
         return new DirectExchange(appointmentExchange);
     }
 
+    @Bean
+    public DirectExchange deadLetterExchange() {
+        return new DirectExchange(deadLetterExchange);
+    }
+
+    @Bean
+    public DirectExchange retryExchange() {
+        return new DirectExchange(retryExchange);
+    }
+
+    @Bean
+    public FanoutExchange cacheInvalidationExchange() {
+        return new FanoutExchange(cacheInvalidationExchange);
+    }
+
     // Queues
+    // Déclarées sans argument x-dead-letter-* : certaines files sont partagées avec d'autres services et existent
+    // déjà sur le broker, les redéclarer avec de nouveaux arguments échouerait (PRECONDITION_FAILED).
+    // Le dead-lettering est appliqué par une policy RabbitMQ (voir DeadLetterPolicyInitializer).
     @Bean
     public Queue paymentCompletedQueue() {
         return QueueBuilder.durable(paymentCompletedQueue).build();
@@ -85,6 +153,44 @@ public class RabbitMQPaymentConfig {
         return QueueBuilder.durable(appointmentCancelledQueue).build();
     }
 
+    /**
+     * Topologie de rejeu de chaque file : file de dead-letter, files d'attente par palier et parking lot.
+     * Les files de palier n'ont pas de consommateur : à expiration du TTL, le message est renvoyé
+     * dans sa file d'origine via l'exchange par défaut.
+     */
+    @Bean
+    public Declarables retryTopology() {
+        List<Declarable> declarables = new ArrayList<>();
+        for (String queue : List.of(paymentCompletedQueue, paymentRefundedQueue,
+                appointmentConfirmedQueue, appointmentCancelledQueue)) {
+            Queue deadLetterQueue = QueueBuilder.durable(RetryTopology.deadLetterQueue(queue)).build();
+            declarables.add(deadLetterQueue);
+            declarables.add(BindingBuilder.bind(deadLetterQueue).to(deadLetterExchange()).with(queue));
+
+            for (int tier = 0; tier < retryDelays.size(); tier++) {
+                Queue retryQueue = QueueBuilder.durable(RetryTopology.retryQueue(queue, tier))
+                        .ttl((int) retryDelays.get(tier).toMillis())
+                        .deadLetterExchange("")
+                        .deadLetterRoutingKey(queue)
+                        .build();
+                declarables.add(retryQueue);
+                declarables.add(BindingBuilder.bind(retryQueue).to(retryExchange())
+                        .with(RetryTopology.retryQueue(queue, tier)));
+            }
+
+            declarables.add(QueueBuilder.durable(RetryTopology.parkingLotQueue(queue)).build());
+        }
+        return new Declarables(declarables);
+    }
+
+    /**
+     * File propre à l'instance (nom généré, supprimée à la déconnexion) recevant les invalidations du cache.
+     */
+    @Bean
+    public Queue paymentCacheInvalidationQueue() {
+        return new AnonymousQueue();
+    }
+
     // Bindings
     @Bean
     public Binding paymentCompletedBinding() {
@@ -114,13 +220,102 @@ public class RabbitMQPaymentConfig {
                 .with(appointmentCancelledRoutingKey);
     }
 
+    @Bean
+    public Binding paymentCacheInvalidationBinding() {
+        return BindingBuilder.bind(paymentCacheInvalidationQueue())
+                .to(cacheInvalidationExchange());
+    }
+
     /**
      * Configuration du RabbitTemplate avec convertisseur JSON pour Stripe.
+     * Les publications sont confirmées par le broker (confirms corrélés) et les messages non routables
+     * sont retournés (mandatory) ; confirmations, retours et messages en attente de confirmation
+     * sont exposés via Micrometer.
      */
     @Bean
-    public RabbitTemplate rabbitTemplate(ConnectionFactory connectionFactory) {
+    public RabbitTemplate rabbitTemplate(ConnectionFactory connectionFactory, MeterRegistry meterRegistry) {
         RabbitTemplate template = new RabbitTemplate(connectionFactory);
         template.setMessageConverter(new Jackson2JsonMessageConverter());
+        template.setMandatory(true);
+
+        template.setConfirmCallback((correlationData, ack, cause) -> {
+            meterRegistry.counter(PUBLISH_CONFIRMS_METRIC, "result", ack ? "ack" : "nack").increment();
+            if (!ack) {
+                log.warn("Message not confirmed by broker: {} - Cause: {}",
+                        correlationData != null ? correlationData.getId() : null, cause);
+            }
+        });
+        template.setReturnsCallback(returned -> {
+            meterRegistry.counter(PUBLISH_RETURNED_METRIC, "routingKey", returned.getRoutingKey()).increment();
+            log.warn("Message returned by broker: exchange={}, routingKey={}, replyText={}",
+                    returned.getExchange(), returned.getRoutingKey(), returned.getReplyText());
+        });
+        Gauge.builder(PUBLISH_UNCONFIRMED_METRIC, template, RabbitTemplate::getUnconfirmedCount)
+                .description("Messages publiés en attente de confirmation du broker")
+                .register(meterRegistry);
         return template;
     }
+
+    /**
+     * Conteneurs du consommateur des confirmations de rendez-vous : consommation par lots,
+     * nombre de consommateurs ajusté entre concurrency et max-concurrency selon la charge.
+     */
+    @Bean
+    public SimpleRabbitListenerContainerFactory appointmentListenerContainerFactory(ConnectionFactory connectionFactory,
+                                                                                   ObjectMapper objectMapper) {
+        SimpleRabbitListenerContainerFactory factory = appointmentContainerFactory(connectionFactory, objectMapper);
+        factory.setBatchListener(true);
+        factory.setConsumerBatchEnabled(true);
+        factory.setBatchSize(appointmentListenerBatchSize);
+        factory.setReceiveTimeout(appointmentListenerReceiveTimeoutMs);
+        return factory;
+    }
+
+    /**
+     * Conteneurs du consommateur des annulations : un message à la fois, pour qu'une annulation dont le
+     * remboursement échoue soit rejetée seule sans entraîner les autres annulations reçues avec elle.
+     * Le parallélisme vient du nombre de consommateurs et du prefetch.
+     */
+    @Bean
+    public SimpleRabbitListenerContainerFactory appointmentCancelledListenerContainerFactory(
+            ConnectionFactory connectionFactory, ObjectMapper objectMapper) {
+        return appointmentContainerFactory(connectionFactory, objectMapper);
+    }
+
+    /**
+     * Le type des messages est déduit de la signature du listener (pas de l'en-tête __TypeId__ de l'émetteur).
+     */
+    private SimpleRabbitListenerContainerFactory appointmentContainerFactory(ConnectionFactory connectionFactory,
+                                                                            ObjectMapper objectMapper) {
+        Jackson2JsonMessageConverter converter = new Jackson2JsonMessageConverter(objectMapper);
+        converter.setTypePrecedence(Jackson2JavaTypeMapper.TypePrecedence.INFERRED);
+
+        SimpleRabbitListenerContainerFactory factory = new SimpleRabbitListenerContainerFactory();
+        factory.setConnectionFactory(connectionFactory);
+        factory.setMessageConverter(converter);
+        factory.setConcurrentConsumers(appointmentListenerConcurrency);
+        factory.setMaxConcurrentConsumers(appointmentListenerMaxConcurrency);
+        factory.setPrefetchCount(appointmentListenerPrefetch);
+        // Un message en échec part en dead-letter (puis en rejeu différé) au lieu d'être relivré immédiatement
+        factory.setDefaultRequeueRejected(false);
+        return factory;
+    }
+
+    /**
+     * Conteneur du consommateur des invalidations du cache des paiements (messages courts, un seul consommateur).
+     */
+    @Bean
+    public SimpleRabbitListenerContainerFactory cacheInvalidationListenerContainerFactory(ConnectionFactory connectionFactory,
+                                                                                         ObjectMapper objectMapper) {
+        Jackson2JsonMessageConverter converter = new Jackson2JsonMessageConverter(objectMapper);
+        converter.setTypePrecedence(Jackson2JavaTypeMapper.TypePrecedence.INFERRED);
+
+        SimpleRabbitListenerContainerFactory factory = new SimpleRabbitListenerContainerFactory();
+        factory.setConnectionFactory(connectionFactory);
+        factory.setMessageConverter(converter);
+        factory.setConcurrentConsumers(1);
+        // Une invalidation illisible est simplement ignorée : l'entrée expirera d'elle-même
+        factory.setDefaultRequeueRejected(false);
+        return factory;
+    }
 }
@@ -1,23 +1,108 @@
 package com.etna.gpe.ms_payment_api.config;
 
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.httpcomponents.hc5.PoolingHttpClientConnectionManagerMetricsBinder;
+import org.apache.hc.client5.http.config.ConnectionConfig;
+import org.apache.hc.client5.http.config.RequestConfig;
 import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
 import org.apache.hc.client5.http.impl.classic.HttpClients;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManager;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManagerBuilder;
+import org.apache.hc.core5.util.TimeValue;
+import org.apache.hc.core5.util.Timeout;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
 import org.springframework.web.client.RestTemplate;
 
+import java.time.Duration;
+
 /**
  * Configuration pour les appels HTTP entre microservices.
+ * Le client utilise un pool de connexions borné avec des timeouts explicites, afin qu'un
+ * microservice qui ne répond plus ne puisse pas bloquer indéfiniment les threads de requête.
  */
 @Configuration
 public class RestTemplateConfig {
 
+    @Value("${microservices.http-client.max-total:100}")
+    private int maxTotal;
+
+    @Value("${microservices.http-client.max-per-route:50}")
+    private int maxPerRoute;
+
+    @Value("${microservices.http-client.connect-timeout:2s}")
+    private Duration connectTimeout;
+
+    @Value("${microservices.http-client.socket-timeout:5s}")
+    private Duration socketTimeout;
+
+    @Value("${microservices.http-client.response-timeout:5s}")
+    private Duration responseTimeout;
+
+    /**
+     * Attente maximale d'une connexion libre dans le pool.
+     */
+    @Value("${microservices.http-client.connection-request-timeout:1s}")
+    private Duration connectionRequestTimeout;
+
+    @Value("${microservices.http-client.keep-alive:30s}")
+    private Duration keepAlive;
+
+    @Value("${microservices.http-client.time-to-live:5m}")
+    private Duration timeToLive;
+
+    @Value("${microservices.http-client.idle-eviction:30s}")
+    private Duration idleEviction;
+
+    @Value("${microservices.http-client.validate-after-inactivity:2s}")
+    private Duration validateAfterInactivity;
+
     @Bean
-    public RestTemplate restTemplate() {
-        // Configure Apache HttpClient 5 to enable HTTP methods like PATCH
-        CloseableHttpClient httpClient = HttpClients.createDefault();
+    public PoolingHttpClientConnectionManager httpClientConnectionManager() {
+        ConnectionConfig connectionConfig = ConnectionConfig.custom()
+                .setConnectTimeout(Timeout.of(connectTimeout))
+                .setSocketTimeout(Timeout.of(socketTimeout))
+                .setTimeToLive(TimeValue.of(timeToLive))
+                .setValidateAfterInactivity(TimeValue.of(validateAfterInactivity))
+                .build();
+
+        return PoolingHttpClientConnectionManagerBuilder.create()
+                .setMaxConnTotal(maxTotal)
+                .setMaxConnPerRoute(maxPerRoute)
+                .setDefaultConnectionConfig(connectionConfig)
+                .build();
+    }
+
+    @Bean
+    public CloseableHttpClient httpClient(PoolingHttpClientConnectionManager httpClientConnectionManager) {
+        RequestConfig requestConfig = RequestConfig.custom()
+                .setConnectionRequestTimeout(Timeout.of(connectionRequestTimeout))
+                .setResponseTimeout(Timeout.of(responseTimeout))
+                .setConnectionKeepAlive(TimeValue.of(keepAlive))
+                .build();
+
+        return HttpClients.custom()
+                .setConnectionManager(httpClientConnectionManager)
+                .setDefaultRequestConfig(requestConfig)
+                .evictExpiredConnections()
+                .evictIdleConnections(TimeValue.of(idleEviction))
+                .build();
+    }
+
+    @Bean
+    public RestTemplate restTemplate(CloseableHttpClient httpClient) {
+        // Apache HttpClient 5 permet aussi les méthodes HTTP comme PATCH
         HttpComponentsClientHttpRequestFactory requestFactory = new HttpComponentsClientHttpRequestFactory(httpClient);
         return new RestTemplate(requestFactory);
     }
+
+    /**
+     * Expose les statistiques du pool (connexions disponibles, louées, en attente) via Micrometer.
+     */
+    @Bean
+    public MeterBinder httpClientConnectionPoolMetrics(PoolingHttpClientConnectionManager httpClientConnectionManager) {
+        return new PoolingHttpClientConnectionManagerMetricsBinder(httpClientConnectionManager, "microservices");
+    }
 }
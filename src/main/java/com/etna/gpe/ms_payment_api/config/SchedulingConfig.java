@@ -0,0 +1,12 @@
+package com.etna.gpe.ms_payment_api.config;
+
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.EnableScheduling;
+
+/**
+ * Active les tâches planifiées (worker de l'inbox des webhooks, purges, relais).
+ */
+@Configuration
+@EnableScheduling
+public class SchedulingConfig {
+}
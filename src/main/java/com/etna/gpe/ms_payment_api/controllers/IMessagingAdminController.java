@@ -0,0 +1,22 @@
+package com.etna.gpe.ms_payment_api.controllers;
+
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestParam;
+
+import java.util.Map;
+
+/**
+ * Interface du contrôleur d'administration de la messagerie RabbitMQ.
+ */
+public interface IMessagingAdminController {
+
+    /**
+     * Endpoint pour rejouer en masse les messages du parking lot d'une file.
+     * @param queue Nom de la file d'origine
+     * @param limit Nombre maximum de messages à rejouer
+     * @return Nombre de messages rejoués
+     */
+    ResponseEntity<Map<String, Integer>> replayParkedMessages(@PathVariable String queue,
+                                                              @RequestParam int limit);
+}
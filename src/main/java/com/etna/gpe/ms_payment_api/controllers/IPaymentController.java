@@ -1,12 +1,22 @@
 package com.etna.gpe.ms_payment_api.controllers;
 
+import com.etna.gpe.ms_payment_api.dto.BatchCheckoutRequestDto;
 import com.etna.gpe.ms_payment_api.dto.CheckoutRequestDto;
+import com.etna.gpe.ms_payment_api.dto.PaymentPageDto;
+import com.etna.gpe.ms_payment_api.dto.PaymentView;
 import com.etna.gpe.ms_payment_api.dto.RefundRequestDto;
+import com.etna.gpe.ms_payment_api.dto.ShopRevenueSummaryDto;
 import com.etna.gpe.ms_payment_api.entity.Payment;
+import com.etna.gpe.ms_payment_api.enums.ExportFormat;
+import com.etna.gpe.ms_payment_api.enums.PaymentStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.time.LocalDate;
+import java.time.LocalDateTime;
 import java.util.Map;
 import java.util.UUID;
 
@@ -22,6 +32,13 @@ public interface IPaymentController {
      */
     ResponseEntity<Map<String, String>> createCheckout(@RequestBody CheckoutRequestDto dto);
 
+    /**
+     * Endpoint pour créer une session de paiement Stripe Checkout groupée (plusieurs services d'un même shop).
+     * @param dto Données de la requête de paiement groupé
+     * @return URL de la session Checkout
+     */
+    ResponseEntity<Map<String, String>> createBatchCheckout(@RequestBody BatchCheckoutRequestDto dto);
+
     /**
      * Endpoint optionnel pour initier un remboursement depuis l'application.
      * @param paymentId ID du paiement à rembourser
@@ -35,12 +52,66 @@ public interface IPaymentController {
      * @param paymentId ID du paiement
      * @return Le paiement trouvé
      */
-    ResponseEntity<Payment> getPayment(@PathVariable UUID paymentId);
+    ResponseEntity<PaymentView> getPayment(@PathVariable UUID paymentId);
     
     /**
      * Endpoint pour vérifier le statut de paiement d'un rendez-vous.
      * @param appointmentId ID du rendez-vous
      * @return Le paiement associé au rendez-vous ou 404 si aucun paiement n'est trouvé
      */
-    ResponseEntity<Payment> getPaymentByAppointment(@PathVariable UUID appointmentId);
-}
\ No newline at end of file
+    ResponseEntity<PaymentView> getPaymentByAppointment(@PathVariable UUID appointmentId);
+
+    /**
+     * Endpoint de suivi en temps réel (Server-Sent Events) du paiement d'un rendez-vous, à la place du polling.
+     * @param appointmentId ID du rendez-vous
+     * @return Le flux SSE, terminé dès que le paiement n'est plus en attente
+     */
+    SseEmitter streamPaymentByAppointment(@PathVariable UUID appointmentId);
+
+    /**
+     * Endpoint pour lister les paiements d'un shop, du plus récent au plus ancien.
+     * @param shopId ID du shop
+     * @param status Statut recherché (optionnel)
+     * @param from Date de création minimale, incluse (optionnelle)
+     * @param to Date de création maximale, exclue (optionnelle)
+     * @param cursor Curseur renvoyé par la page précédente (optionnel)
+     * @param limit Taille de la page
+     * @return La page de paiements et le curseur de la page suivante
+     */
+    ResponseEntity<PaymentPageDto> getShopPayments(@PathVariable UUID shopId, PaymentStatus status,
+                                                   LocalDateTime from, LocalDateTime to, String cursor, int limit);
+
+    /**
+     * Endpoint pour lister les paiements d'un utilisateur, du plus récent au plus ancien.
+     * @param userId ID de l'utilisateur
+     * @param status Statut recherché (optionnel)
+     * @param from Date de création minimale, incluse (optionnelle)
+     * @param to Date de création maximale, exclue (optionnelle)
+     * @param cursor Curseur renvoyé par la page précédente (optionnel)
+     * @param limit Taille de la page
+     * @return La page de paiements et le curseur de la page suivante
+     */
+    ResponseEntity<PaymentPageDto> getUserPayments(@PathVariable UUID userId, PaymentStatus status,
+                                                   LocalDateTime from, LocalDateTime to, String cursor, int limit);
+
+    /**
+     * Endpoint d'export des paiements d'un shop pour la comptabilité (CSV ou NDJSON, optionnellement gzippé).
+     * @param shopId ID du shop
+     * @param format Format de l'export
+     * @param from Date de création minimale, incluse (optionnelle)
+     * @param to Date de création maximale, exclue (optionnelle)
+     * @param gzip true pour compresser le fichier
+     * @return Le fichier d'export
+     */
+    ResponseEntity<StreamingResponseBody> exportShopPayments(@PathVariable UUID shopId, ExportFormat format,
+                                                             LocalDateTime from, LocalDateTime to, boolean gzip);
+
+    /**
+     * Endpoint du résumé de chiffre d'affaires d'un shop, lu dans les agrégats journaliers.
+     * @param shopId ID du shop
+     * @param from Premier jour, inclus (optionnel)
+     * @param to Dernier jour, inclus (optionnel)
+     * @return Les totaux par devise et le détail journalier
+     */
+    ResponseEntity<ShopRevenueSummaryDto> getShopRevenueSummary(@PathVariable UUID shopId, LocalDate from, LocalDate to);
+}
@@ -0,0 +1,30 @@
+package com.etna.gpe.ms_payment_api.controllers;
+
+import com.etna.gpe.ms_payment_api.dto.BulkRefundRequestDto;
+import com.etna.gpe.ms_payment_api.dto.RefundJobDto;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestBody;
+
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Interface du contrôleur REST des remboursements en masse.
+ */
+public interface IRefundJobController {
+
+    /**
+     * Endpoint pour lancer un remboursement en masse, traité en arrière-plan.
+     * @param dto Les paiements à rembourser
+     * @return L'ID du job, à interroger pour suivre l'avancement
+     */
+    ResponseEntity<Map<String, UUID>> submitBulkRefund(@RequestBody BulkRefundRequestDto dto);
+
+    /**
+     * Endpoint pour suivre l'avancement d'un remboursement en masse.
+     * @param jobId L'ID du job
+     * @return L'avancement du job ou 404 si le job est inconnu
+     */
+    ResponseEntity<RefundJobDto> getRefundJob(@PathVariable UUID jobId);
+}
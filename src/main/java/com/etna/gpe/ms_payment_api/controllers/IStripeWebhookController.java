@@ -4,6 +4,8 @@ import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestHeader;
 
+import java.util.Map;
+
 /**
  * Interface du contrôleur webhook pour recevoir et traiter les événements Stripe de manière sécurisée.
  */
@@ -19,4 +21,10 @@ public interface IStripeWebhookController {
      */
     ResponseEntity<String> handleStripeEvent(@RequestBody String payload,
                                            @RequestHeader("Stripe-Signature") String sigHeader);
+
+    /**
+     * Endpoint pour rejouer les événements de l'inbox en échec (après une panne de ms-shop-api par exemple).
+     * @return Nombre d'événements remis en file
+     */
+    ResponseEntity<Map<String, Integer>> replayFailedEvents();
 }
\ No newline at end of file
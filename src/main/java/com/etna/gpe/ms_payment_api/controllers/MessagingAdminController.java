@@ -0,0 +1,44 @@
+package com.etna.gpe.ms_payment_api.controllers;
+
+import com.etna.gpe.ms_payment_api.services.IParkingLotService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.Map;
+
+/**
+ * Contrôleur d'administration de la messagerie RabbitMQ.
+ */
+@RestController
+@RequestMapping("/admin/messaging")
+@Slf4j
+public class MessagingAdminController implements IMessagingAdminController {
+
+    private final IParkingLotService parkingLotService;
+
+    @Autowired
+    public MessagingAdminController(IParkingLotService parkingLotService) {
+        this.parkingLotService = parkingLotService;
+    }
+
+    /**
+     * Endpoint pour rejouer en masse les messages du parking lot d'une file.
+     * @param queue Nom de la file d'origine
+     * @param limit Nombre maximum de messages à rejouer
+     * @return Nombre de messages rejoués
+     */
+    @PostMapping("/parking-lot/{queue}/replay")
+    public ResponseEntity<Map<String, Integer>> replayParkedMessages(@PathVariable String queue,
+                                                                     @RequestParam(defaultValue = "1000") int limit) {
+        log.info("Replaying up to {} parked messages for queue: {}", limit, queue);
+        try {
+            int replayed = parkingLotService.replay(queue, limit);
+            return ResponseEntity.ok(Map.of("replayed", replayed));
+        } catch (IllegalArgumentException e) {
+            log.warn("Cannot replay parked messages: {}", e.getMessage());
+            return ResponseEntity.badRequest().build();
+        }
+    }
+}
@@ -1,15 +1,32 @@
 package com.etna.gpe.ms_payment_api.controllers;
 
+import com.etna.gpe.ms_payment_api.dto.BatchCheckoutRequestDto;
 import com.etna.gpe.ms_payment_api.dto.CheckoutRequestDto;
+import com.etna.gpe.ms_payment_api.dto.PaymentPageDto;
+import com.etna.gpe.ms_payment_api.dto.PaymentView;
 import com.etna.gpe.ms_payment_api.dto.RefundRequestDto;
+import com.etna.gpe.ms_payment_api.dto.ShopRevenueSummaryDto;
 import com.etna.gpe.ms_payment_api.entity.Payment;
+import com.etna.gpe.ms_payment_api.enums.ExportFormat;
+import com.etna.gpe.ms_payment_api.enums.PaymentStatus;
+import com.etna.gpe.ms_payment_api.services.IPaymentExportService;
+import com.etna.gpe.ms_payment_api.services.IPaymentStatusStreamService;
+import com.etna.gpe.ms_payment_api.services.IShopRevenueService;
 import com.etna.gpe.ms_payment_api.services.PaymentService;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.time.LocalDate;
+import java.time.LocalDateTime;
 import java.util.Map;
+import java.util.zip.GZIPOutputStream;
 import java.util.UUID;
 
 /**
@@ -21,10 +38,18 @@ import java.util.UUID;
 public class PaymentController implements IPaymentController {
 
     private final PaymentService paymentService;
+    private final IPaymentExportService paymentExportService;
+    private final IShopRevenueService shopRevenueService;
+    private final IPaymentStatusStreamService paymentStatusStreamService;
 
     @Autowired
-    public PaymentController(PaymentService paymentService) {
+    public PaymentController(PaymentService paymentService, IPaymentExportService paymentExportService,
+                             IShopRevenueService shopRevenueService,
+                             IPaymentStatusStreamService paymentStatusStreamService) {
         this.paymentService = paymentService;
+        this.paymentExportService = paymentExportService;
+        this.shopRevenueService = shopRevenueService;
+        this.paymentStatusStreamService = paymentStatusStreamService;
     }
 
     /**
@@ -48,6 +73,29 @@ public class PaymentController implements IPaymentController {
         return ResponseEntity.ok(Map.of("checkout_url", checkoutUrl));
     }
 
+    /**
+     * Endpoint pour créer une session de paiement Stripe Checkout groupée (plusieurs services d'un même shop).
+     * @param dto Données de la requête de paiement groupé
+     * @return URL de la session Checkout
+     */
+    @PostMapping("/checkout/batch")
+    public ResponseEntity<Map<String, String>> createBatchCheckout(@RequestBody BatchCheckoutRequestDto dto) {
+        log.info("Creating batch checkout session for user: {}, shop: {}", dto.getUserId(), dto.getShopId());
+
+        try {
+            String checkoutUrl = paymentService.createBatchCheckoutSession(
+                dto.getUserId(),
+                dto.getShopId(),
+                dto.getCurrency(),
+                dto.getItems()
+            );
+            return ResponseEntity.ok(Map.of("checkout_url", checkoutUrl));
+        } catch (IllegalArgumentException e) {
+            log.warn("Invalid batch checkout request for shop: {} - {}", dto.getShopId(), e.getMessage());
+            return ResponseEntity.badRequest().build();
+        }
+    }
+
     /**
      * Endpoint optionnel pour initier un remboursement depuis l'application.
      * @param paymentId ID du paiement à rembourser
@@ -58,8 +106,13 @@ public class PaymentController implements IPaymentController {
     public ResponseEntity<Payment> refundPayment(@PathVariable UUID paymentId, @RequestBody RefundRequestDto dto) {
         log.info("Initiating refund for payment: {}", paymentId);
 
-        Payment refundedPayment = paymentService.refundPayment(paymentId, dto.getAmount());
-        return ResponseEntity.ok(refundedPayment);
+        try {
+            Payment refundedPayment = paymentService.refundPayment(paymentId, dto.getAmount());
+            return ResponseEntity.ok(refundedPayment);
+        } catch (IllegalArgumentException e) {
+            log.warn("Invalid refund request for payment: {} - {}", paymentId, e.getMessage());
+            return ResponseEntity.badRequest().build();
+        }
     }
 
     /**
@@ -68,9 +121,9 @@ public class PaymentController implements IPaymentController {
      * @return Le paiement trouvé
      */
     @GetMapping("/{paymentId}")
-    public ResponseEntity<Payment> getPayment(@PathVariable UUID paymentId) {
+    public ResponseEntity<PaymentView> getPayment(@PathVariable UUID paymentId) {
         log.info("Getting payment: {}", paymentId);
-        Payment payment = paymentService.findById(paymentId);
+        PaymentView payment = paymentService.findById(paymentId);
         return ResponseEntity.ok(payment);
     }
     
@@ -80,10 +133,10 @@ public class PaymentController implements IPaymentController {
      * @return Le paiement associé au rendez-vous ou 404 si aucun paiement n'est trouvé
      */
     @GetMapping("/appointment/{appointmentId}")
-    public ResponseEntity<Payment> getPaymentByAppointment(@PathVariable UUID appointmentId) {
+    public ResponseEntity<PaymentView> getPaymentByAppointment(@PathVariable UUID appointmentId) {
         log.info("Getting payment for appointment: {}", appointmentId);
         
-        Payment payment = paymentService.findByAppointmentId(appointmentId);
+        PaymentView payment = paymentService.findByAppointmentId(appointmentId);
         
         if (payment != null) {
             return ResponseEntity.ok(payment);
@@ -91,4 +144,124 @@ public class PaymentController implements IPaymentController {
             return ResponseEntity.notFound().build();
         }
     }
+
+    /**
+     * Endpoint de suivi en temps réel (Server-Sent Events) du paiement d'un rendez-vous, à la place du polling.
+     * Un événement "payment" est envoyé avec l'état courant puis à chaque changement de statut ;
+     * le flux se termine dès que le paiement n'est plus en attente.
+     * @param appointmentId ID du rendez-vous
+     * @return Le flux SSE
+     */
+    @GetMapping(value = "/appointment/{appointmentId}/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter streamPaymentByAppointment(@PathVariable UUID appointmentId) {
+        log.info("Streaming payment status for appointment: {}", appointmentId);
+        return paymentStatusStreamService.subscribe(appointmentId);
+    }
+
+    /**
+     * Endpoint pour lister les paiements d'un shop, du plus récent au plus ancien.
+     * @param shopId ID du shop
+     * @param status Statut recherché (optionnel)
+     * @param from Date de création minimale, incluse (optionnelle, ISO 8601)
+     * @param to Date de création maximale, exclue (optionnelle, ISO 8601)
+     * @param cursor Curseur renvoyé par la page précédente (optionnel)
+     * @param limit Taille de la page
+     * @return La page de paiements et le curseur de la page suivante
+     */
+    @GetMapping("/shop/{shopId}")
+    public ResponseEntity<PaymentPageDto> getShopPayments(@PathVariable UUID shopId,
+                                                          @RequestParam(required = false) PaymentStatus status,
+                                                          @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+                                                          @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to,
+                                                          @RequestParam(required = false) String cursor,
+                                                          @RequestParam(defaultValue = "20") int limit) {
+        log.info("Listing payments for shop: {}", shopId);
+        try {
+            return ResponseEntity.ok(paymentService.listShopPayments(shopId, status, from, to, cursor, limit));
+        } catch (IllegalArgumentException e) {
+            log.warn("Invalid payment listing request for shop: {} - {}", shopId, e.getMessage());
+            return ResponseEntity.badRequest().build();
+        }
+    }
+
+    /**
+     * Endpoint pour lister les paiements d'un utilisateur, du plus récent au plus ancien.
+     * @param userId ID de l'utilisateur
+     * @param status Statut recherché (optionnel)
+     * @param from Date de création minimale, incluse (optionnelle, ISO 8601)
+     * @param to Date de création maximale, exclue (optionnelle, ISO 8601)
+     * @param cursor Curseur renvoyé par la page précédente (optionnel)
+     * @param limit Taille de la page
+     * @return La page de paiements et le curseur de la page suivante
+     */
+    @GetMapping("/user/{userId}")
+    public ResponseEntity<PaymentPageDto> getUserPayments(@PathVariable UUID userId,
+                                                          @RequestParam(required = false) PaymentStatus status,
+                                                          @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+                                                          @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to,
+                                                          @RequestParam(required = false) String cursor,
+                                                          @RequestParam(defaultValue = "20") int limit) {
+        log.info("Listing payments for user: {}", userId);
+        try {
+            return ResponseEntity.ok(paymentService.listUserPayments(userId, status, from, to, cursor, limit));
+        } catch (IllegalArgumentException e) {
+            log.warn("Invalid payment listing request for user: {} - {}", userId, e.getMessage());
+            return ResponseEntity.badRequest().build();
+        }
+    }
+
+    /**
+     * Endpoint d'export des paiements d'un shop pour la comptabilité (CSV ou NDJSON, optionnellement gzippé).
+     * Le fichier est écrit en streaming pendant la lecture en base.
+     * @param shopId ID du shop
+     * @param format Format de l'export
+     * @param from Date de création minimale, incluse (optionnelle, ISO 8601)
+     * @param to Date de création maximale, exclue (optionnelle, ISO 8601)
+     * @param gzip true pour compresser le fichier
+     * @return Le fichier d'export
+     */
+    @GetMapping("/shop/{shopId}/export")
+    public ResponseEntity<StreamingResponseBody> exportShopPayments(@PathVariable UUID shopId,
+                                                                    @RequestParam(defaultValue = "CSV") ExportFormat format,
+                                                                    @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+                                                                    @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to,
+                                                                    @RequestParam(defaultValue = "false") boolean gzip) {
+        log.info("Exporting payments for shop: {} as {}", shopId, format);
+
+        String filename = "payments-" + shopId + "." + format.getExtension() + (gzip ? ".gz" : "");
+        StreamingResponseBody body = out -> {
+            if (gzip) {
+                GZIPOutputStream gzipOut = new GZIPOutputStream(out, 64 * 1024);
+                paymentExportService.exportShopPayments(shopId, from, to, format, gzipOut);
+                gzipOut.finish();
+            } else {
+                paymentExportService.exportShopPayments(shopId, from, to, format, out);
+            }
+        };
+
+        return ResponseEntity.ok()
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + filename + "\"")
+                .contentType(gzip ? MediaType.parseMediaType("application/gzip") : MediaType.parseMediaType(format.getContentType()))
+                .body(body);
+    }
+
+    /**
+     * Endpoint du résumé de chiffre d'affaires d'un shop, lu dans les agrégats journaliers.
+     * @param shopId ID du shop
+     * @param from Premier jour, inclus (optionnel, 30 jours avant "to" par défaut)
+     * @param to Dernier jour, inclus (optionnel, aujourd'hui par défaut)
+     * @return Les totaux par devise et le détail journalier
+     */
+    @GetMapping("/shop/{shopId}/summary")
+    public ResponseEntity<ShopRevenueSummaryDto> getShopRevenueSummary(@PathVariable UUID shopId,
+                                                                       @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+                                                                       @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to) {
+        LocalDate end = to != null ? to : LocalDate.now();
+        LocalDate start = from != null ? from : end.minusDays(30);
+        if (start.isAfter(end)) {
+            return ResponseEntity.badRequest().build();
+        }
+        log.info("Revenue summary for shop: {} from {} to {}", shopId, start, end);
+        return ResponseEntity.ok(shopRevenueService.getSummary(shopId, start, end));
+    }
 }
@@ -0,0 +1,62 @@
+package com.etna.gpe.ms_payment_api.controllers;
+
+import com.etna.gpe.ms_payment_api.dto.BulkRefundRequestDto;
+import com.etna.gpe.ms_payment_api.dto.RefundJobDto;
+import com.etna.gpe.ms_payment_api.services.IRefundJobService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Contrôleur REST des remboursements en masse.
+ */
+@RestController
+@RequestMapping("/payments/refunds")
+@Slf4j
+public class RefundJobController implements IRefundJobController {
+
+    private final IRefundJobService refundJobService;
+
+    @Autowired
+    public RefundJobController(IRefundJobService refundJobService) {
+        this.refundJobService = refundJobService;
+    }
+
+    /**
+     * Endpoint pour lancer un remboursement en masse, traité en arrière-plan.
+     * @param dto Les paiements à rembourser
+     * @return L'ID du job, à interroger pour suivre l'avancement
+     */
+    @PostMapping("/bulk")
+    public ResponseEntity<Map<String, UUID>> submitBulkRefund(@RequestBody BulkRefundRequestDto dto) {
+        int size = dto.getItems() != null ? dto.getItems().size() : 0;
+        log.info("Submitting bulk refund for {} payments", size);
+        try {
+            UUID jobId = refundJobService.submit(dto.getItems());
+            return ResponseEntity.accepted().body(Map.of("job_id", jobId));
+        } catch (IllegalArgumentException e) {
+            log.warn("Invalid bulk refund request - {}", e.getMessage());
+            return ResponseEntity.badRequest().build();
+        }
+    }
+
+    /**
+     * Endpoint pour suivre l'avancement d'un remboursement en masse.
+     * @param jobId L'ID du job
+     * @return L'avancement du job ou 404 si le job est inconnu
+     */
+    @GetMapping("/jobs/{jobId}")
+    public ResponseEntity<RefundJobDto> getRefundJob(@PathVariable UUID jobId) {
+        log.info("Getting bulk refund job: {}", jobId);
+        RefundJobDto job = refundJobService.getJob(jobId);
+        if (job != null) {
+            return ResponseEntity.ok(job);
+        } else {
+            return ResponseEntity.notFound().build();
+        }
+    }
+}
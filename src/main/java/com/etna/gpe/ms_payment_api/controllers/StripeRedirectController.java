@@ -1,5 +1,6 @@
 package com.etna.gpe.ms_payment_api.controllers;
 
+import com.etna.gpe.ms_payment_api.services.IProcessedEventService;
 import com.etna.gpe.ms_payment_api.services.PaymentService;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -18,10 +19,12 @@ import java.util.Map;
 public class StripeRedirectController implements IStripeRedirectController {
 
     private final PaymentService paymentService;
+    private final IProcessedEventService processedEventService;
 
     @Autowired
-    public StripeRedirectController(PaymentService paymentService) {
+    public StripeRedirectController(PaymentService paymentService, IProcessedEventService processedEventService) {
         this.paymentService = paymentService;
+        this.processedEventService = processedEventService;
     }
 
     /**
@@ -36,8 +39,11 @@ public class StripeRedirectController implements IStripeRedirectController {
         log.info("Payment success redirect received for session: {}", sessionId);
 
         try {
-            // Marquer le paiement comme complété et publier l'événement RabbitMQ
-            var completedPayment = paymentService.handleCheckoutCompleted(sessionId);
+            // Session déjà finalisée (webhook ou rechargement de la page) : pas de retraitement
+            var completedPayment = processedEventService.isProcessed(IProcessedEventService.checkoutKey(sessionId))
+                    ? paymentService.findByStripeSessionId(sessionId)
+                    // Marquer le paiement comme complété et publier l'événement RabbitMQ
+                    : paymentService.handleCheckoutCompleted(sessionId);
 
             log.info("Payment {} successfully completed", completedPayment.getId());
 
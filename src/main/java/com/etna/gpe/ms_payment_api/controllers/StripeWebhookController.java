@@ -1,10 +1,10 @@
 package com.etna.gpe.ms_payment_api.controllers;
 
-import com.etna.gpe.ms_payment_api.services.PaymentService;
+import com.etna.gpe.ms_payment_api.services.IProcessedEventService;
+import com.etna.gpe.ms_payment_api.services.IStripeEventProcessor;
+import com.etna.gpe.ms_payment_api.services.IStripeWebhookInboxService;
 import com.stripe.exception.SignatureVerificationException;
 import com.stripe.model.Event;
-import com.stripe.model.Charge;
-import com.stripe.model.checkout.Session;
 import com.stripe.net.Webhook;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -13,6 +13,8 @@ import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import java.util.Map;
+
 /**
  * Contrôleur webhook pour recevoir et traiter les événements Stripe de manière sécurisée.
  */
@@ -24,16 +26,23 @@ public class StripeWebhookController implements IStripeWebhookController {
     @Value("${stripe.webhook.secret}")
     private String endpointSecret;
 
-    private final PaymentService paymentService;
+    private final IStripeEventProcessor stripeEventProcessor;
+    private final IStripeWebhookInboxService webhookInboxService;
+    private final IProcessedEventService processedEventService;
 
     @Autowired
-    public StripeWebhookController(PaymentService paymentService) {
-        this.paymentService = paymentService;
+    public StripeWebhookController(IStripeEventProcessor stripeEventProcessor,
+                                   IStripeWebhookInboxService webhookInboxService,
+                                   IProcessedEventService processedEventService) {
+        this.stripeEventProcessor = stripeEventProcessor;
+        this.webhookInboxService = webhookInboxService;
+        this.processedEventService = processedEventService;
     }
 
     /**
      * Endpoint webhook pour recevoir les événements Stripe.
      * Vérifie la signature Stripe pour sécuriser l'endpoint.
+     * En mode inbox, l'événement est seulement persisté puis traité en arrière-plan.
      *
      * @param payload Corps de la requête webhook
      * @param sigHeader En-tête de signature Stripe
@@ -58,25 +67,24 @@ public class StripeWebhookController implements IStripeWebhookController {
 
         // Traitement des différents types d'événements Stripe
         String eventType = event.getType();
-        log.info("Processing Stripe event: {}", eventType);
-
-        try {
-            switch (eventType) {
-                case "checkout.session.completed":
-                    handleCheckoutSessionCompleted(event);
-                    break;
 
-                case "charge.refunded":
-                    handleChargeRefunded(event);
-                    break;
+        if (!stripeEventProcessor.supports(eventType)) {
+            log.info("Unhandled Stripe event type: {}", eventType);
+            return ResponseEntity.ok("Success");
+        }
 
-                case "payment_intent.payment_failed":
-                    handlePaymentFailed(event);
-                    break;
+        // Stripe livre au moins une fois : une livraison déjà traitée est acquittée sans retraitement
+        if (processedEventService.isProcessed(event.getId())) {
+            log.info("Duplicate Stripe event {} ignored", event.getId());
+            return ResponseEntity.ok("Success");
+        }
 
-                default:
-                    log.info("Unhandled Stripe event type: {}", eventType);
-                    break;
+        try {
+            if (webhookInboxService.isEnabled()) {
+                webhookInboxService.enqueue(event, payload);
+            } else {
+                stripeEventProcessor.process(event);
+                processedEventService.markProcessed(event.getId());
             }
         } catch (Exception e) {
             log.error("Error processing Stripe event: {}", eventType, e);
@@ -87,39 +95,13 @@ public class StripeWebhookController implements IStripeWebhookController {
     }
 
     /**
-     * Traite l'événement checkout.session.completed.
-     * Indique que le client a complété le paiement avec succès.
-     */
-    private void handleCheckoutSessionCompleted(Event event) {
-        Session session = (Session) event.getDataObjectDeserializer().getObject().orElse(null);
-        if (session != null) {
-            log.info("Processing checkout.session.completed for session: {}", session.getId());
-            paymentService.handleCheckoutCompleted(session.getId());
-        } else {
-            log.error("Failed to deserialize checkout.session.completed event");
-        }
-    }
-
-    /**
-     * Traite l'événement charge.refunded.
-     * Indique qu'un remboursement a été effectué sur le paiement.
-     */
-    private void handleChargeRefunded(Event event) {
-        Charge charge = (Charge) event.getDataObjectDeserializer().getObject().orElse(null);
-        if (charge != null) {
-            log.info("Processing charge.refunded for charge: {}", charge.getId());
-            paymentService.handlePaymentRefunded(charge.getPaymentIntent());
-        } else {
-            log.error("Failed to deserialize charge.refunded event");
-        }
-    }
-
-    /**
-     * Traite l'événement payment_intent.payment_failed.
-     * Indique qu'un paiement a échoué.
+     * Endpoint pour rejouer les événements de l'inbox en échec (après une panne de ms-shop-api par exemple).
+     * @return Nombre d'événements remis en file
      */
-    private void handlePaymentFailed(Event event) {
-        log.info("Payment failed event received: {}", event.getId());
-        // Implementation future si nécessaire pour gérer les échecs de paiement
+    @PostMapping("/webhook/inbox/replay")
+    public ResponseEntity<Map<String, Integer>> replayFailedEvents() {
+        log.info("Replaying failed Stripe events from inbox");
+        int requeued = webhookInboxService.replayFailedEvents();
+        return ResponseEntity.ok(Map.of("requeued", requeued));
     }
 }
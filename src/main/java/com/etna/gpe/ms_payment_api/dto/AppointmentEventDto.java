@@ -0,0 +1,26 @@
+package com.etna.gpe.ms_payment_api.dto;
+
+import com.fasterxml.jackson.annotation.JsonAlias;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.UUID;
+
+/**
+ * DTO des événements de rendez-vous reçus de ms-shop-api (appointment.confirmed, appointment.cancelled).
+ * Seuls les champs utiles au paiement sont lus, les autres sont ignorés.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class AppointmentEventDto {
+
+    @JsonAlias("id")
+    private UUID appointmentId;
+    private UUID shopId;
+    private UUID userId;
+    private String status;
+}
@@ -0,0 +1,22 @@
+package com.etna.gpe.ms_payment_api.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * DTO pour les requêtes de création d'une session Stripe Checkout groupée :
+ * plusieurs services d'un même shop payés en une seule fois par un utilisateur.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class BatchCheckoutRequestDto {
+    private UUID userId;
+    private UUID shopId;
+    private String currency;
+    private List<CheckoutItemDto> items;
+}
@@ -0,0 +1,17 @@
+package com.etna.gpe.ms_payment_api.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * DTO pour les requêtes de remboursement en masse (par exemple l'annulation d'une journée de rendez-vous).
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class BulkRefundRequestDto {
+    private List<RefundItemRequestDto> items;
+}
@@ -0,0 +1,19 @@
+package com.etna.gpe.ms_payment_api.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.UUID;
+
+/**
+ * DTO d'une ligne d'un checkout groupé : un service (et son rendez-vous) à payer.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class CheckoutItemDto {
+    private UUID appointmentId;
+    private UUID serviceId;
+    private long amount; // montant en cents
+}
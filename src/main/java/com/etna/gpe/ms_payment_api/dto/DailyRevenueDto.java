@@ -0,0 +1,24 @@
+package com.etna.gpe.ms_payment_api.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDate;
+
+/**
+ * DTO des montants de chiffre d'affaires d'un jour (ou d'une période si date est null), en centimes.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class DailyRevenueDto {
+    private LocalDate date;
+    private String currency;
+    private long grossAmount;
+    private long feeAmount;
+    private long refundedAmount;
+    private long netAmount; // brut - frais - remboursements
+    private long completedCount;
+    private long refundedCount;
+}
@@ -0,0 +1,19 @@
+package com.etna.gpe.ms_payment_api.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.UUID;
+
+/**
+ * Message d'invalidation du cache des paiements, diffusé à toutes les instances (exchange fanout).
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class PaymentCacheInvalidationDto {
+    private UUID paymentId;
+    private UUID appointmentId;
+    private String origin; // instance émettrice, qui a déjà appliqué l'invalidation localement
+}
@@ -0,0 +1,46 @@
+package com.etna.gpe.ms_payment_api.dto;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.Base64;
+import java.util.UUID;
+
+/**
+ * Position dans une liste de paiements triée par (createdAt, id) décroissants.
+ * Transmis au client sous forme opaque (Base64 URL de "createdAt|id").
+ * @param createdAt Date de création du dernier paiement de la page
+ * @param id ID du dernier paiement de la page
+ */
+public record PaymentCursor(LocalDateTime createdAt, UUID id) {
+
+    private static final String SEPARATOR = "|";
+
+    public static PaymentCursor of(PaymentSummaryDto payment) {
+        return new PaymentCursor(payment.getCreatedAt(), payment.getId());
+    }
+
+    public String encode() {
+        String raw = createdAt + SEPARATOR + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Décode un curseur reçu du client.
+     * @param cursor Curseur opaque, ou null pour la première page
+     * @return Le curseur décodé, ou null
+     * @throws IllegalArgumentException si le curseur est invalide
+     */
+    public static PaymentCursor decode(String cursor) {
+        if (cursor == null || cursor.isBlank()) {
+            return null;
+        }
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            int separator = raw.indexOf(SEPARATOR);
+            return new PaymentCursor(LocalDateTime.parse(raw.substring(0, separator)),
+                    UUID.fromString(raw.substring(separator + 1)));
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("Invalid cursor: " + cursor, e);
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package com.etna.gpe.ms_payment_api.dto;
+
+import com.etna.gpe.ms_payment_api.entity.Payment;
+import com.etna.gpe.ms_payment_api.enums.PaymentStatus;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+/**
+ * Événement de paiement publié sur RabbitMQ (payment.completed, payment.refunded).
+ * Ne contient que ce dont les consommateurs ont besoin ; toute évolution incompatible
+ * doit incrémenter SCHEMA_VERSION, transmis dans l'en-tête x-schema-version.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class PaymentEvent {
+
+    public static final int SCHEMA_VERSION = 1;
+
+    private UUID paymentId;
+    private UUID userId;
+    private UUID shopId;
+    private UUID appointmentId;
+    private UUID serviceId;
+    private long amount;
+    private String currency;
+    private PaymentStatus status;
+    private LocalDateTime occurredAt;
+
+    /**
+     * Construit l'événement correspondant à l'état courant d'un paiement.
+     * @param payment Le paiement
+     * @return L'événement à publier
+     */
+    public static PaymentEvent from(Payment payment) {
+        return new PaymentEvent(payment.getId(), payment.getUserId(), payment.getShopId(),
+                payment.getAppointmentId(), payment.getServiceId(), payment.getAmount(),
+                payment.getCurrency(), payment.getStatus(), payment.getUpdatedAt());
+    }
+}
@@ -0,0 +1,19 @@
+package com.etna.gpe.ms_payment_api.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * DTO d'une page de paiements.
+ * nextCursor est à transmettre pour obtenir la page suivante ; il vaut null sur la dernière page.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class PaymentPageDto {
+    private List<PaymentSummaryDto> items;
+    private String nextCursor;
+}
@@ -0,0 +1,28 @@
+package com.etna.gpe.ms_payment_api.dto;
+
+import com.etna.gpe.ms_payment_api.enums.PaymentStatus;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+/**
+ * DTO allégé d'un paiement pour les listes (projection JPQL, sans les IDs Stripe).
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class PaymentSummaryDto {
+    private UUID id;
+    private UUID userId;
+    private UUID shopId;
+    private UUID appointmentId;
+    private UUID serviceId;
+    private long amount; // montant en cents
+    private long refundedAmount; // montant déjà remboursé en cents
+    private String currency;
+    private PaymentStatus status;
+    private LocalDateTime createdAt;
+}
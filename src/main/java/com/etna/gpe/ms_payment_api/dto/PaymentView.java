@@ -0,0 +1,38 @@
+package com.etna.gpe.ms_payment_api.dto;
+
+import com.etna.gpe.ms_payment_api.entity.Payment;
+import com.etna.gpe.ms_payment_api.enums.PaymentStatus;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+/**
+ * Copie immuable d'un paiement, servie par le cache des paiements et les endpoints de consultation.
+ * Contrairement à l'entité, elle peut être partagée entre threads et requêtes sans risque de modification.
+ * Sérialisée avec les mêmes champs que l'entité Payment.
+ */
+public record PaymentView(
+        UUID id,
+        long amount,
+        long refundedAmount,
+        String currency,
+        UUID userId,
+        UUID shopId,
+        UUID appointmentId,
+        UUID serviceId,
+        PaymentStatus status,
+        String stripeSessionId,
+        String stripePaymentIntentId,
+        String stripeChargeId,
+        LocalDateTime createdAt,
+        LocalDateTime updatedAt,
+        Long version) {
+
+    public static PaymentView from(Payment payment) {
+        return new PaymentView(payment.getId(), payment.getAmount(), payment.getRefundedAmount(),
+                payment.getCurrency(), payment.getUserId(), payment.getShopId(), payment.getAppointmentId(),
+                payment.getServiceId(), payment.getStatus(), payment.getStripeSessionId(),
+                payment.getStripePaymentIntentId(), payment.getStripeChargeId(), payment.getCreatedAt(),
+                payment.getUpdatedAt(), payment.getVersion());
+    }
+}
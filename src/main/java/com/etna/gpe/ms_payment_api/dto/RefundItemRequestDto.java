@@ -0,0 +1,18 @@
+package com.etna.gpe.ms_payment_api.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.UUID;
+
+/**
+ * DTO d'une ligne d'un remboursement en masse : un paiement à rembourser.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class RefundItemRequestDto {
+    private UUID paymentId;
+    private Long amount; // montant à rembourser en cents, null pour rembourser le reste du paiement
+}
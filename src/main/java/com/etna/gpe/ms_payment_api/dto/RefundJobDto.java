@@ -0,0 +1,28 @@
+package com.etna.gpe.ms_payment_api.dto;
+
+import com.etna.gpe.ms_payment_api.enums.RefundJobStatus;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * DTO de l'avancement d'un job de remboursement en masse ; seules les lignes en échec sont détaillées.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class RefundJobDto {
+    private UUID jobId;
+    private RefundJobStatus status;
+    private int total;
+    private long pending;
+    private long succeeded;
+    private long failed;
+    private LocalDateTime createdAt;
+    private LocalDateTime completedAt;
+    private List<RefundJobItemDto> failures;
+}
@@ -0,0 +1,29 @@
+package com.etna.gpe.ms_payment_api.dto;
+
+import com.etna.gpe.ms_payment_api.entity.RefundJobItem;
+import com.etna.gpe.ms_payment_api.enums.RefundItemStatus;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.UUID;
+
+/**
+ * DTO d'une ligne d'un job de remboursement en masse.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class RefundJobItemDto {
+    private UUID paymentId;
+    private long amount;
+    private RefundItemStatus status;
+    private int attempts;
+    private String stripeRefundId;
+    private String error;
+
+    public static RefundJobItemDto from(RefundJobItem item) {
+        return new RefundJobItemDto(item.getPaymentId(), item.getAmount(), item.getStatus(), item.getAttempts(),
+                item.getStripeRefundId(), item.getLastError());
+    }
+}
@@ -0,0 +1,23 @@
+package com.etna.gpe.ms_payment_api.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * DTO du résumé de chiffre d'affaires d'un shop sur une période : totaux par devise et détail journalier.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ShopRevenueSummaryDto {
+    private UUID shopId;
+    private LocalDate from;
+    private LocalDate to;
+    private List<DailyRevenueDto> totals;
+    private List<DailyRevenueDto> days;
+}
@@ -27,6 +27,12 @@ public class Payment {
     @Column(nullable = false)
     private long amount;
 
+    /**
+     * Montant déjà remboursé en cents ; le paiement passe au statut REFUNDED lorsqu'il atteint amount.
+     */
+    @Column(name = "refunded_amount", nullable = false)
+    private long refundedAmount;
+
     @Column(nullable = false, length = 3)
     private String currency;
 
@@ -61,6 +67,13 @@ public class Payment {
     @Column(name = "updated_at", nullable = false)
     private LocalDateTime updatedAt;
 
+    /**
+     * Verrou optimiste : les mises à jour de l'entité échouent si la ligne a été modifiée entre-temps.
+     * Les transitions de statut (UPDATE conditionnels du repository) l'incrémentent aussi.
+     */
+    @Version
+    private Long version;
+
     @PrePersist
     public void prePersist() {
         LocalDateTime now = LocalDateTime.now();
@@ -0,0 +1,73 @@
+package com.etna.gpe.ms_payment_api.entity;
+
+import com.etna.gpe.ms_payment_api.enums.OutboxMessageStatus;
+import jakarta.persistence.*;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+/**
+ * Message RabbitMQ en attente de publication (transactional outbox).
+ * Le message est enregistré dans la même transaction que la mise à jour du paiement,
+ * puis publié par le relais ; il est supprimé une fois confirmé par le broker.
+ * Un message n'est publié qu'une fois les messages précédents du même paiement confirmés.
+ */
+@Entity
+@Table(name = "payment_outbox")
+@Data
+@NoArgsConstructor
+public class PaymentOutboxMessage {
+
+    /**
+     * Identifiant séquentiel : les messages sont publiés dans leur ordre d'insertion.
+     */
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "payment_id", nullable = false)
+    private UUID paymentId;
+
+    @Column(nullable = false)
+    private String exchange;
+
+    @Column(name = "routing_key", nullable = false)
+    private String routingKey;
+
+    /**
+     * Corps du message déjà sérialisé (JSON ou CBOR selon content_type).
+     */
+    @Lob
+    @Column(name = "payload", nullable = false, columnDefinition = "BLOB")
+    private byte[] payload;
+
+    @Column(name = "content_type", length = 100)
+    private String contentType;
+
+    /**
+     * En-tête de type utilisé par les consommateurs pour désérialiser le message.
+     */
+    @Column(name = "type_id")
+    private String typeId;
+
+    @Column(name = "schema_version")
+    private Integer schemaVersion;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 20)
+    private OutboxMessageStatus status;
+
+    @Column(nullable = false)
+    private int attempts;
+
+    @Column(name = "last_error", length = 1000)
+    private String lastError;
+
+    @Column(name = "created_at", nullable = false)
+    private LocalDateTime createdAt;
+
+    @Column(name = "claimed_at")
+    private LocalDateTime claimedAt;
+}
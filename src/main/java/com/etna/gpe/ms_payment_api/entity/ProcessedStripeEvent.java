@@ -0,0 +1,53 @@
+package com.etna.gpe.ms_payment_api.entity;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.domain.Persistable;
+
+import java.time.LocalDateTime;
+
+/**
+ * Entité représentant un événement Stripe (ou une session Checkout) déjà traité.
+ * Sert à ignorer les livraisons en double, Stripe livrant ses webhooks au moins une fois.
+ */
+@Entity
+@Table(name = "processed_stripe_event")
+@Data
+@NoArgsConstructor
+public class ProcessedStripeEvent implements Persistable<String> {
+
+    @Id
+    @Column(name = "event_key", nullable = false)
+    private String eventKey;
+
+    @Column(name = "processed_at", nullable = false)
+    private LocalDateTime processedAt;
+
+    /**
+     * Permet à Spring Data d'effectuer un simple INSERT (sans SELECT préalable) malgré l'ID assigné.
+     */
+    @Transient
+    private boolean newEntity = true;
+
+    public ProcessedStripeEvent(String eventKey, LocalDateTime processedAt) {
+        this.eventKey = eventKey;
+        this.processedAt = processedAt;
+    }
+
+    @Override
+    public String getId() {
+        return eventKey;
+    }
+
+    @Override
+    public boolean isNew() {
+        return newEntity;
+    }
+
+    @PostLoad
+    @PostPersist
+    public void markNotNew() {
+        newEntity = false;
+    }
+}
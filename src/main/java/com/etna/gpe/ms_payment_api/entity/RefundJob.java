@@ -0,0 +1,37 @@
+package com.etna.gpe.ms_payment_api.entity;
+
+import com.etna.gpe.ms_payment_api.enums.RefundJobStatus;
+import jakarta.persistence.*;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+/**
+ * Entité représentant un job de remboursement en masse (par exemple l'annulation d'une journée de rendez-vous).
+ * L'avancement est calculé à partir des statuts de ses lignes.
+ */
+@Entity
+@Table(name = "refund_job")
+@Data
+@NoArgsConstructor
+public class RefundJob {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.UUID)
+    private UUID id;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 20)
+    private RefundJobStatus status;
+
+    @Column(name = "total_items", nullable = false)
+    private int totalItems;
+
+    @Column(name = "created_at", nullable = false)
+    private LocalDateTime createdAt;
+
+    @Column(name = "completed_at")
+    private LocalDateTime completedAt;
+}
@@ -0,0 +1,60 @@
+package com.etna.gpe.ms_payment_api.entity;
+
+import com.etna.gpe.ms_payment_api.enums.RefundItemStatus;
+import jakarta.persistence.*;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+/**
+ * Entité représentant un remboursement à effectuer dans le cadre d'un job de remboursement en masse.
+ */
+@Entity
+@Table(name = "refund_job_item")
+@Data
+@NoArgsConstructor
+public class RefundJobItem {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.UUID)
+    private UUID id;
+
+    @Column(name = "job_id", nullable = false)
+    private UUID jobId;
+
+    @Column(name = "payment_id", nullable = false)
+    private UUID paymentId;
+
+    /**
+     * Montant à rembourser en cents, fixé à la soumission du job.
+     */
+    @Column(nullable = false)
+    private long amount;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 20)
+    private RefundItemStatus status;
+
+    @Column(nullable = false)
+    private int attempts;
+
+    @Column(name = "stripe_refund_id")
+    private String stripeRefundId;
+
+    @Column(name = "last_error", length = 1000)
+    private String lastError;
+
+    /**
+     * Date avant laquelle une ligne en échec ne doit pas être retentée (backoff exponentiel).
+     */
+    @Column(name = "next_attempt_at")
+    private LocalDateTime nextAttemptAt;
+
+    @Column(name = "claimed_at")
+    private LocalDateTime claimedAt;
+
+    @Column(name = "updated_at", nullable = false)
+    private LocalDateTime updatedAt;
+}
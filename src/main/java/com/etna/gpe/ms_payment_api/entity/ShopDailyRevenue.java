@@ -0,0 +1,34 @@
+package com.etna.gpe.ms_payment_api.entity;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Agrégat journalier du chiffre d'affaires d'un shop, mis à jour à chaque changement de statut d'un paiement.
+ * Les montants sont en centimes.
+ */
+@Entity
+@Table(name = "shop_daily_revenue")
+@Data
+@NoArgsConstructor
+public class ShopDailyRevenue {
+
+    @EmbeddedId
+    private ShopDailyRevenueId id;
+
+    @Column(name = "gross_amount", nullable = false)
+    private long grossAmount;
+
+    @Column(name = "fee_amount", nullable = false)
+    private long feeAmount;
+
+    @Column(name = "refunded_amount", nullable = false)
+    private long refundedAmount;
+
+    @Column(name = "completed_count", nullable = false)
+    private int completedCount;
+
+    @Column(name = "refunded_count", nullable = false)
+    private int refundedCount;
+}
@@ -0,0 +1,84 @@
+package com.etna.gpe.ms_payment_api.entity;
+
+import com.etna.gpe.ms_payment_api.enums.WebhookEventStatus;
+import jakarta.persistence.*;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.domain.Persistable;
+
+import java.time.LocalDateTime;
+
+/**
+ * Entité représentant un événement Stripe reçu par webhook et en attente de traitement.
+ * L'identifiant est l'ID de l'événement Stripe : une même livraison ne peut être insérée qu'une fois.
+ */
+@Entity
+@Table(name = "stripe_webhook_inbox")
+@Data
+@NoArgsConstructor
+public class StripeWebhookEvent implements Persistable<String> {
+
+    @Id
+    @Column(name = "event_id", nullable = false)
+    private String eventId;
+
+    @Column(name = "event_type", nullable = false, length = 100)
+    private String eventType;
+
+    /**
+     * Clé d'ordonnancement (PaymentIntent ou session Stripe) : les événements d'une même clé
+     * sont traités séquentiellement, dans leur ordre de réception.
+     */
+    @Column(name = "ordering_key", nullable = false)
+    private String orderingKey;
+
+    @Column(name = "payload", nullable = false, columnDefinition = "LONGTEXT")
+    private String payload;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 20)
+    private WebhookEventStatus status;
+
+    @Column(nullable = false)
+    private int attempts;
+
+    @Column(name = "last_error", length = 1000)
+    private String lastError;
+
+    @Column(name = "received_at", nullable = false)
+    private LocalDateTime receivedAt;
+
+    @Column(name = "claimed_at")
+    private LocalDateTime claimedAt;
+
+    /**
+     * Date avant laquelle un événement en échec n'est pas rejoué ; null s'il peut l'être immédiatement.
+     */
+    @Column(name = "next_attempt_at")
+    private LocalDateTime nextAttemptAt;
+
+    @Column(name = "processed_at")
+    private LocalDateTime processedAt;
+
+    /**
+     * Permet à Spring Data d'effectuer un simple INSERT (sans SELECT préalable) malgré l'ID assigné.
+     */
+    @Transient
+    private boolean newEntity = true;
+
+    @Override
+    public String getId() {
+        return eventId;
+    }
+
+    @Override
+    public boolean isNew() {
+        return newEntity;
+    }
+
+    @PostLoad
+    @PostPersist
+    public void markNotNew() {
+        newEntity = false;
+    }
+}
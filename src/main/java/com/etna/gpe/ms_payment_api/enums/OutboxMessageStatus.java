@@ -0,0 +1,10 @@
+package com.etna.gpe.ms_payment_api.enums;
+
+/**
+ * Énumération des statuts d'un message de l'outbox ; un message confirmé par le broker est supprimé.
+ */
+public enum OutboxMessageStatus {
+    PENDING,
+    PROCESSING,
+    FAILED
+}
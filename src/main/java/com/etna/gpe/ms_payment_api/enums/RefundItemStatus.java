@@ -0,0 +1,11 @@
+package com.etna.gpe.ms_payment_api.enums;
+
+/**
+ * Énumération des statuts d'une ligne d'un job de remboursement en masse.
+ */
+public enum RefundItemStatus {
+    PENDING,
+    PROCESSING,
+    SUCCEEDED,
+    FAILED
+}
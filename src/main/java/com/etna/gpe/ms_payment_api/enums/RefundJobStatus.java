@@ -0,0 +1,9 @@
+package com.etna.gpe.ms_payment_api.enums;
+
+/**
+ * Énumération des statuts d'un job de remboursement en masse.
+ */
+public enum RefundJobStatus {
+    IN_PROGRESS,
+    COMPLETED
+}
@@ -0,0 +1,11 @@
+package com.etna.gpe.ms_payment_api.enums;
+
+/**
+ * Énumération des statuts d'un événement Stripe stocké dans l'inbox des webhooks.
+ */
+public enum WebhookEventStatus {
+    PENDING,
+    PROCESSING,
+    PROCESSED,
+    FAILED
+}
@@ -0,0 +1,27 @@
+package com.etna.gpe.ms_payment_api.exceptions;
+
+import java.time.Duration;
+
+/**
+ * Exception levée quand un appel Stripe n'a pas obtenu de place dans le débit autorisé à temps,
+ * ou a encore été refusé par Stripe (429) après les rejeux.
+ * L'appel n'a pas été traité par Stripe : il peut être rejoué sans risque.
+ */
+public class StripeThrottledException extends StripePaymentException {
+
+    private final Duration retryAfter;
+
+    public StripeThrottledException(String message, Duration retryAfter) {
+        super(message);
+        this.retryAfter = retryAfter;
+    }
+
+    public StripeThrottledException(String message, Duration retryAfter, Throwable cause) {
+        super(message, cause);
+        this.retryAfter = retryAfter;
+    }
+
+    public Duration getRetryAfter() {
+        return retryAfter;
+    }
+}
@@ -0,0 +1,25 @@
+package com.etna.gpe.ms_payment_api.exceptions;
+
+import com.etna.gpe.mycloseshop.common_api.ms_login.dto.error.ResponseError;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ControllerAdvice;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+
+import java.util.Map;
+
+@ControllerAdvice
+public class StripeThrottledExceptionHandler {
+
+    @ExceptionHandler(StripeThrottledException.class)
+    public ResponseEntity<ResponseError> handleStripeThrottledException(StripeThrottledException e) {
+        long retryAfterSeconds = Math.max(1, (e.getRetryAfter().toMillis() + 999) / 1000);
+        return ResponseEntity.status(503)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(retryAfterSeconds))
+                .body(new ResponseError(
+                        503,
+                        "Stripe rate limit reached",
+                        Map.of("details", e.getMessage())
+                ));
+    }
+}
@@ -0,0 +1,62 @@
+package com.etna.gpe.ms_payment_api.messaging;
+
+import com.etna.gpe.ms_payment_api.dto.AppointmentEventDto;
+import com.etna.gpe.ms_payment_api.services.PaymentService;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.rabbit.annotation.RabbitListener;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * Consommateur des événements de rendez-vous publiés par ms-shop-api.
+ * Les confirmations sont reçues par lots ; l'annulation d'un rendez-vous payé déclenche son remboursement.
+ * Désactivé pendant les tests via @Profile.
+ */
+@Component
+@Profile("!test")
+@Slf4j
+public class AppointmentEventListener {
+
+    public static final String APPOINTMENT_EVENTS_METRIC = "rabbitmq.appointment.events";
+
+    private final PaymentService paymentService;
+    private final MeterRegistry meterRegistry;
+
+    @Autowired
+    public AppointmentEventListener(PaymentService paymentService, MeterRegistry meterRegistry) {
+        this.paymentService = paymentService;
+        this.meterRegistry = meterRegistry;
+    }
+
+    @RabbitListener(queues = "${rabbitmq.queue.appointment-confirmed}",
+            containerFactory = "appointmentListenerContainerFactory")
+    public void onAppointmentsConfirmed(List<AppointmentEventDto> events) {
+        log.debug("Received {} appointment confirmed events", events.size());
+        meterRegistry.counter(APPOINTMENT_EVENTS_METRIC, "type", "confirmed").increment(events.size());
+    }
+
+    /**
+     * Rembourse les paiements d'un rendez-vous annulé.
+     * Les annulations sont reçues une par une : en cas d'échec, seule cette annonce est rejetée puis rejouée
+     * après un délai (paliers de rejeu) ;
+     * les remboursements déjà créés ne sont pas dupliqués grâce à la clé d'idempotence Stripe.
+     */
+    @RabbitListener(queues = "${rabbitmq.queue.appointment-cancelled}",
+            containerFactory = "appointmentCancelledListenerContainerFactory")
+    public void onAppointmentCancelled(AppointmentEventDto event) {
+        meterRegistry.counter(APPOINTMENT_EVENTS_METRIC, "type", "cancelled").increment();
+
+        if (event.getAppointmentId() == null) {
+            log.warn("Ignoring appointment cancelled event without appointment ID");
+            return;
+        }
+        int refunds = paymentService.refundCancelledAppointment(event.getAppointmentId());
+        if (refunds > 0) {
+            log.info("{} refund(s) initiated for cancelled appointment: {}", refunds, event.getAppointmentId());
+        }
+    }
+}
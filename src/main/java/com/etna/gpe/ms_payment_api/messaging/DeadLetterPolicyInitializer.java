@@ -0,0 +1,118 @@
+package com.etna.gpe.ms_payment_api.messaging;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.annotation.Profile;
+import org.springframework.context.event.EventListener;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.RestTemplate;
+
+import java.net.URI;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Applique le dead-lettering des files de paiement et de rendez-vous par des policies RabbitMQ
+ * (API HTTP du plugin de management), une par file afin que la clé de dead-letter soit le nom de la file.
+ * Contrairement aux arguments x-dead-letter-* d'une déclaration, une policy s'applique aux files existantes
+ * sans les supprimer ni les redéclarer. Équivalent manuel :
+ * rabbitmqctl set_policy --apply-to queues ms-payment-dlx-Q '^Q$' '{"dead-letter-exchange":"payment.dlx","dead-letter-routing-key":"Q"}'
+ * <p>
+ * Désactivé par défaut : RabbitMQ n'applique qu'une seule policy par file (la plus prioritaire), ces policies
+ * remplaceraient donc sans avertissement celles posées par l'exploitation (haute disponibilité, max-length...).
+ * À n'activer que sur un broker où aucune autre policy ne vise ces files ; sinon, les clés dead-letter-exchange
+ * et dead-letter-routing-key doivent être ajoutées à la policy existante par l'outillage de déploiement.
+ * Désactivé pendant les tests via @Profile.
+ */
+@Component
+@Profile("!test")
+@Slf4j
+public class DeadLetterPolicyInitializer {
+
+    public static final String POLICY_PREFIX = "ms-payment-dlx-";
+
+    private final RestTemplate restTemplate;
+    private final List<String> queues;
+
+    @Value("${rabbitmq.dead-letter-policy.enabled:false}")
+    private boolean enabled;
+
+    @Value("${rabbitmq.dead-letter-policy.management-url:http://localhost:15672}")
+    private String managementUrl;
+
+    @Value("${rabbitmq.dead-letter-policy.priority:10}")
+    private int priority;
+
+    @Value("${rabbitmq.exchange.dead-letter:payment.dlx}")
+    private String deadLetterExchange;
+
+    @Value("${spring.rabbitmq.username:guest}")
+    private String username;
+
+    @Value("${spring.rabbitmq.password:guest}")
+    private String password;
+
+    @Value("${spring.rabbitmq.virtual-host:/}")
+    private String virtualHost;
+
+    @Autowired
+    public DeadLetterPolicyInitializer(RestTemplate restTemplate,
+                                       @Value("${rabbitmq.queue.payment-completed}") String paymentCompletedQueue,
+                                       @Value("${rabbitmq.queue.payment-refunded}") String paymentRefundedQueue,
+                                       @Value("${rabbitmq.queue.appointment-confirmed}") String appointmentConfirmedQueue,
+                                       @Value("${rabbitmq.queue.appointment-cancelled}") String appointmentCancelledQueue) {
+        this.restTemplate = restTemplate;
+        this.queues = List.of(paymentCompletedQueue, paymentRefundedQueue,
+                appointmentConfirmedQueue, appointmentCancelledQueue);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void applyPolicies() {
+        if (!enabled) {
+            // Sans dead-lettering configuré sur le broker, un message rejeté par un consommateur est perdu
+            log.warn("RabbitMQ dead-letter policies disabled, dead-lettering of {} must be configured on the broker",
+                    queues);
+            return;
+        }
+
+        for (String queue : queues) {
+            try {
+                applyPolicy(queue);
+                log.info("Dead-letter policy applied to queue {}", queue);
+            } catch (Exception e) {
+                // Sans policy, un message rejeté par un consommateur est perdu au lieu d'être rejoué
+                log.error("Could not apply dead-letter policy to queue {}, rejected messages will be dropped - Error: {}",
+                        queue, e.getMessage());
+            }
+        }
+    }
+
+    private void applyPolicy(String queue) {
+        URI uri = URI.create(managementUrl + "/api/policies/" + encode(virtualHost) + "/" + encode(POLICY_PREFIX + queue));
+
+        HttpHeaders headers = new HttpHeaders();
+        headers.setBasicAuth(username, password);
+        headers.setContentType(MediaType.APPLICATION_JSON);
+        Map<String, Object> policy = Map.of(
+                "pattern", "^" + queue.replace(".", "\\.") + "$",
+                "apply-to", "queues",
+                "priority", priority,
+                "definition", Map.of(
+                        "dead-letter-exchange", deadLetterExchange,
+                        "dead-letter-routing-key", queue));
+
+        restTemplate.exchange(uri, HttpMethod.PUT, new HttpEntity<>(policy, headers), Void.class);
+    }
+
+    private static String encode(String value) {
+        return URLEncoder.encode(value, StandardCharsets.UTF_8);
+    }
+}
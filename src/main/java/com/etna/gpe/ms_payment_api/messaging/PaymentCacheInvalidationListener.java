@@ -0,0 +1,35 @@
+package com.etna.gpe.ms_payment_api.messaging;
+
+import com.etna.gpe.ms_payment_api.cache.PaymentLookupCache;
+import com.etna.gpe.ms_payment_api.dto.PaymentCacheInvalidationDto;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.rabbit.annotation.RabbitListener;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+
+/**
+ * Consommateur des invalidations du cache des paiements diffusées par les instances du service.
+ * Chaque instance lit sa propre file anonyme liée à l'exchange fanout ; l'invalidation signale aussi
+ * le changement de statut aux clients abonnés au flux SSE sur cette instance (PaymentChangedEvent).
+ * Désactivé pendant les tests via @Profile.
+ */
+@Component
+@Profile("!test")
+@Slf4j
+public class PaymentCacheInvalidationListener {
+
+    private final PaymentLookupCache paymentLookupCache;
+
+    @Autowired
+    public PaymentCacheInvalidationListener(PaymentLookupCache paymentLookupCache) {
+        this.paymentLookupCache = paymentLookupCache;
+    }
+
+    @RabbitListener(queues = "#{paymentCacheInvalidationQueue.name}",
+            containerFactory = "cacheInvalidationListenerContainerFactory")
+    public void onInvalidation(PaymentCacheInvalidationDto invalidation) {
+        log.debug("Payment cache invalidation received for payment: {}", invalidation.getPaymentId());
+        paymentLookupCache.onRemoteInvalidation(invalidation);
+    }
+}
@@ -0,0 +1,66 @@
+package com.etna.gpe.ms_payment_api.messaging;
+
+import com.etna.gpe.ms_payment_api.dto.PaymentEvent;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.dataformat.cbor.databind.CBORMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Sérialise les événements de paiement publiés sur RabbitMQ.
+ * Les ObjectWriter sont construits une seule fois pour le type PaymentEvent ;
+ * l'encodage (JSON ou CBOR, plus compact) est choisi par le content-type configuré.
+ */
+@Component
+public class PaymentEventSerializer {
+
+    public static final String SCHEMA_VERSION_HEADER = "x-schema-version";
+    public static final String TYPE_ID = "payment-event";
+    public static final String CONTENT_TYPE_CBOR = "application/cbor";
+
+    private final ObjectWriter writer;
+    private final String contentType;
+
+    @Autowired
+    public PaymentEventSerializer(ObjectMapper objectMapper,
+                                  @Value("${rabbitmq.event.content-type:application/json}") String contentType) {
+        if (MessageProperties.CONTENT_TYPE_JSON.equals(contentType)) {
+            this.writer = objectMapper.writerFor(PaymentEvent.class);
+        } else if (CONTENT_TYPE_CBOR.equals(contentType)) {
+            this.writer = CBORMapper.builder()
+                    .addModule(new JavaTimeModule())
+                    .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS)
+                    .build()
+                    .writerFor(PaymentEvent.class);
+        } else {
+            throw new IllegalArgumentException("Unsupported payment event content type: " + contentType);
+        }
+        this.contentType = contentType;
+    }
+
+    /**
+     * @return Le content-type des messages produits
+     */
+    public String getContentType() {
+        return contentType;
+    }
+
+    /**
+     * Sérialise un événement de paiement.
+     * @param event L'événement
+     * @return Le corps du message
+     */
+    public byte[] serialize(PaymentEvent event) {
+        try {
+            return writer.writeValueAsBytes(event);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Could not serialize payment event for payment: " + event.getPaymentId(), e);
+        }
+    }
+}
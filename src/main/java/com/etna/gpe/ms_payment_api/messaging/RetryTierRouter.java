@@ -0,0 +1,68 @@
+package com.etna.gpe.ms_payment_api.messaging;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.rabbit.annotation.RabbitListener;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Aiguille les messages rejetés vers le palier de rejeu suivant.
+ * Le nombre de rejeux déjà effectués est porté par l'en-tête x-retry-count ; une fois tous les paliers
+ * épuisés, le message est placé dans le parking lot de sa file d'origine.
+ * Désactivé pendant les tests via @Profile.
+ */
+@Component
+@Profile("!test")
+@Slf4j
+public class RetryTierRouter {
+
+    public static final String RETRY_ROUTED_METRIC = "rabbitmq.retry.routed";
+
+    private final RabbitTemplate rabbitTemplate;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${rabbitmq.exchange.retry:payment.retry.exchange}")
+    private String retryExchange;
+
+    @Value("${rabbitmq.retry.delays:5s,30s,5m}")
+    private List<Duration> retryDelays;
+
+    @Autowired
+    public RetryTierRouter(RabbitTemplate rabbitTemplate, MeterRegistry meterRegistry) {
+        this.rabbitTemplate = rabbitTemplate;
+        this.meterRegistry = meterRegistry;
+    }
+
+    @RabbitListener(queues = {
+            "${rabbitmq.queue.payment-completed}" + RetryTopology.DEAD_LETTER_SUFFIX,
+            "${rabbitmq.queue.payment-refunded}" + RetryTopology.DEAD_LETTER_SUFFIX,
+            "${rabbitmq.queue.appointment-confirmed}" + RetryTopology.DEAD_LETTER_SUFFIX,
+            "${rabbitmq.queue.appointment-cancelled}" + RetryTopology.DEAD_LETTER_SUFFIX
+    })
+    public void route(Message message) {
+        MessageProperties properties = message.getMessageProperties();
+        String queue = RetryTopology.originalQueue(properties.getConsumerQueue());
+        Object retryCount = properties.getHeader(RetryTopology.RETRY_COUNT_HEADER);
+        int tier = retryCount instanceof Number number ? number.intValue() : 0;
+
+        if (tier < retryDelays.size()) {
+            properties.setHeader(RetryTopology.RETRY_COUNT_HEADER, tier + 1);
+            rabbitTemplate.send(retryExchange, RetryTopology.retryQueue(queue, tier), message);
+            meterRegistry.counter(RETRY_ROUTED_METRIC, "queue", queue, "target", "retry-" + tier).increment();
+            log.debug("Message from {} scheduled for retry in {} (tier {})", queue, retryDelays.get(tier), tier);
+        } else {
+            rabbitTemplate.send("", RetryTopology.parkingLotQueue(queue), message);
+            meterRegistry.counter(RETRY_ROUTED_METRIC, "queue", queue, "target", "parking-lot").increment();
+            log.warn("Message from {} parked after {} retries", queue, tier);
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package com.etna.gpe.ms_payment_api.messaging;
+
+/**
+ * Conventions de nommage de la topologie de rejeu des files RabbitMQ.
+ * Pour chaque file Q :
+ * - Q.dlq : reçoit les messages rejetés par les consommateurs de Q (via l'exchange de dead-letter) ;
+ * - Q.retry.N : file d'attente du palier N, dont le TTL renvoie le message dans Q à expiration ;
+ * - Q.parking-lot : messages ayant épuisé tous les paliers, rejouables via l'endpoint d'administration.
+ */
+public final class RetryTopology {
+
+    public static final String RETRY_COUNT_HEADER = "x-retry-count";
+    public static final String DEAD_LETTER_SUFFIX = ".dlq";
+    public static final String RETRY_SUFFIX = ".retry.";
+    public static final String PARKING_LOT_SUFFIX = ".parking-lot";
+
+    private RetryTopology() {
+    }
+
+    public static String deadLetterQueue(String queue) {
+        return queue + DEAD_LETTER_SUFFIX;
+    }
+
+    public static String retryQueue(String queue, int tier) {
+        return queue + RETRY_SUFFIX + tier;
+    }
+
+    public static String parkingLotQueue(String queue) {
+        return queue + PARKING_LOT_SUFFIX;
+    }
+
+    /**
+     * Retrouve la file d'origine à partir du nom de sa file de dead-letter.
+     */
+    public static String originalQueue(String deadLetterQueue) {
+        return deadLetterQueue.endsWith(DEAD_LETTER_SUFFIX)
+                ? deadLetterQueue.substring(0, deadLetterQueue.length() - DEAD_LETTER_SUFFIX.length())
+                : deadLetterQueue;
+    }
+}
@@ -0,0 +1,70 @@
+package com.etna.gpe.ms_payment_api.repositories;
+
+import com.etna.gpe.ms_payment_api.entity.PaymentOutboxMessage;
+import com.etna.gpe.ms_payment_api.enums.OutboxMessageStatus;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Repository pour gérer l'outbox des événements de paiement.
+ */
+@Repository
+public interface PaymentOutboxRepository extends JpaRepository<PaymentOutboxMessage, Long> {
+
+    /**
+     * Récupère, dans leur ordre d'insertion, les messages en attente qui sont les plus anciens de leur paiement.
+     * Un message dont un prédécesseur du même paiement n'est pas encore confirmé (en attente, en cours
+     * de publication ou en échec) n'est pas retourné : les événements d'un paiement sont publiés dans l'ordre.
+     * @param status Le statut recherché (PENDING)
+     * @param pageable Taille du lot à récupérer
+     * @return Les messages trouvés
+     */
+    @Query("SELECT m FROM PaymentOutboxMessage m WHERE m.status = :status AND NOT EXISTS "
+            + "(SELECT p.id FROM PaymentOutboxMessage p WHERE p.paymentId = m.paymentId AND p.id < m.id) "
+            + "ORDER BY m.id ASC")
+    List<PaymentOutboxMessage> findPublishable(@Param("status") OutboxMessageStatus status, Pageable pageable);
+
+    /**
+     * Fait passer un message d'un statut à un autre uniquement s'il est dans le statut attendu.
+     * Sert à réserver un message pour une instance du relais sans lecture préalable.
+     * @return Le nombre de lignes modifiées (0 si le message a déjà été pris)
+     */
+    @Modifying
+    @Transactional
+    @Query("UPDATE PaymentOutboxMessage m SET m.status = :to, m.claimedAt = :claimedAt "
+            + "WHERE m.id = :id AND m.status = :from")
+    int transition(@Param("id") Long id,
+                   @Param("from") OutboxMessageStatus from,
+                   @Param("to") OutboxMessageStatus to,
+                   @Param("claimedAt") LocalDateTime claimedAt);
+
+    /**
+     * Enregistre un échec de publication et replace le message dans le statut indiqué.
+     */
+    @Modifying
+    @Transactional
+    @Query("UPDATE PaymentOutboxMessage m SET m.status = :status, m.attempts = m.attempts + 1, "
+            + "m.lastError = :error, m.claimedAt = null WHERE m.id = :id")
+    int recordFailure(@Param("id") Long id,
+                      @Param("status") OutboxMessageStatus status,
+                      @Param("error") String error);
+
+    /**
+     * Libère les messages réservés depuis trop longtemps (relais arrêté brutalement).
+     */
+    @Modifying
+    @Transactional
+    @Query("UPDATE PaymentOutboxMessage m SET m.status = :pending, m.claimedAt = null "
+            + "WHERE m.status = :processing AND m.claimedAt < :before")
+    int releaseStaleClaims(@Param("pending") OutboxMessageStatus pending,
+                           @Param("processing") OutboxMessageStatus processing,
+                           @Param("before") LocalDateTime before);
+}
@@ -1,43 +1,174 @@
 package com.etna.gpe.ms_payment_api.repositories;
 
+import com.etna.gpe.ms_payment_api.dto.PaymentSummaryDto;
 import com.etna.gpe.ms_payment_api.entity.Payment;
+import com.etna.gpe.ms_payment_api.enums.PaymentStatus;
+import jakarta.persistence.LockModeType;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.AvailableHints;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
+import java.util.stream.Stream;
 
 /**
  * Repository pour gérer les opérations de base de données sur les paiements.
  */
 @Repository
-public interface PaymentRepository extends JpaRepository<Payment, UUID> {
+public interface PaymentRepository extends JpaRepository<Payment, UUID>, PaymentRepositoryCustom {
 
     /**
-     * Trouve un paiement par son ID de session Stripe.
+     * Trouve les paiements d'une session Stripe.
+     * Une session groupée (plusieurs services payés ensemble) couvre plusieurs paiements.
      * @param sessionId L'ID de la session Stripe
-     * @return Le paiement correspondant, si trouvé
+     * @return Les paiements de la session
      */
-    Optional<Payment> findByStripeSessionId(String sessionId);
+    List<Payment> findAllByStripeSessionId(String sessionId);
 
     /**
-     * Trouve un paiement par son ID de PaymentIntent Stripe.
+     * Trouve les paiements d'un PaymentIntent Stripe.
      * @param paymentIntentId L'ID du PaymentIntent Stripe
-     * @return Le paiement correspondant, si trouvé
+     * @return Les paiements correspondants
      */
-    Optional<Payment> findByStripePaymentIntentId(String paymentIntentId);
+    List<Payment> findAllByStripePaymentIntentId(String paymentIntentId);
 
     /**
-     * Trouve un paiement par son ID de charge Stripe.
+     * Trouve les paiements d'une charge Stripe.
      * @param chargeId L'ID de la charge Stripe
-     * @return Le paiement correspondant, si trouvé
+     * @return Les paiements correspondants
      */
-    Optional<Payment> findByStripeChargeId(String chargeId);
+    List<Payment> findAllByStripeChargeId(String chargeId);
+
+    /**
+     * Compte les paiements partageant un PaymentIntent Stripe (plus d'un pour un checkout groupé).
+     * @param paymentIntentId L'ID du PaymentIntent Stripe
+     * @return Le nombre de paiements
+     */
+    long countByStripePaymentIntentId(String paymentIntentId);
     
     /**
-     * Trouve un paiement par son ID de rendez-vous.
+     * Trouve le paiement le plus récent d'un rendez-vous : un rendez-vous peut avoir plusieurs paiements
+     * (checkout abandonné puis relancé).
+     * @param appointmentId L'ID du rendez-vous
+     * @return Le paiement le plus récent, si trouvé
+     */
+    Optional<Payment> findFirstByAppointmentIdOrderByCreatedAtDescIdDesc(UUID appointmentId);
+
+    /**
+     * Trouve les paiements d'un rendez-vous dans un statut donné.
+     * Un rendez-vous peut avoir plusieurs paiements (checkouts abandonnés puis relancés).
      * @param appointmentId L'ID du rendez-vous
-     * @return Le paiement correspondant, si trouvé
+     * @param status Le statut recherché
+     * @return Les paiements correspondants
+     */
+    List<Payment> findAllByAppointmentIdAndStatus(UUID appointmentId, PaymentStatus status);
+
+    /**
+     * Parcourt les paiements d'un shop sur une période, du plus ancien au plus récent, pour les exports.
+     * Le fetch size Integer.MIN_VALUE fait streamer les lignes par le driver MySQL au lieu de charger
+     * tout le résultat ; le flux doit être consommé dans une transaction puis fermé.
+     * @param shopId L'ID du shop
+     * @param from Date de création minimale, incluse
+     * @param to Date de création maximale, exclue
+     * @return Le flux des paiements
+     */
+    @QueryHints({
+            @QueryHint(name = AvailableHints.HINT_FETCH_SIZE, value = "" + Integer.MIN_VALUE),
+            @QueryHint(name = AvailableHints.HINT_READ_ONLY, value = "true")
+    })
+    @Query("SELECT new com.etna.gpe.ms_payment_api.dto.PaymentSummaryDto(p.id, p.userId, p.shopId, p.appointmentId, "
+            + "p.serviceId, p.amount, p.refundedAmount, p.currency, p.status, p.createdAt) FROM Payment p "
+            + "WHERE p.shopId = :shopId AND p.createdAt >= :from AND p.createdAt < :to ORDER BY p.createdAt, p.id")
+    Stream<PaymentSummaryDto> streamShopPayments(@Param("shopId") UUID shopId,
+                                                 @Param("from") LocalDateTime from,
+                                                 @Param("to") LocalDateTime to);
+
+    /**
+     * Fait passer les paiements d'une session d'un statut à un autre, en une seule instruction.
+     * Le contexte de persistance est vidé : les entités déjà chargées deviennent détachées.
+     * @return Le nombre de lignes modifiées (0 si la transition a déjà eu lieu)
+     */
+    @Modifying(clearAutomatically = true)
+    @Transactional
+    @Query("UPDATE Payment p SET p.status = :to, p.updatedAt = :updatedAt, p.version = p.version + 1 "
+            + "WHERE p.stripeSessionId = :sessionId AND p.status = :from")
+    int transitionSessionStatus(@Param("sessionId") String sessionId,
+                                @Param("from") PaymentStatus from,
+                                @Param("to") PaymentStatus to,
+                                @Param("updatedAt") LocalDateTime updatedAt);
+
+    /**
+     * Relit un paiement en posant un verrou d'écriture sur sa ligne jusqu'à la fin de la transaction.
+     * @param id ID du paiement
+     * @return Le paiement dans son état validé le plus récent
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT p FROM Payment p WHERE p.id = :id")
+    Optional<Payment> findByIdForUpdate(@Param("id") UUID id);
+
+    /**
+     * Ajoute un remboursement au montant remboursé d'un paiement et fixe son statut, en renseignant l'ID de charge
+     * si besoin, uniquement si la ligne n'a pas été modifiée depuis sa lecture (version attendue).
+     * Le contexte de persistance est vidé : les entités déjà chargées deviennent détachées.
+     * @return 1 si le remboursement a été enregistré, 0 si la ligne a été modifiée entre-temps
+     */
+    @Modifying(clearAutomatically = true)
+    @Transactional
+    @Query("UPDATE Payment p SET p.refundedAmount = p.refundedAmount + :refunded, p.status = :status, "
+            + "p.stripeChargeId = COALESCE(p.stripeChargeId, :chargeId), p.updatedAt = :updatedAt, "
+            + "p.version = p.version + 1 WHERE p.id = :id AND p.version = :version")
+    int recordRefund(@Param("id") UUID id,
+                     @Param("version") Long version,
+                     @Param("refunded") long refunded,
+                     @Param("status") PaymentStatus status,
+                     @Param("chargeId") String chargeId,
+                     @Param("updatedAt") LocalDateTime updatedAt);
+
+    /**
+     * Renseigne la session et le PaymentIntent Stripe des paiements d'un checkout qui vient d'être créé.
+     * @return Le nombre de lignes modifiées
+     */
+    @Modifying
+    @Transactional
+    @Query("UPDATE Payment p SET p.stripeSessionId = :sessionId, p.stripePaymentIntentId = :paymentIntentId, "
+            + "p.updatedAt = :updatedAt, p.version = p.version + 1 WHERE p.id IN :ids")
+    int attachSession(@Param("ids") Collection<UUID> ids,
+                      @Param("sessionId") String sessionId,
+                      @Param("paymentIntentId") String paymentIntentId,
+                      @Param("updatedAt") LocalDateTime updatedAt);
+
+    /**
+     * Renseigne le PaymentIntent d'une session s'il n'est pas encore connu.
+     * @return Le nombre de lignes modifiées
+     */
+    @Modifying
+    @Transactional
+    @Query("UPDATE Payment p SET p.stripePaymentIntentId = :paymentIntentId, p.updatedAt = :updatedAt, "
+            + "p.version = p.version + 1 WHERE p.stripeSessionId = :sessionId AND p.stripePaymentIntentId IS NULL")
+    int attachPaymentIntent(@Param("sessionId") String sessionId,
+                            @Param("paymentIntentId") String paymentIntentId,
+                            @Param("updatedAt") LocalDateTime updatedAt);
+
+    /**
+     * Renseigne l'ID de charge d'un paiement s'il n'est pas encore connu.
+     * @return Le nombre de lignes modifiées
      */
-    Optional<Payment> findByAppointmentId(UUID appointmentId);
+    @Modifying
+    @Transactional
+    @Query("UPDATE Payment p SET p.stripeChargeId = :chargeId, p.updatedAt = :updatedAt, "
+            + "p.version = p.version + 1 WHERE p.stripePaymentIntentId = :paymentIntentId AND p.stripeChargeId IS NULL")
+    int attachCharge(@Param("paymentIntentId") String paymentIntentId,
+                     @Param("chargeId") String chargeId,
+                     @Param("updatedAt") LocalDateTime updatedAt);
 }
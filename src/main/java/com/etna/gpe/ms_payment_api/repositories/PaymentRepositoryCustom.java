@@ -0,0 +1,43 @@
+package com.etna.gpe.ms_payment_api.repositories;
+
+import com.etna.gpe.ms_payment_api.dto.PaymentCursor;
+import com.etna.gpe.ms_payment_api.dto.PaymentSummaryDto;
+import com.etna.gpe.ms_payment_api.enums.PaymentStatus;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Requêtes de listing des paiements par pagination keyset (seek) sur (createdAt, id) décroissants.
+ * Les filtres absents (null) ne sont pas ajoutés à la requête, afin qu'elle reste couverte par les index
+ * (shop_id, status, created_at) et (user_id, created_at).
+ */
+public interface PaymentRepositoryCustom {
+
+    /**
+     * Liste les paiements d'un shop.
+     * @param shopId ID du shop
+     * @param status Statut recherché (optionnel)
+     * @param from Date de création minimale, incluse (optionnelle)
+     * @param to Date de création maximale, exclue (optionnelle)
+     * @param after Position de la fin de la page précédente (optionnelle)
+     * @param limit Nombre maximum de paiements
+     * @return Les paiements, du plus récent au plus ancien
+     */
+    List<PaymentSummaryDto> findShopPaymentSummaries(UUID shopId, PaymentStatus status, LocalDateTime from,
+                                                     LocalDateTime to, PaymentCursor after, int limit);
+
+    /**
+     * Liste les paiements d'un utilisateur.
+     * @param userId ID de l'utilisateur
+     * @param status Statut recherché (optionnel)
+     * @param from Date de création minimale, incluse (optionnelle)
+     * @param to Date de création maximale, exclue (optionnelle)
+     * @param after Position de la fin de la page précédente (optionnelle)
+     * @param limit Nombre maximum de paiements
+     * @return Les paiements, du plus récent au plus ancien
+     */
+    List<PaymentSummaryDto> findUserPaymentSummaries(UUID userId, PaymentStatus status, LocalDateTime from,
+                                                     LocalDateTime to, PaymentCursor after, int limit);
+}
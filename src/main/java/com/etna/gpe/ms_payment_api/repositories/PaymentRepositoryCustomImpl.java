@@ -0,0 +1,71 @@
+package com.etna.gpe.ms_payment_api.repositories;
+
+import com.etna.gpe.ms_payment_api.dto.PaymentCursor;
+import com.etna.gpe.ms_payment_api.dto.PaymentSummaryDto;
+import com.etna.gpe.ms_payment_api.enums.PaymentStatus;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.TypedQuery;
+
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Implémentation des requêtes de listing keyset des paiements.
+ */
+public class PaymentRepositoryCustomImpl implements PaymentRepositoryCustom {
+
+    private static final String SELECT_SUMMARY = "SELECT new com.etna.gpe.ms_payment_api.dto.PaymentSummaryDto("
+            + "p.id, p.userId, p.shopId, p.appointmentId, p.serviceId, p.amount, p.refundedAmount, p.currency, "
+            + "p.status, p.createdAt) "
+            + "FROM Payment p WHERE ";
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Override
+    public List<PaymentSummaryDto> findShopPaymentSummaries(UUID shopId, PaymentStatus status, LocalDateTime from,
+                                                            LocalDateTime to, PaymentCursor after, int limit) {
+        return findSummaries("p.shopId", shopId, status, from, to, after, limit);
+    }
+
+    @Override
+    public List<PaymentSummaryDto> findUserPaymentSummaries(UUID userId, PaymentStatus status, LocalDateTime from,
+                                                            LocalDateTime to, PaymentCursor after, int limit) {
+        return findSummaries("p.userId", userId, status, from, to, after, limit);
+    }
+
+    private List<PaymentSummaryDto> findSummaries(String ownerField, UUID ownerId, PaymentStatus status,
+                                                  LocalDateTime from, LocalDateTime to, PaymentCursor after, int limit) {
+        StringBuilder jpql = new StringBuilder(SELECT_SUMMARY).append(ownerField).append(" = :ownerId");
+        Map<String, Object> parameters = new HashMap<>();
+        parameters.put("ownerId", ownerId);
+
+        if (status != null) {
+            jpql.append(" AND p.status = :status");
+            parameters.put("status", status);
+        }
+        if (from != null) {
+            jpql.append(" AND p.createdAt >= :from");
+            parameters.put("from", from);
+        }
+        if (to != null) {
+            jpql.append(" AND p.createdAt < :to");
+            parameters.put("to", to);
+        }
+        if (after != null) {
+            // Seek : reprise strictement après le dernier élément de la page précédente
+            jpql.append(" AND (p.createdAt < :afterCreatedAt OR (p.createdAt = :afterCreatedAt AND p.id < :afterId))");
+            parameters.put("afterCreatedAt", after.createdAt());
+            parameters.put("afterId", after.id());
+        }
+        jpql.append(" ORDER BY p.createdAt DESC, p.id DESC");
+
+        TypedQuery<PaymentSummaryDto> query = entityManager.createQuery(jpql.toString(), PaymentSummaryDto.class);
+        parameters.forEach(query::setParameter);
+        return query.setMaxResults(limit).getResultList();
+    }
+}
@@ -0,0 +1,28 @@
+package com.etna.gpe.ms_payment_api.repositories;
+
+import com.etna.gpe.ms_payment_api.entity.ProcessedStripeEvent;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+
+/**
+ * Repository pour gérer le registre des événements Stripe déjà traités.
+ */
+@Repository
+public interface ProcessedStripeEventRepository extends JpaRepository<ProcessedStripeEvent, String> {
+
+    /**
+     * Supprime les entrées plus anciennes que la date indiquée.
+     * @param before Date limite de conservation
+     * @return Le nombre d'entrées supprimées
+     */
+    @Modifying
+    @Transactional
+    @Query("DELETE FROM ProcessedStripeEvent e WHERE e.processedAt < :before")
+    int deleteProcessedBefore(@Param("before") LocalDateTime before);
+}
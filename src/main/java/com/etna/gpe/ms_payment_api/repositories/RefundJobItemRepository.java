@@ -0,0 +1,105 @@
+package com.etna.gpe.ms_payment_api.repositories;
+
+import com.etna.gpe.ms_payment_api.entity.RefundJobItem;
+import com.etna.gpe.ms_payment_api.enums.RefundItemStatus;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Repository pour gérer les lignes des jobs de remboursement en masse.
+ */
+@Repository
+public interface RefundJobItemRepository extends JpaRepository<RefundJobItem, UUID> {
+
+    /**
+     * Récupère les lignes d'un statut donné dont le délai avant nouvelle tentative est écoulé,
+     * dans l'ordre de création des jobs.
+     * @param status Le statut recherché
+     * @param now Date de référence pour le délai avant nouvelle tentative
+     * @param pageable Taille du lot à récupérer
+     * @return Les lignes trouvées
+     */
+    @Query("SELECT i FROM RefundJobItem i WHERE i.status = :status "
+            + "AND (i.nextAttemptAt IS NULL OR i.nextAttemptAt <= :now) ORDER BY i.updatedAt ASC")
+    List<RefundJobItem> findReady(@Param("status") RefundItemStatus status,
+                                  @Param("now") LocalDateTime now,
+                                  Pageable pageable);
+
+    /**
+     * Récupère les lignes d'un job dans un statut donné.
+     * @param jobId L'ID du job
+     * @param status Le statut recherché
+     * @return Les lignes trouvées
+     */
+    List<RefundJobItem> findByJobIdAndStatus(UUID jobId, RefundItemStatus status);
+
+    /**
+     * Compte les lignes d'un job par statut.
+     * @param jobId L'ID du job
+     * @return Des couples [statut, nombre]
+     */
+    @Query("SELECT i.status, COUNT(i) FROM RefundJobItem i WHERE i.jobId = :jobId GROUP BY i.status")
+    List<Object[]> countByStatus(@Param("jobId") UUID jobId);
+
+    /**
+     * Fait passer une ligne d'un statut à un autre uniquement si elle est dans le statut attendu.
+     * Sert à réserver une ligne pour un worker sans lecture préalable.
+     * @return Le nombre de lignes modifiées (0 si la ligne a déjà été prise)
+     */
+    @Modifying
+    @Transactional
+    @Query("UPDATE RefundJobItem i SET i.status = :to, i.claimedAt = :claimedAt, i.updatedAt = :updatedAt "
+            + "WHERE i.id = :id AND i.status = :from")
+    int transition(@Param("id") UUID id,
+                   @Param("from") RefundItemStatus from,
+                   @Param("to") RefundItemStatus to,
+                   @Param("claimedAt") LocalDateTime claimedAt,
+                   @Param("updatedAt") LocalDateTime updatedAt);
+
+    /**
+     * Enregistre le remboursement Stripe créé pour une ligne.
+     */
+    @Modifying
+    @Transactional
+    @Query("UPDATE RefundJobItem i SET i.status = :status, i.stripeRefundId = :stripeRefundId, "
+            + "i.attempts = i.attempts + 1, i.lastError = null, i.claimedAt = null, i.updatedAt = :updatedAt "
+            + "WHERE i.id = :id")
+    int markSucceeded(@Param("id") UUID id,
+                      @Param("status") RefundItemStatus status,
+                      @Param("stripeRefundId") String stripeRefundId,
+                      @Param("updatedAt") LocalDateTime updatedAt);
+
+    /**
+     * Enregistre un échec et replace la ligne dans le statut indiqué.
+     * @param nextAttemptAt Date avant laquelle la ligne ne sera pas retentée, null si elle ne le sera plus
+     */
+    @Modifying
+    @Transactional
+    @Query("UPDATE RefundJobItem i SET i.status = :status, i.attempts = i.attempts + 1, i.lastError = :error, "
+            + "i.claimedAt = null, i.nextAttemptAt = :nextAttemptAt, i.updatedAt = :updatedAt WHERE i.id = :id")
+    int recordFailure(@Param("id") UUID id,
+                      @Param("status") RefundItemStatus status,
+                      @Param("error") String error,
+                      @Param("nextAttemptAt") LocalDateTime nextAttemptAt,
+                      @Param("updatedAt") LocalDateTime updatedAt);
+
+    /**
+     * Libère les lignes réservées depuis trop longtemps (worker arrêté brutalement).
+     */
+    @Modifying
+    @Transactional
+    @Query("UPDATE RefundJobItem i SET i.status = :pending, i.claimedAt = null "
+            + "WHERE i.status = :processing AND i.claimedAt < :before")
+    int releaseStaleClaims(@Param("pending") RefundItemStatus pending,
+                           @Param("processing") RefundItemStatus processing,
+                           @Param("before") LocalDateTime before);
+}
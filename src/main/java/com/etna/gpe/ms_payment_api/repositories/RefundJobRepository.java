@@ -0,0 +1,37 @@
+package com.etna.gpe.ms_payment_api.repositories;
+
+import com.etna.gpe.ms_payment_api.entity.RefundJob;
+import com.etna.gpe.ms_payment_api.enums.RefundItemStatus;
+import com.etna.gpe.ms_payment_api.enums.RefundJobStatus;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.UUID;
+
+/**
+ * Repository pour gérer les jobs de remboursement en masse.
+ */
+@Repository
+public interface RefundJobRepository extends JpaRepository<RefundJob, UUID> {
+
+    /**
+     * Termine un job lorsqu'il ne reste plus de ligne à traiter.
+     * @return 1 si le job vient d'être terminé, 0 sinon
+     */
+    @Modifying
+    @Transactional
+    @Query("UPDATE RefundJob j SET j.status = :completed, j.completedAt = :completedAt "
+            + "WHERE j.id = :jobId AND j.status = :inProgress AND NOT EXISTS ("
+            + "SELECT i.id FROM RefundJobItem i WHERE i.jobId = :jobId AND i.status IN :openStatuses)")
+    int completeIfDone(@Param("jobId") UUID jobId,
+                       @Param("inProgress") RefundJobStatus inProgress,
+                       @Param("completed") RefundJobStatus completed,
+                       @Param("openStatuses") Collection<RefundItemStatus> openStatuses,
+                       @Param("completedAt") LocalDateTime completedAt);
+}
@@ -0,0 +1,52 @@
+package com.etna.gpe.ms_payment_api.repositories;
+
+import com.etna.gpe.ms_payment_api.entity.ShopDailyRevenue;
+import com.etna.gpe.ms_payment_api.entity.ShopDailyRevenueId;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Repository pour gérer les agrégats journaliers de chiffre d'affaires des shops.
+ */
+@Repository
+public interface ShopDailyRevenueRepository extends JpaRepository<ShopDailyRevenue, ShopDailyRevenueId> {
+
+    /**
+     * Ajoute des montants à l'agrégat d'un jour, en le créant si besoin (upsert atomique MySQL).
+     * Doit être appelé dans la transaction qui modifie le statut du paiement.
+     */
+    @Modifying
+    @Query(value = "INSERT INTO shop_daily_revenue (shop_id, revenue_date, currency, gross_amount, fee_amount, "
+            + "refunded_amount, completed_count, refunded_count) "
+            + "VALUES (:shopId, :revenueDate, :currency, :grossAmount, :feeAmount, :refundedAmount, :completedCount, :refundedCount) "
+            + "ON DUPLICATE KEY UPDATE gross_amount = gross_amount + :grossAmount, fee_amount = fee_amount + :feeAmount, "
+            + "refunded_amount = refunded_amount + :refundedAmount, completed_count = completed_count + :completedCount, "
+            + "refunded_count = refunded_count + :refundedCount",
+            nativeQuery = true)
+    int increment(@Param("shopId") UUID shopId,
+                  @Param("revenueDate") LocalDate revenueDate,
+                  @Param("currency") String currency,
+                  @Param("grossAmount") long grossAmount,
+                  @Param("feeAmount") long feeAmount,
+                  @Param("refundedAmount") long refundedAmount,
+                  @Param("completedCount") int completedCount,
+                  @Param("refundedCount") int refundedCount);
+
+    /**
+     * Récupère les agrégats d'un shop sur une période, jour par jour.
+     * @param shopId L'ID du shop
+     * @param from Premier jour, inclus
+     * @param to Dernier jour, inclus
+     * @return Les agrégats trouvés
+     */
+    List<ShopDailyRevenue> findByIdShopIdAndIdRevenueDateBetweenOrderByIdRevenueDateAsc(UUID shopId,
+                                                                                        LocalDate from,
+                                                                                        LocalDate to);
+}
@@ -0,0 +1,113 @@
+package com.etna.gpe.ms_payment_api.repositories;
+
+import com.etna.gpe.ms_payment_api.entity.StripeWebhookEvent;
+import com.etna.gpe.ms_payment_api.enums.WebhookEventStatus;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Repository pour gérer l'inbox des événements webhook Stripe.
+ */
+@Repository
+public interface StripeWebhookEventRepository extends JpaRepository<StripeWebhookEvent, String> {
+
+    /**
+     * Récupère les événements en attente prêts à être traités, du plus ancien au plus récent.
+     * Un événement est exclu tant que son rejeu est différé, ou qu'un événement antérieur de la même clé
+     * d'ordonnancement est en cours de traitement, en échec définitif ou différé : il ne doit jamais
+     * être traité avant son prédécesseur. Deux événements reçus au même instant sont départagés par leur ID,
+     * pour que toutes les instances les ordonnent de la même façon.
+     * @param pending Le statut des événements en attente
+     * @param blocking Les statuts d'un prédécesseur qui bloquent la clé (PROCESSING, FAILED)
+     * @param now Date courante, pour les rejeux différés
+     * @param pageable Taille du lot à récupérer
+     * @return Les événements trouvés
+     */
+    @Query("SELECT e FROM StripeWebhookEvent e WHERE e.status = :pending "
+            + "AND (e.nextAttemptAt IS NULL OR e.nextAttemptAt <= :now) "
+            + "AND NOT EXISTS (SELECT p.eventId FROM StripeWebhookEvent p WHERE p.orderingKey = e.orderingKey "
+            + "AND (p.receivedAt < e.receivedAt OR (p.receivedAt = e.receivedAt AND p.eventId < e.eventId)) "
+            + "AND (p.status IN :blocking OR (p.status = :pending AND p.nextAttemptAt > :now))) "
+            + "ORDER BY e.receivedAt ASC, e.eventId ASC")
+    List<StripeWebhookEvent> findReady(@Param("pending") WebhookEventStatus pending,
+                                       @Param("blocking") List<WebhookEventStatus> blocking,
+                                       @Param("now") LocalDateTime now,
+                                       Pageable pageable);
+
+    /**
+     * Fait passer un événement d'un statut à un autre uniquement s'il est dans le statut attendu.
+     * Sert à réserver un événement pour un worker sans lecture préalable.
+     * @return Le nombre de lignes modifiées (0 si l'événement a déjà été pris)
+     */
+    @Modifying
+    @Transactional
+    @Query("UPDATE StripeWebhookEvent e SET e.status = :to, e.claimedAt = :claimedAt "
+            + "WHERE e.eventId = :eventId AND e.status = :from")
+    int transition(@Param("eventId") String eventId,
+                   @Param("from") WebhookEventStatus from,
+                   @Param("to") WebhookEventStatus to,
+                   @Param("claimedAt") LocalDateTime claimedAt);
+
+    /**
+     * Marque un événement comme traité.
+     */
+    @Modifying
+    @Transactional
+    @Query("UPDATE StripeWebhookEvent e SET e.status = :status, e.processedAt = :processedAt, e.lastError = null "
+            + "WHERE e.eventId = :eventId")
+    int markProcessed(@Param("eventId") String eventId,
+                      @Param("status") WebhookEventStatus status,
+                      @Param("processedAt") LocalDateTime processedAt);
+
+    /**
+     * Enregistre un échec de traitement et replace l'événement dans le statut indiqué.
+     */
+    @Modifying
+    @Transactional
+    @Query("UPDATE StripeWebhookEvent e SET e.status = :status, e.attempts = e.attempts + 1, "
+            + "e.lastError = :error, e.claimedAt = null, e.nextAttemptAt = :nextAttemptAt WHERE e.eventId = :eventId")
+    int recordFailure(@Param("eventId") String eventId,
+                      @Param("status") WebhookEventStatus status,
+                      @Param("error") String error,
+                      @Param("nextAttemptAt") LocalDateTime nextAttemptAt);
+
+    /**
+     * Replace un événement en attente sans compter de tentative (traitement différé, pas en échec).
+     */
+    @Modifying
+    @Transactional
+    @Query("UPDATE StripeWebhookEvent e SET e.status = :pending, e.claimedAt = null, "
+            + "e.nextAttemptAt = :nextAttemptAt WHERE e.eventId = :eventId")
+    int defer(@Param("eventId") String eventId,
+              @Param("pending") WebhookEventStatus pending,
+              @Param("nextAttemptAt") LocalDateTime nextAttemptAt);
+
+    /**
+     * Libère les événements réservés depuis trop longtemps (worker arrêté brutalement).
+     */
+    @Modifying
+    @Transactional
+    @Query("UPDATE StripeWebhookEvent e SET e.status = :pending, e.claimedAt = null "
+            + "WHERE e.status = :processing AND e.claimedAt < :before")
+    int releaseStaleClaims(@Param("pending") WebhookEventStatus pending,
+                           @Param("processing") WebhookEventStatus processing,
+                           @Param("before") LocalDateTime before);
+
+    /**
+     * Replace tous les événements en échec dans la file de traitement (rejeu après incident).
+     */
+    @Modifying
+    @Transactional
+    @Query("UPDATE StripeWebhookEvent e SET e.status = :pending, e.attempts = 0, e.lastError = null, "
+            + "e.nextAttemptAt = null WHERE e.status = :failed")
+    int requeueFailed(@Param("pending") WebhookEventStatus pending,
+                      @Param("failed") WebhookEventStatus failed);
+}
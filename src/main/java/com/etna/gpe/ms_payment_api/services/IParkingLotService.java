@@ -0,0 +1,16 @@
+package com.etna.gpe.ms_payment_api.services;
+
+/**
+ * Interface du service de rejeu des messages RabbitMQ placés dans les parking lots.
+ */
+public interface IParkingLotService {
+
+    /**
+     * Renvoie les messages du parking lot d'une file dans cette file, avec un compteur de rejeu remis à zéro.
+     * @param queue Nom de la file d'origine
+     * @param limit Nombre maximum de messages à rejouer
+     * @return Le nombre de messages rejoués
+     * @throws IllegalArgumentException si la file n'est pas gérée par le service
+     */
+    int replay(String queue, int limit);
+}
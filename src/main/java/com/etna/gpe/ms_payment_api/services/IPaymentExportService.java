@@ -0,0 +1,26 @@
+package com.etna.gpe.ms_payment_api.services;
+
+import com.etna.gpe.ms_payment_api.enums.ExportFormat;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+/**
+ * Interface du service d'export des paiements pour la comptabilité.
+ */
+public interface IPaymentExportService {
+
+    /**
+     * Écrit les paiements d'un shop dans le flux, ligne par ligne, sans les charger en mémoire.
+     * @param shopId ID du shop
+     * @param from Date de création minimale, incluse (optionnelle)
+     * @param to Date de création maximale, exclue (optionnelle)
+     * @param format Format de sortie
+     * @param out Flux de sortie (non fermé par le service)
+     * @return Le nombre de paiements exportés
+     */
+    long exportShopPayments(UUID shopId, LocalDateTime from, LocalDateTime to, ExportFormat format,
+                            OutputStream out) throws IOException;
+}
@@ -0,0 +1,18 @@
+package com.etna.gpe.ms_payment_api.services;
+
+import com.etna.gpe.ms_payment_api.dto.PaymentEvent;
+
+/**
+ * Interface du service d'écriture dans l'outbox des événements de paiement.
+ */
+public interface IPaymentOutboxService {
+
+    /**
+     * Enregistre un événement à publier sur RabbitMQ.
+     * Doit être appelé dans la transaction qui modifie le paiement : l'événement n'est publié que si elle est validée.
+     * @param exchange Exchange de destination
+     * @param routingKey Clé de routage
+     * @param event Événement à publier
+     */
+    void enqueue(String exchange, String routingKey, PaymentEvent event);
+}
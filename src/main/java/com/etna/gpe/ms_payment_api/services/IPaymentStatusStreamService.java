@@ -0,0 +1,25 @@
+package com.etna.gpe.ms_payment_api.services;
+
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.util.UUID;
+
+/**
+ * Interface du service de diffusion en temps réel (Server-Sent Events) du statut des paiements.
+ */
+public interface IPaymentStatusStreamService {
+
+    /**
+     * Abonne un client au statut du paiement d'un rendez-vous.
+     * Le flux se termine dès que le paiement quitte le statut PENDING, ou à l'expiration du délai d'attente.
+     * @param appointmentId ID du rendez-vous
+     * @return L'émetteur SSE à retourner au client
+     */
+    SseEmitter subscribe(UUID appointmentId);
+
+    /**
+     * Notifie les abonnés de cette instance qu'un paiement d'un rendez-vous a changé.
+     * @param appointmentId ID du rendez-vous
+     */
+    void onPaymentChanged(UUID appointmentId);
+}
@@ -0,0 +1,32 @@
+package com.etna.gpe.ms_payment_api.services;
+
+/**
+ * Interface du registre des événements Stripe déjà traités.
+ * Un cache LRU borné en mémoire sert de façade à la table : les doublons récents
+ * sont détectés sans accès à la base de données.
+ */
+public interface IProcessedEventService {
+
+    /**
+     * Indique si l'événement (ou la session Checkout) a déjà été traité.
+     * @param eventKey Clé de l'événement (ID d'événement Stripe ou clé de session)
+     * @return true si l'événement a déjà été traité
+     */
+    boolean isProcessed(String eventKey);
+
+    /**
+     * Enregistre l'événement comme traité.
+     * @param eventKey Clé de l'événement (ID d'événement Stripe ou clé de session)
+     */
+    void markProcessed(String eventKey);
+
+    /**
+     * Construit la clé de déduplication de la finalisation d'une session Checkout,
+     * partagée entre le webhook checkout.session.completed et la redirection /payment/success.
+     * @param sessionId ID de la session Stripe
+     * @return La clé de déduplication
+     */
+    static String checkoutKey(String sessionId) {
+        return "checkout:" + sessionId;
+    }
+}
@@ -0,0 +1,30 @@
+package com.etna.gpe.ms_payment_api.services;
+
+import com.etna.gpe.ms_payment_api.dto.RefundItemRequestDto;
+import com.etna.gpe.ms_payment_api.dto.RefundJobDto;
+
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Interface du service des remboursements en masse.
+ */
+public interface IRefundJobService {
+
+    /**
+     * Enregistre un job de remboursement en masse ; les remboursements sont effectués en arrière-plan.
+     * Une ligne sans montant est enregistrée avec le reste à rembourser du paiement.
+     * @param items Les paiements à rembourser
+     * @return L'ID du job
+     * @throws IllegalArgumentException si la liste est vide ou trop longue, ou si une ligne référence un paiement
+     *                                  absent, en double, non complété, ou un montant supérieur au reste à rembourser
+     */
+    UUID submit(List<RefundItemRequestDto> items);
+
+    /**
+     * Récupère l'avancement d'un job de remboursement en masse.
+     * @param jobId L'ID du job
+     * @return L'avancement du job, ou null si le job est inconnu
+     */
+    RefundJobDto getJob(UUID jobId);
+}
@@ -0,0 +1,38 @@
+package com.etna.gpe.ms_payment_api.services;
+
+import com.etna.gpe.ms_payment_api.dto.ShopRevenueSummaryDto;
+import com.etna.gpe.ms_payment_api.entity.Payment;
+
+import java.time.LocalDate;
+import java.util.UUID;
+
+/**
+ * Interface du service des agrégats de chiffre d'affaires des shops.
+ */
+public interface IShopRevenueService {
+
+    /**
+     * Ajoute un paiement complété à l'agrégat du jour.
+     * Doit être appelé dans la transaction qui passe le paiement au statut COMPLETED, une seule fois par paiement.
+     * @param payment Le paiement complété
+     */
+    void recordCompleted(Payment payment);
+
+    /**
+     * Ajoute un remboursement, total ou partiel, à l'agrégat du jour et retire des frais la part remboursée.
+     * Sans effet si le paiement n'était pas compté comme complété. Doit être appelé dans la transaction
+     * qui enregistre le remboursement, une seule fois par remboursement.
+     * @param payment Le paiement tel qu'il était avant ce remboursement (statut et montant déjà remboursé)
+     * @param refundedAmount Montant remboursé par ce remboursement, en centimes
+     */
+    void recordRefunded(Payment payment, long refundedAmount);
+
+    /**
+     * Calcule le résumé de chiffre d'affaires d'un shop à partir des agrégats journaliers.
+     * @param shopId ID du shop
+     * @param from Premier jour, inclus
+     * @param to Dernier jour, inclus
+     * @return Le résumé
+     */
+    ShopRevenueSummaryDto getSummary(UUID shopId, LocalDate from, LocalDate to);
+}
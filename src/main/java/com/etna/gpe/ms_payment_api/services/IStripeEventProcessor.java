@@ -0,0 +1,32 @@
+package com.etna.gpe.ms_payment_api.services;
+
+import com.stripe.model.Event;
+
+/**
+ * Interface du traitement métier des événements Stripe reçus par webhook.
+ */
+public interface IStripeEventProcessor {
+
+    /**
+     * Indique si le type d'événement est pris en charge par le service.
+     * @param eventType Type de l'événement Stripe (ex: "checkout.session.completed")
+     * @return true si l'événement déclenche un traitement
+     */
+    boolean supports(String eventType);
+
+    /**
+     * Calcule la clé d'ordonnancement de l'événement : les événements d'une même clé
+     * doivent être traités dans leur ordre de réception.
+     * Une session sans PaymentIntent est rangée sous l'ID de la session : elle n'est pas ordonnée par rapport
+     * aux événements de charge, qui portent l'ID du PaymentIntent.
+     * @param event Événement Stripe vérifié
+     * @return L'ID du PaymentIntent, à défaut celui de la session, à défaut celui de l'événement
+     */
+    String resolveOrderingKey(Event event);
+
+    /**
+     * Traite un événement Stripe dont la signature a déjà été vérifiée.
+     * @param event Événement Stripe
+     */
+    void process(Event event);
+}
@@ -0,0 +1,30 @@
+package com.etna.gpe.ms_payment_api.services;
+
+import com.stripe.model.Event;
+
+/**
+ * Interface de l'inbox des webhooks Stripe : persistance des événements reçus
+ * et traitement asynchrone par un pool de workers borné.
+ */
+public interface IStripeWebhookInboxService {
+
+    /**
+     * Indique si l'ingestion asynchrone des webhooks est activée.
+     * @return true si les événements doivent être déposés dans l'inbox
+     */
+    boolean isEnabled();
+
+    /**
+     * Persiste un événement Stripe vérifié dans l'inbox, sans le traiter.
+     * Une livraison en double du même événement est ignorée.
+     * @param event Événement Stripe dont la signature a été vérifiée
+     * @param payload Corps brut du webhook
+     */
+    void enqueue(Event event, String payload);
+
+    /**
+     * Replace les événements en échec dans la file de traitement.
+     * @return Le nombre d'événements remis en file
+     */
+    int replayFailedEvents();
+}
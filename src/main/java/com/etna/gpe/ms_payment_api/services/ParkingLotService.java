@@ -0,0 +1,96 @@
+package com.etna.gpe.ms_payment_api.services;
+
+import com.etna.gpe.ms_payment_api.messaging.RetryTopology;
+import com.rabbitmq.client.AMQP;
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.GetResponse;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Rejeu en masse des messages placés dans les parking lots (après correction d'un consommateur par exemple).
+ * Chaque message est lu sans acquittement automatique et n'est retiré du parking lot qu'une fois sa
+ * republication confirmée par le broker : un échec ou un arrêt entre les deux le laisse dans le parking lot.
+ */
+@Service
+@Slf4j
+public class ParkingLotService implements IParkingLotService {
+
+    private final RabbitTemplate rabbitTemplate;
+    private final Set<String> managedQueues;
+
+    @Value("${rabbitmq.outbox.confirm-timeout-ms:5000}")
+    private long confirmTimeoutMs;
+
+    @Autowired
+    public ParkingLotService(RabbitTemplate rabbitTemplate,
+                             @Value("${rabbitmq.queue.payment-completed}") String paymentCompletedQueue,
+                             @Value("${rabbitmq.queue.payment-refunded}") String paymentRefundedQueue,
+                             @Value("${rabbitmq.queue.appointment-confirmed}") String appointmentConfirmedQueue,
+                             @Value("${rabbitmq.queue.appointment-cancelled}") String appointmentCancelledQueue) {
+        this.rabbitTemplate = rabbitTemplate;
+        this.managedQueues = Set.of(paymentCompletedQueue, paymentRefundedQueue,
+                appointmentConfirmedQueue, appointmentCancelledQueue);
+    }
+
+    @Override
+    public int replay(String queue, int limit) {
+        if (!managedQueues.contains(queue)) {
+            throw new IllegalArgumentException("Unknown queue: " + queue);
+        }
+
+        String parkingLot = RetryTopology.parkingLotQueue(queue);
+        Integer replayed = rabbitTemplate.execute(channel -> {
+            // Sans effet si le canal est déjà en mode confirmation (publisher confirms corrélés)
+            channel.confirmSelect();
+            int count = 0;
+            while (count < limit) {
+                GetResponse response = channel.basicGet(parkingLot, false);
+                if (response == null) {
+                    break;
+                }
+                long deliveryTag = response.getEnvelope().getDeliveryTag();
+                channel.basicPublish("", queue, resetRetryCount(response.getProps()), response.getBody());
+                if (!awaitConfirm(channel)) {
+                    // Republication non confirmée : le message reste dans le parking lot
+                    channel.basicNack(deliveryTag, false, true);
+                    log.warn("Replay from {} stopped after {} messages: republish not confirmed", parkingLot, count);
+                    break;
+                }
+                channel.basicAck(deliveryTag, false);
+                count++;
+            }
+            return count;
+        });
+
+        log.info("{} messages replayed from {} to {}", replayed, parkingLot, queue);
+        return replayed != null ? replayed : 0;
+    }
+
+    private boolean awaitConfirm(Channel channel) {
+        try {
+            return channel.waitForConfirms(confirmTimeoutMs);
+        } catch (TimeoutException e) {
+            return false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private AMQP.BasicProperties resetRetryCount(AMQP.BasicProperties properties) {
+        Map<String, Object> headers = properties.getHeaders() != null
+                ? new HashMap<>(properties.getHeaders())
+                : new HashMap<>();
+        headers.remove(RetryTopology.RETRY_COUNT_HEADER);
+        return properties.builder().headers(headers).build();
+    }
+}
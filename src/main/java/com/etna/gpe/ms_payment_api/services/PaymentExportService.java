@@ -0,0 +1,99 @@
+package com.etna.gpe.ms_payment_api.services;
+
+import com.etna.gpe.ms_payment_api.dto.PaymentSummaryDto;
+import com.etna.gpe.ms_payment_api.enums.ExportFormat;
+import com.etna.gpe.ms_payment_api.repositories.PaymentRepository;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.Iterator;
+import java.util.UUID;
+import java.util.stream.Stream;
+
+/**
+ * Export des paiements en CSV ou NDJSON.
+ * Les lignes sont lues en streaming (curseur JDBC) sous forme de projection DTO, puis écrites au fil de l'eau :
+ * la mémoire utilisée ne dépend pas du nombre de paiements exportés.
+ */
+@Service
+@Slf4j
+public class PaymentExportService implements IPaymentExportService {
+
+    public static final String CSV_HEADER = "id,user_id,shop_id,appointment_id,service_id,amount,refunded_amount,currency,status,created_at";
+    private static final LocalDateTime EXPORT_START = LocalDateTime.of(1970, 1, 1, 0, 0);
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final PaymentRepository paymentRepository;
+    private final ObjectWriter ndjsonWriter;
+
+    @Autowired
+    public PaymentExportService(PaymentRepository paymentRepository, ObjectMapper objectMapper) {
+        this.paymentRepository = paymentRepository;
+        this.ndjsonWriter = objectMapper.writerFor(PaymentSummaryDto.class);
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public long exportShopPayments(UUID shopId, LocalDateTime from, LocalDateTime to, ExportFormat format,
+                                   OutputStream out) throws IOException {
+        LocalDateTime start = from != null ? from : EXPORT_START;
+        LocalDateTime end = to != null ? to : LocalDateTime.now().plusDays(1);
+
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), BUFFER_SIZE);
+        if (format == ExportFormat.CSV) {
+            writer.write(CSV_HEADER);
+            writer.write('\n');
+        }
+
+        long count = 0;
+        try (Stream<PaymentSummaryDto> payments = paymentRepository.streamShopPayments(shopId, start, end)) {
+            Iterator<PaymentSummaryDto> iterator = payments.iterator();
+            while (iterator.hasNext()) {
+                PaymentSummaryDto payment = iterator.next();
+                writer.write(format == ExportFormat.CSV ? toCsv(payment) : ndjsonWriter.writeValueAsString(payment));
+                writer.write('\n');
+                count++;
+            }
+        }
+        writer.flush();
+
+        log.info("{} payments exported as {} for shop: {}", count, format, shopId);
+        return count;
+    }
+
+    private static String toCsv(PaymentSummaryDto payment) {
+        return String.join(",",
+                csv(payment.getId()),
+                csv(payment.getUserId()),
+                csv(payment.getShopId()),
+                csv(payment.getAppointmentId()),
+                csv(payment.getServiceId()),
+                String.valueOf(payment.getAmount()),
+                String.valueOf(payment.getRefundedAmount()),
+                csv(payment.getCurrency()),
+                csv(payment.getStatus()),
+                csv(payment.getCreatedAt()));
+    }
+
+    private static String csv(Object value) {
+        if (value == null) {
+            return "";
+        }
+        String text = value.toString();
+        if (text.contains(",") || text.contains("\"") || text.contains("\n")) {
+            return "\"" + text.replace("\"", "\"\"") + "\"";
+        }
+        return text;
+    }
+}
@@ -0,0 +1,205 @@
+package com.etna.gpe.ms_payment_api.services;
+
+import com.etna.gpe.ms_payment_api.entity.PaymentOutboxMessage;
+import com.etna.gpe.ms_payment_api.enums.OutboxMessageStatus;
+import com.etna.gpe.ms_payment_api.messaging.PaymentEventSerializer;
+import com.etna.gpe.ms_payment_api.repositories.PaymentOutboxRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.AmqpException;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageDeliveryMode;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.rabbit.connection.CorrelationData;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.amqp.support.converter.AbstractJavaTypeMapper;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Relais de l'outbox vers RabbitMQ.
+ * Les messages sont publiés par lots : tout le lot est envoyé, puis les confirmations du broker
+ * (publisher confirms) sont attendues ensemble. Seuls les messages confirmés sont supprimés de l'outbox,
+ * les autres sont republiés au passage suivant (livraison au moins une fois).
+ * Chaque message est réservé par un UPDATE conditionnel avant l'envoi : plusieurs instances peuvent relayer
+ * sans publier deux fois le même message. Un lot ne contient que le plus ancien message de chaque paiement :
+ * tant qu'un message n'est pas confirmé, les suivants du même paiement attendent. Après max-attempts échecs,
+ * le message passe au statut FAILED et bloque son paiement jusqu'à sa remise en PENDING par un opérateur.
+ * Désactivé pendant les tests via @Profile.
+ */
+@Component
+@Profile("!test")
+@Slf4j
+public class PaymentOutboxRelay {
+
+    public static final String MESSAGE_ID_PREFIX = "payment-outbox-";
+    public static final String CONFIRM_LATENCY_METRIC = "rabbitmq.publish.confirm.latency";
+
+    private final PaymentOutboxRepository outboxRepository;
+    private final RabbitTemplate rabbitTemplate;
+    private final Timer confirmLatency;
+
+    @Value("${rabbitmq.outbox.batch-size:100}")
+    private int batchSize;
+
+    @Value("${rabbitmq.outbox.confirm-timeout-ms:5000}")
+    private long confirmTimeoutMs;
+
+    @Value("${rabbitmq.outbox.max-attempts:10}")
+    private int maxAttempts;
+
+    @Value("${rabbitmq.outbox.stale-claim-timeout-ms:60000}")
+    private long staleClaimTimeoutMs;
+
+    @Autowired
+    public PaymentOutboxRelay(PaymentOutboxRepository outboxRepository, RabbitTemplate rabbitTemplate,
+                              MeterRegistry meterRegistry) {
+        this.outboxRepository = outboxRepository;
+        this.rabbitTemplate = rabbitTemplate;
+        this.confirmLatency = Timer.builder(CONFIRM_LATENCY_METRIC)
+                .description("Délai entre l'envoi d'un message et sa confirmation par le broker")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Publie les messages en attente, lot après lot, tant que les lots sont pleins et entièrement confirmés.
+     */
+    @Scheduled(fixedDelayString = "${rabbitmq.outbox.poll-interval-ms:200}")
+    public void relay() {
+        List<PaymentOutboxMessage> batch;
+        int confirmed;
+        do {
+            batch = outboxRepository.findPublishable(OutboxMessageStatus.PENDING, PageRequest.of(0, batchSize));
+            if (batch.isEmpty()) {
+                return;
+            }
+            confirmed = publishBatch(claim(batch));
+        } while (batch.size() == batchSize && confirmed == batch.size());
+    }
+
+    /**
+     * Libère les messages réservés par une instance qui n'a jamais terminé (arrêt brutal pendant un lot).
+     */
+    @Scheduled(fixedDelayString = "${rabbitmq.outbox.stale-claim-check-interval-ms:60000}")
+    public void releaseStaleClaims() {
+        LocalDateTime before = LocalDateTime.now().minus(Duration.ofMillis(staleClaimTimeoutMs));
+        int released = outboxRepository.releaseStaleClaims(
+                OutboxMessageStatus.PENDING, OutboxMessageStatus.PROCESSING, before);
+        if (released > 0) {
+            log.warn("{} stale outbox messages released back to the queue", released);
+        }
+    }
+
+    private List<PaymentOutboxMessage> claim(List<PaymentOutboxMessage> batch) {
+        List<PaymentOutboxMessage> claimed = new ArrayList<>(batch.size());
+        LocalDateTime now = LocalDateTime.now();
+        for (PaymentOutboxMessage outboxMessage : batch) {
+            // Déjà réservé par une autre instance sinon
+            if (outboxRepository.transition(outboxMessage.getId(),
+                    OutboxMessageStatus.PENDING, OutboxMessageStatus.PROCESSING, now) > 0) {
+                claimed.add(outboxMessage);
+            }
+        }
+        return claimed;
+    }
+
+    private int publishBatch(List<PaymentOutboxMessage> batch) {
+        Map<Long, CorrelationData> pending = new LinkedHashMap<>();
+        Map<Long, PaymentOutboxMessage> messages = new LinkedHashMap<>();
+        for (PaymentOutboxMessage outboxMessage : batch) {
+            messages.put(outboxMessage.getId(), outboxMessage);
+            CorrelationData correlationData = new CorrelationData(String.valueOf(outboxMessage.getId()));
+            long sentAt = System.nanoTime();
+            correlationData.getFuture().whenComplete((confirm, error) ->
+                    confirmLatency.record(System.nanoTime() - sentAt, TimeUnit.NANOSECONDS));
+            try {
+                rabbitTemplate.send(outboxMessage.getExchange(), outboxMessage.getRoutingKey(),
+                        toMessage(outboxMessage), correlationData);
+                pending.put(outboxMessage.getId(), correlationData);
+            } catch (AmqpException e) {
+                recordFailure(outboxMessage, e.getMessage());
+            }
+        }
+
+        List<Long> confirmed = new ArrayList<>();
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(confirmTimeoutMs);
+        for (Map.Entry<Long, CorrelationData> entry : pending.entrySet()) {
+            PaymentOutboxMessage outboxMessage = messages.get(entry.getKey());
+            try {
+                CorrelationData.Confirm confirm = entry.getValue().getFuture()
+                        .get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+                if (confirm.isAck() && entry.getValue().getReturned() == null) {
+                    confirmed.add(entry.getKey());
+                } else if (confirm.isAck()) {
+                    recordFailure(outboxMessage, "Returned: " + entry.getValue().getReturned().getReplyText());
+                } else {
+                    recordFailure(outboxMessage, "Nack: " + confirm.getReason());
+                }
+            } catch (TimeoutException e) {
+                recordFailure(outboxMessage, "Publisher confirm timeout");
+            } catch (ExecutionException e) {
+                recordFailure(outboxMessage, e.getCause() != null ? e.getCause().getMessage() : e.getMessage());
+            } catch (InterruptedException e) {
+                // Les messages non confirmés restent réservés et seront libérés par releaseStaleClaims
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+
+        if (!confirmed.isEmpty()) {
+            outboxRepository.deleteAllByIdInBatch(confirmed);
+            log.debug("{} outbox messages published and confirmed", confirmed.size());
+        }
+        return confirmed.size();
+    }
+
+    private Message toMessage(PaymentOutboxMessage outboxMessage) {
+        MessageProperties properties = new MessageProperties();
+        properties.setMessageId(MESSAGE_ID_PREFIX + outboxMessage.getId());
+        properties.setContentType(outboxMessage.getContentType());
+        properties.setDeliveryMode(MessageDeliveryMode.PERSISTENT);
+        if (outboxMessage.getTypeId() != null) {
+            properties.setHeader(AbstractJavaTypeMapper.DEFAULT_CLASSID_FIELD_NAME, outboxMessage.getTypeId());
+        }
+        if (outboxMessage.getSchemaVersion() != null) {
+            properties.setHeader(PaymentEventSerializer.SCHEMA_VERSION_HEADER, outboxMessage.getSchemaVersion());
+        }
+        return new Message(outboxMessage.getPayload(), properties);
+    }
+
+    private void recordFailure(PaymentOutboxMessage outboxMessage, String error) {
+        int attempt = outboxMessage.getAttempts() + 1;
+        if (attempt >= maxAttempts) {
+            log.error("Outbox message {} for payment {} failed {} times, marked FAILED: later events of this payment "
+                    + "are held until it is requeued - Error: {}", outboxMessage.getId(), outboxMessage.getPaymentId(),
+                    attempt, error);
+            outboxRepository.recordFailure(outboxMessage.getId(), OutboxMessageStatus.FAILED, truncate(error));
+            return;
+        }
+        log.warn("Could not publish outbox message: {} (attempt {}/{}) - Error: {}",
+                outboxMessage.getId(), attempt, maxAttempts, error);
+        outboxRepository.recordFailure(outboxMessage.getId(), OutboxMessageStatus.PENDING, truncate(error));
+    }
+
+    private static String truncate(String error) {
+        if (error == null) {
+            return null;
+        }
+        return error.length() > 1000 ? error.substring(0, 1000) : error;
+    }
+}
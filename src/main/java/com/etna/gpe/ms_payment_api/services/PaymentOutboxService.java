@@ -0,0 +1,50 @@
+package com.etna.gpe.ms_payment_api.services;
+
+import com.etna.gpe.ms_payment_api.dto.PaymentEvent;
+import com.etna.gpe.ms_payment_api.entity.PaymentOutboxMessage;
+import com.etna.gpe.ms_payment_api.enums.OutboxMessageStatus;
+import com.etna.gpe.ms_payment_api.messaging.PaymentEventSerializer;
+import com.etna.gpe.ms_payment_api.repositories.PaymentOutboxRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+
+/**
+ * Écrit les événements de paiement dans l'outbox.
+ * Les événements sont sérialisés à l'écriture, le relais n'a donc plus qu'à publier les octets stockés.
+ */
+@Service
+@Slf4j
+public class PaymentOutboxService implements IPaymentOutboxService {
+
+    private final PaymentOutboxRepository outboxRepository;
+    private final PaymentEventSerializer paymentEventSerializer;
+
+    @Autowired
+    public PaymentOutboxService(PaymentOutboxRepository outboxRepository, PaymentEventSerializer paymentEventSerializer) {
+        this.outboxRepository = outboxRepository;
+        this.paymentEventSerializer = paymentEventSerializer;
+    }
+
+    @Override
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void enqueue(String exchange, String routingKey, PaymentEvent event) {
+        PaymentOutboxMessage outboxMessage = new PaymentOutboxMessage();
+        outboxMessage.setPaymentId(event.getPaymentId());
+        outboxMessage.setExchange(exchange);
+        outboxMessage.setRoutingKey(routingKey);
+        outboxMessage.setPayload(paymentEventSerializer.serialize(event));
+        outboxMessage.setContentType(paymentEventSerializer.getContentType());
+        outboxMessage.setTypeId(PaymentEventSerializer.TYPE_ID);
+        outboxMessage.setSchemaVersion(PaymentEvent.SCHEMA_VERSION);
+        outboxMessage.setStatus(OutboxMessageStatus.PENDING);
+        outboxMessage.setCreatedAt(LocalDateTime.now());
+        outboxRepository.save(outboxMessage);
+
+        log.debug("Event {} enqueued in outbox for payment: {}", routingKey, event.getPaymentId());
+    }
+}
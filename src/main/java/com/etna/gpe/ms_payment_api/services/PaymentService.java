@@ -1,7 +1,13 @@
 package com.etna.gpe.ms_payment_api.services;
 
+import com.etna.gpe.ms_payment_api.dto.CheckoutItemDto;
+import com.etna.gpe.ms_payment_api.dto.PaymentPageDto;
+import com.etna.gpe.ms_payment_api.dto.PaymentView;
 import com.etna.gpe.ms_payment_api.entity.Payment;
+import com.etna.gpe.ms_payment_api.enums.PaymentStatus;
 
+import java.time.LocalDateTime;
+import java.util.List;
 import java.util.UUID;
 
 /**
@@ -21,30 +27,85 @@ public interface PaymentService {
      */
     String createCheckoutSession(UUID userId, UUID shopId, UUID appointmentId, UUID serviceId, long amount, String currency);
 
+    /**
+     * Crée une session Stripe Checkout unique pour plusieurs services d'un même shop.
+     * Un Payment est créé par ligne ; tous partagent la session et le PaymentIntent.
+     * @param userId ID de l'utilisateur
+     * @param shopId ID du shop
+     * @param currency Devise (ex: "eur")
+     * @param items Lignes à payer
+     * @return URL de la session Checkout à ouvrir sur le client mobile
+     * @throws IllegalArgumentException si la liste est vide ou dépasse le nombre de lignes autorisé
+     */
+    String createBatchCheckoutSession(UUID userId, UUID shopId, String currency, List<CheckoutItemDto> items);
+
     /**
      * Traite l'événement de paiement réussi (checkout.session.completed).
-     * Met à jour le statut en BD et publie l'événement RabbitMQ.
+     * Met à jour le statut en BD et publie l'événement RabbitMQ, pour chaque paiement de la session.
      * @param sessionId ID de la session Stripe
-     * @return Le Payment mis à jour
+     * @return Le (premier) Payment mis à jour
      */
     Payment handleCheckoutCompleted(String sessionId);
 
     /**
      * Traite un remboursement initié (ou reçu via webhook).
      * Met à jour le statut en BD et publie l'événement RabbitMQ.
+     * Le paiement est retrouvé par l'ID de charge, à défaut par le PaymentIntent.
+     * Un paiement ne passe au statut REFUNDED que lorsque tout son montant est remboursé ; un remboursement
+     * partiel est ajouté à son montant remboursé.
+     * Pour une charge partagée par un checkout groupé, seul un remboursement total met à jour les paiements :
+     * les remboursements partiels sont enregistrés sur la ligne à leur création.
+     * @param chargeId ID de la charge Stripe remboursée
      * @param paymentIntentId ID du PaymentIntent Stripe
-     * @return Le Payment mis à jour
+     * @param amountRefunded Montant cumulé remboursé sur la charge, en cents
+     * @param fullyRefunded true si la charge est intégralement remboursée
+     * @return Le (premier) Payment mis à jour
      */
-    Payment handlePaymentRefunded(String paymentIntentId);
+    Payment handlePaymentRefunded(String chargeId, String paymentIntentId, long amountRefunded, boolean fullyRefunded);
+
+    /**
+     * Enregistre le PaymentIntent d'une session Checkout s'il n'était pas connu à la création de la session.
+     * @param sessionId ID de la session Stripe
+     * @param paymentIntentId ID du PaymentIntent Stripe
+     */
+    void recordPaymentIntent(String sessionId, String paymentIntentId);
+
+    /**
+     * Enregistre l'ID de charge Stripe d'un paiement (charge.succeeded).
+     * @param paymentIntentId ID du PaymentIntent Stripe
+     * @param chargeId ID de la charge Stripe
+     */
+    void recordCharge(String paymentIntentId, String chargeId);
 
     /**
      * Initie un remboursement via l'API Stripe.
      * @param paymentId ID du paiement
      * @param amount Montant à rembourser en cents
      * @return Le Payment mis à jour
+     * @throws IllegalArgumentException si le paiement n'est pas complété ou si le montant dépasse le reste à rembourser
      */
     Payment refundPayment(UUID paymentId, long amount);
 
+    /**
+     * Rembourse intégralement les paiements complétés d'un rendez-vous annulé.
+     * Sans effet si aucun paiement complété n'est associé au rendez-vous.
+     * S'arrête au premier remboursement en échec : l'appelant doit rejouer l'annulation, les remboursements
+     * déjà créés n'étant pas dupliqués (clé d'idempotence par paiement).
+     * @param appointmentId ID du rendez-vous annulé
+     * @return Le nombre de remboursements initiés
+     */
+    int refundCancelledAppointment(UUID appointmentId);
+
+    /**
+     * Initie un remboursement Stripe avec une clé d'idempotence fournie par l'appelant.
+     * @param paymentId ID du paiement
+     * @param amount Montant à rembourser en cents
+     * @param idempotencyKey Clé d'idempotence transmise à Stripe
+     * @return L'ID du remboursement Stripe
+     * @throws IllegalArgumentException si le paiement n'est pas complété ou si le montant dépasse le reste à rembourser
+     */
+    String createIdempotentRefund(UUID paymentId, long amount, String idempotencyKey);
+
     /**
      * Récupère l'ID du compte Stripe connecté pour un shop donné.
      * @param shopId ID du shop
@@ -57,12 +118,47 @@ public interface PaymentService {
      * @param paymentId ID du paiement
      * @return Le paiement trouvé
      */
-    Payment findById(UUID paymentId);
+    PaymentView findById(UUID paymentId);
+
+    /**
+     * Trouve un paiement par son ID de session Stripe (le premier pour une session groupée).
+     * @param sessionId ID de la session Stripe
+     * @return Le paiement trouvé
+     */
+    Payment findByStripeSessionId(String sessionId);
     
     /**
-     * Trouve un paiement par l'ID du rendez-vous associé.
+     * Trouve le paiement le plus récent d'un rendez-vous.
      * @param appointmentId ID du rendez-vous
      * @return Le paiement trouvé ou null si aucun paiement n'est associé au rendez-vous
      */
-    Payment findByAppointmentId(UUID appointmentId);
+    PaymentView findByAppointmentId(UUID appointmentId);
+
+    /**
+     * Liste les paiements d'un shop, du plus récent au plus ancien (pagination par curseur).
+     * @param shopId ID du shop
+     * @param status Statut recherché (optionnel)
+     * @param from Date de création minimale, incluse (optionnelle)
+     * @param to Date de création maximale, exclue (optionnelle)
+     * @param cursor Curseur de la page précédente (null pour la première page)
+     * @param limit Taille de la page
+     * @return La page de paiements
+     * @throws IllegalArgumentException si le curseur est invalide
+     */
+    PaymentPageDto listShopPayments(UUID shopId, PaymentStatus status, LocalDateTime from, LocalDateTime to,
+                                    String cursor, int limit);
+
+    /**
+     * Liste les paiements d'un utilisateur, du plus récent au plus ancien (pagination par curseur).
+     * @param userId ID de l'utilisateur
+     * @param status Statut recherché (optionnel)
+     * @param from Date de création minimale, incluse (optionnelle)
+     * @param to Date de création maximale, exclue (optionnelle)
+     * @param cursor Curseur de la page précédente (null pour la première page)
+     * @param limit Taille de la page
+     * @return La page de paiements
+     * @throws IllegalArgumentException si le curseur est invalide
+     */
+    PaymentPageDto listUserPayments(UUID userId, PaymentStatus status, LocalDateTime from, LocalDateTime to,
+                                    String cursor, int limit);
 }
@@ -1,13 +1,23 @@
 package com.etna.gpe.ms_payment_api.services;
 
+import com.etna.gpe.ms_payment_api.cache.PaymentLookupCache;
+import com.etna.gpe.ms_payment_api.cache.ServiceCatalogueCache;
+import com.etna.gpe.ms_payment_api.cache.ShopStripeAccountCache;
 import com.etna.gpe.ms_payment_api.config.StripeFeeConfig;
+import com.etna.gpe.ms_payment_api.dto.CheckoutItemDto;
+import com.etna.gpe.ms_payment_api.dto.PaymentCursor;
+import com.etna.gpe.ms_payment_api.dto.PaymentEvent;
+import com.etna.gpe.ms_payment_api.dto.PaymentPageDto;
+import com.etna.gpe.ms_payment_api.dto.PaymentSummaryDto;
+import com.etna.gpe.ms_payment_api.dto.PaymentView;
 import com.etna.gpe.ms_payment_api.dto.ServiceDto;
 import com.etna.gpe.ms_payment_api.entity.Payment;
 import com.etna.gpe.ms_payment_api.enums.PaymentStatus;
 import com.etna.gpe.ms_payment_api.exceptions.PaymentNotFoundException;
 import com.etna.gpe.ms_payment_api.exceptions.StripePaymentException;
 import com.etna.gpe.ms_payment_api.repositories.PaymentRepository;
-import com.etna.gpe.mycloseshop.security_api.config.JwtTokenUtil;
+import com.etna.gpe.ms_payment_api.clients.IShopApiClient;
+import com.etna.gpe.ms_payment_api.clients.StripeRateLimiter;
 import com.stripe.Stripe;
 import com.stripe.exception.StripeException;
 import com.stripe.model.Refund;
@@ -15,20 +25,29 @@ import com.stripe.model.checkout.Session;
 import com.stripe.net.RequestOptions;
 import com.stripe.param.RefundCreateParams;
 import com.stripe.param.checkout.SessionCreateParams;
+import io.micrometer.core.instrument.MeterRegistry;
 import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.amqp.rabbit.core.RabbitTemplate;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.http.HttpMethod;
-import org.springframework.http.ResponseEntity;
+import org.springframework.dao.OptimisticLockingFailureException;
 import org.springframework.stereotype.Service;
-import org.springframework.web.client.RestTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.function.ToLongFunction;
 
 /**
  * Implémentation du service de paiement utilisant Stripe Connect.
@@ -37,12 +56,13 @@ import java.util.UUID;
 @Slf4j
 public class PaymentServiceImpl implements PaymentService {
 
-    public static final String AUTHORIZATION = "Authorization";
-    public static final String BEARER = "Bearer ";
-    public static final String CALLING_MS_SHOP_API_AT = "Calling ms-shop-api at: {}";
-    public static final String USING_TOKEN_FOR_MS_SHOP_API = "Using token for ms-shop-api: {}";
-    public static final String MS_PAYMENT_API = "ms-payment-api";
-    public static final String ROLE_ADMIN = "ROLE_ADMIN";
+    public static final String CHECKOUT_LOOKUP_TIMER = "payment.checkout.lookup";
+    public static final String CANCELLATION_REFUND_KEY_PREFIX = "appointment-cancelled-refund-";
+
+    /**
+     * Relectures du paiement lorsque sa ligne est modifiée pendant l'enregistrement d'un remboursement.
+     */
+    private static final int MAX_REFUND_UPDATE_ATTEMPTS = 3;
 
     @Value("${stripe.api.key}")
     private String stripeApiKey;
@@ -50,8 +70,18 @@ public class PaymentServiceImpl implements PaymentService {
     @Value("${app.base-url}")
     private String baseUrl;
 
-    @Value("${microservices.shop-api.url}")
-    private String shopApiUrl;
+    /**
+     * Délai global accordé aux appels à ms-shop-api lors de la création d'un checkout ;
+     * au-delà, le checkout continue avec les valeurs de repli.
+     */
+    @Value("${microservices.shop-api.lookup-deadline-ms:3000}")
+    private long lookupDeadlineMs;
+
+    @Value("${app.payments.max-page-size:100}")
+    private int maxPageSize;
+
+    @Value("${app.payments.max-batch-items:20}")
+    private int maxBatchItems;
 
     @Value("${rabbitmq.exchange.payment}")
     private String paymentExchange;
@@ -63,10 +93,22 @@ public class PaymentServiceImpl implements PaymentService {
     private String paymentRefundedRoutingKey;
 
     private final PaymentRepository paymentRepository;
-    private final RabbitTemplate rabbitTemplate;
-    private final RestTemplate restTemplate;
+    private final IPaymentOutboxService paymentOutboxService;
+    private final IShopRevenueService shopRevenueService;
+    private final TransactionTemplate transactionTemplate;
     private final StripeFeeConfig stripeFeeConfig;
-    private final JwtTokenUtil jwtTokenUtil;
+    private final IShopApiClient shopApiClient;
+    private final IProcessedEventService processedEventService;
+    private final ShopStripeAccountCache shopStripeAccountCache;
+    private final ServiceCatalogueCache serviceCatalogueCache;
+    private final PaymentLookupCache paymentLookupCache;
+    private final StripeRateLimiter stripeRateLimiter;
+    private final MeterRegistry meterRegistry;
+
+    /**
+     * Threads virtuels : les appels à ms-shop-api sont bloquants et ne font qu'attendre le réseau.
+     */
+    private final ExecutorService lookupExecutor = Executors.newVirtualThreadPerTaskExecutor();
 
     /**
      * Récupère les détails d'un service par son ID.
@@ -77,33 +119,15 @@ public class PaymentServiceImpl implements PaymentService {
     private ServiceDto getServiceDetailsById(UUID serviceId) {
         log.info("Retrieving service details for service: {}", serviceId);
 
-        try {
-            String url = shopApiUrl + "/service/" + serviceId;
-            log.debug(CALLING_MS_SHOP_API_AT, url);
-
-            // Ajouter le token JWT pour l'authentification
-            String tokenMs = jwtTokenUtil.generateTokenForMsWith(MS_PAYMENT_API, UUID.randomUUID(), List.of(ROLE_ADMIN));
-
-            log.debug(USING_TOKEN_FOR_MS_SHOP_API, tokenMs);
-
-            // Ajouter le token dans les headers de la requête
-            org.springframework.http.HttpHeaders headers = new org.springframework.http.HttpHeaders();
-            headers.set(AUTHORIZATION, BEARER + tokenMs);
-            org.springframework.http.HttpEntity<Void> requestEntity = new org.springframework.http.HttpEntity<>(headers);
-
-            ResponseEntity<ServiceDto> response = restTemplate.exchange(url, org.springframework.http.HttpMethod.GET, requestEntity, ServiceDto.class);
+        // Le cache sert l'entrée existante et la rafraîchit en arrière-plan lorsqu'elle vieillit
+        ServiceDto serviceDetails = serviceCatalogueCache.get(serviceId);
 
-            if (response.getStatusCode().is2xxSuccessful() && response.getBody() != null) {
-                log.info("Service details retrieved successfully for service: {}", serviceId);
-                return response.getBody();
-            } else {
-                log.warn("Failed to retrieve service details for service: {}", serviceId);
-                return null;
-            }
-        } catch (Exception e) {
-            log.error("Error retrieving service details for service: {}", serviceId, e);
-            return null;
+        if (serviceDetails != null) {
+            log.info("Service details retrieved successfully for service: {}", serviceId);
+        } else {
+            log.warn("Failed to retrieve service details for service: {}", serviceId);
         }
+        return serviceDetails;
     }
 
     /**
@@ -121,23 +145,8 @@ public class PaymentServiceImpl implements PaymentService {
         log.info("Set paid appointment: {}", appointmentId);
 
         try {
-            String url = shopApiUrl + "/appointment/paid/" + appointmentId;
-            log.debug(CALLING_MS_SHOP_API_AT, url);
-
-            // Ajouter le token JWT pour l'authentification
-            String tokenMs = jwtTokenUtil.generateTokenForMsWith(MS_PAYMENT_API, UUID.randomUUID(), List.of(ROLE_ADMIN));
-            log.debug(USING_TOKEN_FOR_MS_SHOP_API, tokenMs);
-
-
-            // Ajouter le token dans les headers de la requête
-            org.springframework.http.HttpHeaders headers = new org.springframework.http.HttpHeaders();
-            headers.set(AUTHORIZATION, BEARER + tokenMs);
-            headers.setContentType(org.springframework.http.MediaType.APPLICATION_JSON);
-            org.springframework.http.HttpEntity<Map<String, Object>> requestEntity = new org.springframework.http.HttpEntity<>(headers);
-
-            ResponseEntity<Object> response = restTemplate.exchange(url, HttpMethod.PATCH, requestEntity, Object.class);
-
-            if (response.getStatusCode().is2xxSuccessful()) {
+            // Échoue immédiatement si le circuit vers ms-shop-api est ouvert
+            if (shopApiClient.markAppointmentPaid(appointmentId)) {
                 log.info("Appointment confirmed successfully: {}", appointmentId);
                 return true;
             } else {
@@ -151,14 +160,25 @@ public class PaymentServiceImpl implements PaymentService {
     }
 
     @Autowired
-    public PaymentServiceImpl(PaymentRepository paymentRepository, RabbitTemplate rabbitTemplate, 
-                             RestTemplate restTemplate, StripeFeeConfig stripeFeeConfig, 
-                             JwtTokenUtil jwtTokenUtil) {
+    public PaymentServiceImpl(PaymentRepository paymentRepository, IPaymentOutboxService paymentOutboxService,
+                             IShopRevenueService shopRevenueService, PlatformTransactionManager transactionManager,
+                             StripeFeeConfig stripeFeeConfig, IShopApiClient shopApiClient,
+                             IProcessedEventService processedEventService,
+                             ShopStripeAccountCache shopStripeAccountCache,
+                             ServiceCatalogueCache serviceCatalogueCache, PaymentLookupCache paymentLookupCache,
+                             StripeRateLimiter stripeRateLimiter, MeterRegistry meterRegistry) {
         this.paymentRepository = paymentRepository;
-        this.rabbitTemplate = rabbitTemplate;
-        this.restTemplate = restTemplate;
+        this.paymentOutboxService = paymentOutboxService;
+        this.shopRevenueService = shopRevenueService;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
         this.stripeFeeConfig = stripeFeeConfig;
-        this.jwtTokenUtil = jwtTokenUtil;
+        this.shopApiClient = shopApiClient;
+        this.processedEventService = processedEventService;
+        this.shopStripeAccountCache = shopStripeAccountCache;
+        this.serviceCatalogueCache = serviceCatalogueCache;
+        this.paymentLookupCache = paymentLookupCache;
+        this.stripeRateLimiter = stripeRateLimiter;
+        this.meterRegistry = meterRegistry;
     }
 
     @PostConstruct
@@ -171,60 +191,111 @@ public class PaymentServiceImpl implements PaymentService {
         }
     }
 
+    @PreDestroy
+    public void shutdown() {
+        lookupExecutor.shutdown();
+    }
+
+    /**
+     * Exécute un appel à ms-shop-api sur un thread virtuel en mesurant sa durée.
+     *
+     * @param lookup Nom de l'appel (tag du timer)
+     * @param supplier Appel à exécuter ; il ne doit pas lever d'exception
+     * @return Le résultat, ou null si le délai global est dépassé
+     */
+    private <T> CompletableFuture<T> timedLookup(String lookup, Supplier<T> supplier) {
+        return CompletableFuture.supplyAsync(() -> {
+            long start = System.nanoTime();
+            try {
+                return supplier.get();
+            } finally {
+                long elapsed = System.nanoTime() - start;
+                meterRegistry.timer(CHECKOUT_LOOKUP_TIMER, "lookup", lookup).record(elapsed, TimeUnit.NANOSECONDS);
+                log.debug("Checkout lookup {} took {} ms", lookup, TimeUnit.NANOSECONDS.toMillis(elapsed));
+            }
+        }, lookupExecutor).completeOnTimeout(null, lookupDeadlineMs, TimeUnit.MILLISECONDS);
+    }
+
     @Override
     public String createCheckoutSession(UUID userId, UUID shopId, UUID appointmentId, UUID serviceId, long amount, String currency) {
         log.info("Creating Stripe checkout session for user: {}, shop: {}, service: {}, amount: {}", userId, shopId, serviceId, amount);
+        return createCheckout(userId, shopId, currency, List.of(new CheckoutItemDto(appointmentId, serviceId, amount)));
+    }
 
-        // (1) Créer Payment en base, statut PENDING
-        Payment payment = new Payment();
-        payment.setId(UUID.randomUUID());
-        payment.setUserId(userId);
-        payment.setShopId(shopId);
-        payment.setAppointmentId(appointmentId);
-        payment.setServiceId(serviceId);
-        payment.setAmount(amount);
-        payment.setCurrency(currency);
-        payment.setStatus(PaymentStatus.PENDING);
-        payment.setCreatedAt(LocalDateTime.now());
-        payment.setUpdatedAt(LocalDateTime.now());
-        paymentRepository.save(payment);
-
-        // (2) Récupérer les détails du service
-        String productName = "Paiement boutique - " + shopId.toString().substring(0, 8);
+    @Override
+    public String createBatchCheckoutSession(UUID userId, UUID shopId, String currency, List<CheckoutItemDto> items) {
+        if (items == null || items.isEmpty()) {
+            throw new IllegalArgumentException("Au moins une ligne est requise");
+        }
+        if (items.size() > maxBatchItems) {
+            throw new IllegalArgumentException("Trop de lignes dans le checkout (maximum " + maxBatchItems + ")");
+        }
+        log.info("Creating Stripe batch checkout session for user: {}, shop: {}, items: {}", userId, shopId, items.size());
+        return createCheckout(userId, shopId, currency, items);
+    }
 
-        // Récupérer les détails du service si disponible
-        if (serviceId != null) {
-            ServiceDto serviceDetails = getServiceDetailsById(serviceId);
-            if (serviceDetails != null) {
-                productName = "Service: " + serviceDetails.getName();
-                if (serviceDetails.getDescription() != null && !serviceDetails.getDescription().isEmpty()) {
-                    productName += " - " + serviceDetails.getDescription();
-                }
+    /**
+     * Crée les paiements PENDING et une unique session Checkout comportant une ligne par paiement.
+     * Les appels à ms-shop-api sont partagés : un appel par service distinct et un seul pour le compte Stripe.
+     */
+    private String createCheckout(UUID userId, UUID shopId, String currency, List<CheckoutItemDto> items) {
+        // (1) Lancer en parallèle les appels indépendants à ms-shop-api (services et compte Stripe du shop)
+        long lookupStart = System.nanoTime();
+        Map<UUID, CompletableFuture<ServiceDto>> serviceDetailsFutures = new HashMap<>();
+        for (CheckoutItemDto item : items) {
+            if (item.getServiceId() != null) {
+                serviceDetailsFutures.computeIfAbsent(item.getServiceId(),
+                        serviceId -> timedLookup("service", () -> getServiceDetailsById(serviceId)));
             }
         }
+        CompletableFuture<String> stripeAccountFuture = timedLookup("stripe-account", () -> getStripeAccountIdForShop(shopId));
+
+        // (2) Créer les Payment en base, statut PENDING (pendant que les appels sont en cours).
+        // L'ID n'est pas renseigné : le paiement est reconnu comme nouveau et inséré sans SELECT préalable (merge),
+        // et les insertions sont regroupées en un seul batch JDBC au commit
+        List<Payment> payments = new ArrayList<>(items.size());
+        long totalAmount = 0;
+        for (CheckoutItemDto item : items) {
+            Payment payment = new Payment();
+            payment.setUserId(userId);
+            payment.setShopId(shopId);
+            payment.setAppointmentId(item.getAppointmentId());
+            payment.setServiceId(item.getServiceId());
+            payment.setAmount(item.getAmount());
+            payment.setCurrency(currency);
+            payment.setStatus(PaymentStatus.PENDING);
+            payments.add(payment);
+            totalAmount += item.getAmount();
+        }
+        transactionTemplate.executeWithoutResult(status -> paymentRepository.saveAll(payments));
 
-        // (3) Créer la session Checkout avec les détails du service
+        // (3) Attendre les appels : la latence est celle du plus lent, bornée par le délai global
+        String stripeAccountId = stripeAccountFuture.join();
         SessionCreateParams.Builder paramsBuilder = SessionCreateParams.builder()
                 .setMode(SessionCreateParams.Mode.PAYMENT)
                 .setSuccessUrl(baseUrl + "/payment/success?session_id={CHECKOUT_SESSION_ID}")
-                .setCancelUrl(baseUrl + "/payment/cancel")
-                .addLineItem(
-                        SessionCreateParams.LineItem.builder()
-                                .setQuantity(1L)
-                                .setPriceData(
-                                        SessionCreateParams.LineItem.PriceData.builder()
-                                                .setCurrency(currency)
-                                                .setUnitAmount(amount)
-                                                .setProductData(
-                                                        SessionCreateParams.LineItem.PriceData.ProductData.builder()
-                                                                .setName(productName)
-                                                                .build()
-                                                ).build()
-                                ).build()
-                );
+                .setCancelUrl(baseUrl + "/payment/cancel");
+        for (CheckoutItemDto item : items) {
+            ServiceDto serviceDetails = item.getServiceId() != null
+                    ? serviceDetailsFutures.get(item.getServiceId()).join()
+                    : null;
+            paramsBuilder.addLineItem(
+                    SessionCreateParams.LineItem.builder()
+                            .setQuantity(1L)
+                            .setPriceData(
+                                    SessionCreateParams.LineItem.PriceData.builder()
+                                            .setCurrency(currency)
+                                            .setUnitAmount(item.getAmount())
+                                            .setProductData(
+                                                    SessionCreateParams.LineItem.PriceData.ProductData.builder()
+                                                            .setName(productName(shopId, serviceDetails))
+                                                            .build()
+                                            ).build()
+                            ).build()
+            );
+        }
+        log.debug("Checkout lookups completed in {} ms", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - lookupStart));
 
-        // Récupérer l'ID du compte Stripe du shop
-        String stripeAccountId = getStripeAccountIdForShop(shopId);
         if (stripeAccountId == null || stripeAccountId.isEmpty() || stripeAccountId.startsWith("acct_placeholder")) {
             log.info("No valid Stripe account found for shop: {} - Payment will go to platform account", shopId);
         } else {
@@ -232,54 +303,15 @@ public class PaymentServiceImpl implements PaymentService {
         }
 
         try {
-            Session session;
-
-            // Essayer d'abord une charge directe si un compte Stripe valide est disponible
-            if (stripeAccountId != null && !stripeAccountId.isEmpty() && !stripeAccountId.startsWith("acct_placeholder")) {
-                try {
-                    log.info("Attempting direct charge to connected account: {}", stripeAccountId);
-                    
-                    // Calculer les frais d'application (commission de la plateforme)
-                    long applicationFeeAmount = stripeFeeConfig.calculateFeeAmount(amount);
-                    log.info("Calculated application fee: {} ({}% of {})", 
-                            applicationFeeAmount, stripeFeeConfig.getPlatformFeePercentage(), amount);
-                    
-                    // Ajouter les frais d'application aux paramètres de la session
-                    paramsBuilder.setPaymentIntentData(
-                            SessionCreateParams.PaymentIntentData.builder()
-                                    .setApplicationFeeAmount(applicationFeeAmount)
-                                    .build()
-                    );
-
-                    // Créer des options de requête avec le paramètre stripeAccount pour une charge directe
-                    RequestOptions requestOptions = RequestOptions.builder()
-                            .setStripeAccount(stripeAccountId)
-                            .build();
-
-                    // Créer la session avec les options de requête pour une charge directe
-                    session = Session.create(paramsBuilder.build(), requestOptions);
-                    log.info("Direct charge with application fee successful to connected account: {}", stripeAccountId);
-                } catch (StripeException e) {
-                    log.warn("Direct charge failed, falling back to platform payment: {}", e.getMessage());
-                    log.debug("Direct charge failure details: {}", e.toString());
-                    
-                    // Si la charge directe échoue, utiliser le compte de la plateforme
-                    log.info("Creating checkout session using platform account");
-                    session = Session.create(paramsBuilder.build());
-                }
-            } else {
-                // Utiliser le compte de la plateforme pour le paiement
-                log.info("Creating checkout session using platform account");
-                session = Session.create(paramsBuilder.build());
-            }
+            Session session = createSession(paramsBuilder, stripeAccountId, totalAmount);
 
-            // (4) Mettre à jour la session et PaymentIntent en BD
-            payment.setStripeSessionId(session.getId());
-            payment.setStripePaymentIntentId(session.getPaymentIntent());
-            payment.setUpdatedAt(LocalDateTime.now());
-            paymentRepository.save(payment);
+            // (4) Mettre à jour la session et PaymentIntent en BD, en un seul UPDATE ciblé
+            paymentRepository.attachSession(payments.stream().map(Payment::getId).toList(),
+                    session.getId(), session.getPaymentIntent(), LocalDateTime.now());
+            // Le rendez-vous a pu être consulté (et mis en cache sans paiement) avant le checkout
+            payments.forEach(paymentLookupCache::invalidate);
 
-            log.info("Stripe checkout session created: {}", session.getId());
+            log.info("Stripe checkout session created: {} for {} payment(s)", session.getId(), payments.size());
             return session.getUrl();
         } catch (StripeException e) {
             log.error("Error creating Stripe session", e);
@@ -287,19 +319,121 @@ public class PaymentServiceImpl implements PaymentService {
         }
     }
 
+    /**
+     * Libellé d'une ligne de la session Checkout.
+     */
+    private String productName(UUID shopId, ServiceDto serviceDetails) {
+        String productName = "Paiement boutique - " + shopId.toString().substring(0, 8);
+        if (serviceDetails != null) {
+            productName = "Service: " + serviceDetails.getName();
+            if (serviceDetails.getDescription() != null && !serviceDetails.getDescription().isEmpty()) {
+                productName += " - " + serviceDetails.getDescription();
+            }
+        }
+        return productName;
+    }
+
+    /**
+     * Crée la session Checkout, en charge directe sur le compte du shop si possible,
+     * sinon sur le compte de la plateforme.
+     */
+    private Session createSession(SessionCreateParams.Builder paramsBuilder, String stripeAccountId,
+                                  long totalAmount) throws StripeException {
+        // Essayer d'abord une charge directe si un compte Stripe valide est disponible
+        if (stripeAccountId != null && !stripeAccountId.isEmpty() && !stripeAccountId.startsWith("acct_placeholder")) {
+            try {
+                log.info("Attempting direct charge to connected account: {}", stripeAccountId);
+
+                // Calculer les frais d'application (commission de la plateforme)
+                long applicationFeeAmount = stripeFeeConfig.calculateFeeAmount(totalAmount);
+                log.info("Calculated application fee: {} ({}% of {})",
+                        applicationFeeAmount, stripeFeeConfig.getPlatformFeePercentage(), totalAmount);
+
+                // Ajouter les frais d'application aux paramètres de la session
+                paramsBuilder.setPaymentIntentData(
+                        SessionCreateParams.PaymentIntentData.builder()
+                                .setApplicationFeeAmount(applicationFeeAmount)
+                                .build()
+                );
+
+                // Créer des options de requête avec le paramètre stripeAccount pour une charge directe
+                RequestOptions requestOptions = RequestOptions.builder()
+                        .setStripeAccount(stripeAccountId)
+                        .build();
+
+                // Créer la session avec les options de requête pour une charge directe
+                SessionCreateParams params = paramsBuilder.build();
+                Session session = stripeRateLimiter.write(stripeAccountId, () -> Session.create(params, requestOptions));
+                log.info("Direct charge with application fee successful to connected account: {}", stripeAccountId);
+                return session;
+            } catch (StripeException e) {
+                // Une limite de débit persistante remonte en StripeThrottledException (503 + Retry-After)
+                // et ne déclenche pas le repli : la session ne doit pas être encaissée par la plateforme
+                log.warn("Direct charge failed, falling back to platform payment: {}", e.getMessage());
+                log.debug("Direct charge failure details: {}", e.toString());
+
+                // Si la charge directe échoue, utiliser le compte de la plateforme
+                log.info("Creating checkout session using platform account");
+                return createPlatformSession(paramsBuilder);
+            }
+        }
+
+        // Utiliser le compte de la plateforme pour le paiement
+        log.info("Creating checkout session using platform account");
+        return createPlatformSession(paramsBuilder);
+    }
+
+    private Session createPlatformSession(SessionCreateParams.Builder paramsBuilder) throws StripeException {
+        SessionCreateParams params = paramsBuilder.build();
+        return stripeRateLimiter.write(null, () -> Session.create(params));
+    }
+
     @Override
     public Payment handleCheckoutCompleted(String sessionId) {
         log.info("Handling checkout completed for session: {}", sessionId);
 
-        Payment payment = paymentRepository.findByStripeSessionId(sessionId)
-                .orElseThrow(() -> new PaymentNotFoundException("Payment non trouvé pour la session " + sessionId));
+        // Le changement de statut et les événements payment.completed sont enregistrés dans la même transaction ;
+        // la publication RabbitMQ est faite ensuite par le relais de l'outbox.
+        // Une session groupée couvre plusieurs paiements, tous complétés ensemble
+        List<Payment> payments = transactionTemplate.execute(status -> {
+            List<Payment> sessionPayments = paymentRepository.findAllByStripeSessionId(sessionId);
+            if (sessionPayments.isEmpty()) {
+                throw new PaymentNotFoundException("Payment non trouvé pour la session " + sessionId);
+            }
 
-        payment.setStatus(PaymentStatus.COMPLETED);
-        payment.setUpdatedAt(LocalDateTime.now());
-        paymentRepository.save(payment);
+            // Transition PENDING -> COMPLETED en une seule instruction : si le webhook et la redirection
+            // arrivent en même temps, le second UPDATE attend le verrou de ligne puis ne modifie plus rien
+            LocalDateTime now = LocalDateTime.now();
+            int updated = paymentRepository.transitionSessionStatus(sessionId, PaymentStatus.PENDING,
+                    PaymentStatus.COMPLETED, now);
+            if (updated == 0) {
+                log.info("Checkout session {} already completed, no status transition", sessionId);
+                return List.<Payment>of();
+            }
+
+            List<Payment> completed = sessionPayments.stream()
+                    .filter(payment -> payment.getStatus() == PaymentStatus.PENDING)
+                    .toList();
+            for (Payment payment : completed) {
+                // Copie détachée alignée sur la ligne mise à jour, pour l'agrégat et l'événement
+                payment.setStatus(PaymentStatus.COMPLETED);
+                payment.setUpdatedAt(now);
+                shopRevenueService.recordCompleted(payment);
+                paymentOutboxService.enqueue(paymentExchange, paymentCompletedRoutingKey, PaymentEvent.from(payment));
+                paymentLookupCache.invalidate(payment);
+            }
+            return completed;
+        });
+
+        if (payments.isEmpty()) {
+            return findByStripeSessionId(sessionId);
+        }
 
-        // Confirmer le rendez-vous si présent
-        if (payment.getAppointmentId() != null) {
+        // Confirmer les rendez-vous présents (appels HTTP, hors transaction)
+        for (Payment payment : payments) {
+            if (payment.getAppointmentId() == null) {
+                continue;
+            }
             boolean appointmentConfirmed = paidAppointment(payment.getAppointmentId());
             if (appointmentConfirmed) {
                 log.info("Appointment confirmed for payment: {}, appointment: {}",
@@ -310,31 +444,125 @@ public class PaymentServiceImpl implements PaymentService {
             }
         }
 
-        // Publier événement RabbitMQ payment.completed
-        rabbitTemplate.convertAndSend(paymentExchange, paymentCompletedRoutingKey, payment);
-        log.info("Payment completed and event published for payment: {}", payment.getId());
+        log.info("{} payment(s) completed and events enqueued for session: {}", payments.size(), sessionId);
 
-        return payment;
+        // Les livraisons suivantes (webhook ou redirection) pour cette session seront ignorées
+        processedEventService.markProcessed(IProcessedEventService.checkoutKey(sessionId));
+
+        return payments.get(0);
     }
 
     @Override
-    public Payment handlePaymentRefunded(String paymentIntentId) {
-        log.info("Handling payment refunded for PaymentIntent: {}", paymentIntentId);
-
-        Payment payment = paymentRepository.findByStripePaymentIntentId(paymentIntentId)
-                .orElseThrow(() -> new PaymentNotFoundException("Payment non trouvé pour PaymentIntent " + paymentIntentId));
+    public Payment handlePaymentRefunded(String chargeId, String paymentIntentId, long amountRefunded,
+                                         boolean fullyRefunded) {
+        log.info("Handling payment refunded for charge: {}, PaymentIntent: {}", chargeId, paymentIntentId);
+
+        Payment payment = transactionTemplate.execute(status -> {
+            List<Payment> payments = chargeId != null ? paymentRepository.findAllByStripeChargeId(chargeId) : List.of();
+            if (payments.isEmpty()) {
+                payments = paymentRepository.findAllByStripePaymentIntentId(paymentIntentId);
+            }
+            if (payments.isEmpty()) {
+                throw new PaymentNotFoundException("Payment non trouvé pour PaymentIntent " + paymentIntentId);
+            }
 
-        payment.setStatus(PaymentStatus.REFUNDED);
-        payment.setUpdatedAt(LocalDateTime.now());
-        paymentRepository.save(payment);
+            if (payments.size() == 1) {
+                // amount_refunded est cumulé : seule la part pas encore enregistrée est ajoutée
+                applyRefund(payments.get(0).getId(),
+                        p -> fullyRefunded ? p.getAmount() : amountRefunded - p.getRefundedAmount(), chargeId);
+            } else if (fullyRefunded) {
+                // Charge d'un checkout groupé intégralement remboursée : le reste de chaque ligne
+                payments.forEach(p -> applyRefund(p.getId(), Payment::getAmount, chargeId));
+            } else {
+                // Remboursement partiel d'un checkout groupé : la charge ne dit pas quelle ligne est remboursée,
+                // les montants ont été enregistrés à la création du remboursement (voir createRefund)
+                long attributed = payments.stream().mapToLong(Payment::getRefundedAmount).sum();
+                if (amountRefunded > attributed) {
+                    log.warn("Shared charge {} has {} refunded but only {} attributed to its payments "
+                            + "(refund created outside of this service?)", chargeId, amountRefunded, attributed);
+                } else {
+                    log.info("Partial refund on shared charge: {}, amounts already applied at refund creation", chargeId);
+                }
+            }
+            return payments.get(0);
+        });
 
-        // Publier événement RabbitMQ payment.refunded
-        rabbitTemplate.convertAndSend(paymentExchange, paymentRefundedRoutingKey, payment);
-        log.info("Payment refunded and event published for payment: {}", payment.getId());
+        log.info("Payment refunded for payment: {}", payment.getId());
 
         return payment;
     }
 
+    /**
+     * Ajoute un remboursement au montant remboursé d'un paiement par un UPDATE conditionnel sur sa version.
+     * Le paiement ne passe au statut REFUNDED que lorsque le cumul remboursé couvre tout son montant ;
+     * l'agrégat est alors mis à jour et l'événement payment.refunded enregistré.
+     * Doit être appelé dans une transaction.
+     * @param paymentId ID du paiement
+     * @param refundAmount Montant à ajouter, calculé sur le paiement relu (plafonné au reste à rembourser)
+     * @param chargeId ID de la charge Stripe
+     * @return true si le paiement vient de passer au statut REFUNDED
+     */
+    private boolean applyRefund(UUID paymentId, ToLongFunction<Payment> refundAmount, String chargeId) {
+        for (int attempt = 0; attempt < MAX_REFUND_UPDATE_ATTEMPTS; attempt++) {
+            // Après un conflit, relecture verrouillante : en REPEATABLE READ, une lecture simple renverrait
+            // l'instantané de la transaction, donc la version déjà dépassée
+            Payment payment = (attempt == 0 ? paymentRepository.findById(paymentId)
+                    : paymentRepository.findByIdForUpdate(paymentId))
+                    .orElseThrow(() -> new PaymentNotFoundException("Payment non trouvé avec l'ID: " + paymentId));
+            long remaining = payment.getAmount() - payment.getRefundedAmount();
+            long refunded = Math.min(refundAmount.applyAsLong(payment), remaining);
+            if (payment.getStatus() == PaymentStatus.REFUNDED || refunded <= 0) {
+                log.info("Refund already recorded for payment {}, no update", paymentId);
+                return false;
+            }
+
+            boolean fullyRefunded = refunded == remaining;
+            PaymentStatus status = fullyRefunded ? PaymentStatus.REFUNDED : payment.getStatus();
+            LocalDateTime now = LocalDateTime.now();
+            if (paymentRepository.recordRefund(paymentId, payment.getVersion(), refunded, status, chargeId, now) == 0) {
+                // Ligne modifiée entre la lecture et l'UPDATE : relire le paiement
+                continue;
+            }
+
+            // Agrégat calculé sur l'état du paiement avant ce remboursement
+            shopRevenueService.recordRefunded(payment, refunded);
+
+            // Copie détachée alignée sur la ligne mise à jour, pour l'événement
+            if (payment.getStripeChargeId() == null) {
+                payment.setStripeChargeId(chargeId);
+            }
+            payment.setRefundedAmount(payment.getRefundedAmount() + refunded);
+            payment.setStatus(status);
+            payment.setUpdatedAt(now);
+            paymentLookupCache.invalidate(payment);
+            if (fullyRefunded) {
+                paymentOutboxService.enqueue(paymentExchange, paymentRefundedRoutingKey, PaymentEvent.from(payment));
+            } else {
+                log.info("Partial refund of {} recorded for payment {} ({} of {} refunded)",
+                        refunded, paymentId, payment.getRefundedAmount(), payment.getAmount());
+            }
+            return fullyRefunded;
+        }
+        throw new OptimisticLockingFailureException("Paiement modifié pendant l'enregistrement du remboursement: "
+                + paymentId);
+    }
+
+    @Override
+    public void recordPaymentIntent(String sessionId, String paymentIntentId) {
+        if (paymentRepository.attachPaymentIntent(sessionId, paymentIntentId, LocalDateTime.now()) > 0) {
+            log.info("PaymentIntent {} recorded for session: {}", paymentIntentId, sessionId);
+        }
+    }
+
+    @Override
+    public void recordCharge(String paymentIntentId, String chargeId) {
+        if (paymentRepository.attachCharge(paymentIntentId, chargeId, LocalDateTime.now()) > 0) {
+            log.info("Charge {} recorded for PaymentIntent: {}", chargeId, paymentIntentId);
+        } else {
+            log.debug("No payment waiting for a charge ID with PaymentIntent: {}", paymentIntentId);
+        }
+    }
+
     @Override
     public Payment refundPayment(UUID paymentId, long amount) {
         log.info("Initiating refund for payment: {}, amount: {}", paymentId, amount);
@@ -342,17 +570,87 @@ public class PaymentServiceImpl implements PaymentService {
         Payment payment = paymentRepository.findById(paymentId)
                 .orElseThrow(() -> new PaymentNotFoundException("Payment non trouvé"));
 
-        try {
-            RefundCreateParams refundParams = RefundCreateParams.builder()
-                    .setPaymentIntent(payment.getStripePaymentIntentId())
-                    .setAmount(amount)
+        createRefund(payment, amount, RequestOptions.getDefault());
+        return payment;
+    }
+
+    @Override
+    public int refundCancelledAppointment(UUID appointmentId) {
+        log.info("Handling appointment cancellation: {}", appointmentId);
+
+        List<Payment> payments = paymentRepository.findAllByAppointmentIdAndStatus(appointmentId, PaymentStatus.COMPLETED);
+        if (payments.isEmpty()) {
+            log.info("No completed payment to refund for cancelled appointment: {}", appointmentId);
+            return 0;
+        }
+
+        int refunded = 0;
+        for (Payment payment : payments) {
+            // Clé d'idempotence : une annonce d'annulation relivrée ne crée pas de second remboursement
+            RequestOptions requestOptions = RequestOptions.builder()
+                    .setIdempotencyKey(CANCELLATION_REFUND_KEY_PREFIX + payment.getId())
                     .build();
+            try {
+                createRefund(payment, null, requestOptions);
+            } catch (RuntimeException e) {
+                // Les paiements suivants ne sont remboursés qu'à la relivraison de l'annonce,
+                // qui rejoue aussi les remboursements déjà créés (sans doublon grâce à la clé d'idempotence)
+                log.error("Refund of payment {} failed for cancelled appointment {} after {}/{} refund(s) created, "
+                        + "remaining payments will be refunded when the event is redelivered",
+                        payment.getId(), appointmentId, refunded, payments.size());
+                throw e;
+            }
+            refunded++;
+        }
+        return refunded;
+    }
+
+    @Override
+    public String createIdempotentRefund(UUID paymentId, long amount, String idempotencyKey) {
+        Payment payment = paymentRepository.findById(paymentId)
+                .orElseThrow(() -> new PaymentNotFoundException("Payment non trouvé avec l'ID: " + paymentId));
+
+        // Un rejeu après un échec réseau renvoie le remboursement déjà créé au lieu d'en créer un second
+        RequestOptions requestOptions = RequestOptions.builder()
+                .setIdempotencyKey(idempotencyKey)
+                .build();
+        return createRefund(payment, amount, requestOptions).getId();
+    }
 
-            Refund refund = Refund.create(refundParams);
-            log.info("Stripe refund created: {}", refund.getId());
+    /**
+     * Crée un remboursement Stripe pour un paiement complété.
+     * Le montant est toujours transmis à Stripe : sans montant, Stripe rembourserait tout le PaymentIntent,
+     * qui couvre toutes les lignes d'un checkout groupé.
+     * @param amount Montant à rembourser en cents, ou null pour rembourser le reste du paiement
+     * @return Le remboursement Stripe créé
+     * @throws IllegalArgumentException si le paiement n'est pas complété ou si le montant dépasse le reste à rembourser
+     */
+    private Refund createRefund(Payment payment, Long amount, RequestOptions requestOptions) {
+        if (payment.getStatus() != PaymentStatus.COMPLETED) {
+            throw new IllegalArgumentException("Seul un paiement complété peut être remboursé");
+        }
+        long remaining = payment.getAmount() - payment.getRefundedAmount();
+        long refundAmount = amount != null ? amount : remaining;
+        if (refundAmount <= 0 || refundAmount > remaining) {
+            throw new IllegalArgumentException("Le montant à rembourser doit être compris entre 1 et " + remaining);
+        }
 
-            // Le webhook Stripe générera ensuite l'événement pour mettre à jour le statut
-            return payment;
+        try {
+            RefundCreateParams params = RefundCreateParams.builder()
+                    .setPaymentIntent(payment.getStripePaymentIntentId())
+                    .setAmount(refundAmount)
+                    .build();
+            Refund refund = stripeRateLimiter.write(null, () -> Refund.create(params, requestOptions));
+            log.info("Stripe refund created: {} for payment: {}", refund.getId(), payment.getId());
+
+            if (paymentRepository.countByStripePaymentIntentId(payment.getStripePaymentIntentId()) > 1) {
+                // PaymentIntent partagé par un checkout groupé : le webhook charge.refunded ne permettra pas
+                // de savoir quelle ligne a été remboursée, le montant est donc enregistré ici sur la ligne
+                transactionTemplate.executeWithoutResult(status ->
+                        applyRefund(payment.getId(), p -> refundAmount, refund.getCharge()));
+            }
+            // Sinon, le webhook Stripe générera ensuite l'événement pour mettre à jour le statut
+            return refund;
         } catch (StripeException e) {
             log.error("Error creating Stripe refund", e);
             throw new StripePaymentException("Impossible d'effectuer le remboursement Stripe", e);
@@ -363,46 +661,70 @@ public class PaymentServiceImpl implements PaymentService {
     public String getStripeAccountIdForShop(UUID shopId) {
         log.info("Retrieving Stripe account ID for shop: {}", shopId);
 
-        try {
-            // Appel HTTP vers ms-shop-api pour récupérer l'account ID Stripe du shop
-            String url = shopApiUrl + "/shop/" + shopId + "/stripe-account";
-            log.debug(CALLING_MS_SHOP_API_AT, url);
-
-            String tokenMs = jwtTokenUtil.generateTokenForMsWith(MS_PAYMENT_API, UUID.randomUUID(), List.of(ROLE_ADMIN));
-
-            // Add authorization header with bearer token
-            org.springframework.http.HttpHeaders headers = new org.springframework.http.HttpHeaders();
-                headers.set(AUTHORIZATION, BEARER + tokenMs);
-            org.springframework.http.HttpEntity<Void> requestEntity = new org.springframework.http.HttpEntity<>(headers);
-
-            ResponseEntity<String> response = restTemplate.exchange(url, org.springframework.http.HttpMethod.GET, requestEntity, String.class);
-            String stripeAccountId = response.getBody();
-
-            if (stripeAccountId != null && !stripeAccountId.isEmpty()) {
-                log.info("Retrieved Stripe account ID: {} for shop: {}", stripeAccountId, shopId);
-                return stripeAccountId;
-            } else {
-                log.info("No Stripe account configured for shop: {}", shopId);
-                return null;
-            }
+        // Le cache n'appelle ms-shop-api qu'en cas d'absence ou d'expiration de l'entrée.
+        // Si ms-shop-api n'est pas disponible ou le shop n'a pas de compte Stripe,
+        // on continue avec un paiement simple (vers le compte principal)
+        String stripeAccountId = shopStripeAccountCache.get(shopId);
 
-        } catch (Exception e) {
-            log.warn("Could not retrieve Stripe account ID for shop: {} - Error: {}", shopId, e.getMessage());
-            // Si ms-shop-api n'est pas disponible ou le shop n'a pas de compte Stripe,
-            // on continue avec un paiement simple (vers le compte principal)
+        if (stripeAccountId != null && !stripeAccountId.isEmpty()) {
+            log.info("Retrieved Stripe account ID: {} for shop: {}", stripeAccountId, shopId);
+            return stripeAccountId;
+        } else {
+            log.info("No Stripe account configured for shop: {}", shopId);
             return null;
         }
     }
 
-    public Payment findById(UUID paymentId) {
-        return paymentRepository.findById(paymentId)
+    @Override
+    public PaymentView findById(UUID paymentId) {
+        return paymentLookupCache.getById(paymentId)
                 .orElseThrow(() -> new PaymentNotFoundException("Payment non trouvé avec l'ID: " + paymentId));
     }
 
     @Override
-    public Payment findByAppointmentId(UUID appointmentId) {
+    public Payment findByStripeSessionId(String sessionId) {
+        return paymentRepository.findAllByStripeSessionId(sessionId).stream()
+                .findFirst()
+                .orElseThrow(() -> new PaymentNotFoundException("Payment non trouvé pour la session " + sessionId));
+    }
+
+    @Override
+    public PaymentView findByAppointmentId(UUID appointmentId) {
         log.info("Finding payment by appointment ID: {}", appointmentId);
-        return paymentRepository.findByAppointmentId(appointmentId)
+        return paymentLookupCache.getByAppointmentId(appointmentId)
                 .orElse(null);
     }
+
+    @Override
+    public PaymentPageDto listShopPayments(UUID shopId, PaymentStatus status, LocalDateTime from, LocalDateTime to,
+                                           String cursor, int limit) {
+        int pageSize = clampPageSize(limit);
+        List<PaymentSummaryDto> rows = paymentRepository.findShopPaymentSummaries(
+                shopId, status, from, to, PaymentCursor.decode(cursor), pageSize + 1);
+        return toPage(rows, pageSize);
+    }
+
+    @Override
+    public PaymentPageDto listUserPayments(UUID userId, PaymentStatus status, LocalDateTime from, LocalDateTime to,
+                                           String cursor, int limit) {
+        int pageSize = clampPageSize(limit);
+        List<PaymentSummaryDto> rows = paymentRepository.findUserPaymentSummaries(
+                userId, status, from, to, PaymentCursor.decode(cursor), pageSize + 1);
+        return toPage(rows, pageSize);
+    }
+
+    private int clampPageSize(int limit) {
+        return Math.max(1, Math.min(limit, maxPageSize));
+    }
+
+    /**
+     * Une ligne de plus que la taille de page est lue : sa présence indique qu'une page suivante existe.
+     */
+    private PaymentPageDto toPage(List<PaymentSummaryDto> rows, int pageSize) {
+        if (rows.size() <= pageSize) {
+            return new PaymentPageDto(rows, null);
+        }
+        List<PaymentSummaryDto> items = rows.subList(0, pageSize);
+        return new PaymentPageDto(items, PaymentCursor.of(items.get(pageSize - 1)).encode());
+    }
 }
@@ -0,0 +1,121 @@
+package com.etna.gpe.ms_payment_api.services;
+
+import com.etna.gpe.ms_payment_api.cache.PaymentChangedEvent;
+import com.etna.gpe.ms_payment_api.cache.PaymentLookupCache;
+import com.etna.gpe.ms_payment_api.dto.PaymentView;
+import com.etna.gpe.ms_payment_api.enums.PaymentStatus;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Diffuse le statut des paiements aux clients en attente de la fin d'un checkout, à la place du polling.
+ * Une connexion SSE ne mobilise aucun thread pendant l'attente (requête asynchrone) ; les abonnés sont
+ * notifiés à chaque changement de statut : directement après le commit sur l'instance qui l'a effectué,
+ * et par le message d'invalidation du cache des paiements sur les autres (PaymentChangedEvent).
+ * Le paiement n'est relu qu'une fois par notification, quel que soit le nombre d'abonnés.
+ */
+@Service
+@Slf4j
+public class PaymentStatusStreamService implements IPaymentStatusStreamService {
+
+    public static final String EVENT_NAME = "payment";
+    public static final String SUBSCRIBERS_METRIC = "payment.status.stream.subscribers";
+
+    private final PaymentLookupCache paymentLookupCache;
+    private final Map<UUID, Set<SseEmitter>> subscribers = new ConcurrentHashMap<>();
+    private final AtomicInteger subscriberCount = new AtomicInteger();
+
+    @Value("${app.payments.status-stream.timeout:5m}")
+    private Duration timeout;
+
+    @Autowired
+    public PaymentStatusStreamService(PaymentLookupCache paymentLookupCache, MeterRegistry meterRegistry) {
+        this.paymentLookupCache = paymentLookupCache;
+        Gauge.builder(SUBSCRIBERS_METRIC, subscriberCount, AtomicInteger::get)
+                .description("Connexions SSE en attente du statut d'un paiement")
+                .register(meterRegistry);
+    }
+
+    @Override
+    public SseEmitter subscribe(UUID appointmentId) {
+        SseEmitter emitter = new SseEmitter(timeout.toMillis());
+        subscribers.computeIfAbsent(appointmentId, id -> new CopyOnWriteArraySet<>()).add(emitter);
+        subscriberCount.incrementAndGet();
+
+        Runnable unsubscribe = () -> unsubscribe(appointmentId, emitter);
+        emitter.onCompletion(unsubscribe);
+        emitter.onTimeout(emitter::complete);
+        emitter.onError(e -> unsubscribe.run());
+
+        // Enregistré avant la lecture de l'état courant : une transition concurrente ne peut pas être manquée
+        paymentLookupCache.getByAppointmentId(appointmentId)
+                .ifPresent(payment -> send(emitter, payment));
+        return emitter;
+    }
+
+    @EventListener
+    public void onPaymentChanged(PaymentChangedEvent event) {
+        if (event.appointmentId() != null) {
+            onPaymentChanged(event.appointmentId());
+        }
+    }
+
+    @Override
+    public void onPaymentChanged(UUID appointmentId) {
+        Set<SseEmitter> emitters = subscribers.get(appointmentId);
+        if (emitters == null || emitters.isEmpty()) {
+            return;
+        }
+
+        Optional<PaymentView> payment = paymentLookupCache.getByAppointmentId(appointmentId);
+        if (payment.isEmpty()) {
+            return;
+        }
+        log.debug("Notifying {} subscriber(s) of payment status for appointment: {}", emitters.size(), appointmentId);
+        emitters.forEach(emitter -> send(emitter, payment.get()));
+    }
+
+    /**
+     * Envoie l'état du paiement ; le flux est terminé dès que le paiement n'est plus en attente.
+     */
+    private void send(SseEmitter emitter, PaymentView payment) {
+        try {
+            emitter.send(SseEmitter.event().name(EVENT_NAME).data(payment));
+            if (payment.status() != PaymentStatus.PENDING) {
+                emitter.complete();
+            }
+        } catch (IOException e) {
+            // Client déconnecté
+            log.debug("Could not send payment status for payment: {} - Error: {}", payment.id(), e.getMessage());
+            emitter.completeWithError(e);
+        } catch (IllegalStateException e) {
+            // Flux déjà terminé (expiration ou notification concurrente) : l'abonné a déjà été retiré
+            log.debug("Payment status stream already completed for payment: {}", payment.id());
+        }
+    }
+
+    private void unsubscribe(UUID appointmentId, SseEmitter emitter) {
+        subscribers.computeIfPresent(appointmentId, (id, emitters) -> {
+            if (emitters.remove(emitter)) {
+                subscriberCount.decrementAndGet();
+            }
+            return emitters.isEmpty() ? null : emitters;
+        });
+    }
+}
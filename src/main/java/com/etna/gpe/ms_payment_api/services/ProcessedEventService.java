@@ -0,0 +1,83 @@
+package com.etna.gpe.ms_payment_api.services;
+
+import com.etna.gpe.ms_payment_api.entity.ProcessedStripeEvent;
+import com.etna.gpe.ms_payment_api.repositories.ProcessedStripeEventRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Registre des événements Stripe déjà traités : table processed_stripe_event
+ * précédée d'un cache LRU borné en mémoire.
+ */
+@Service
+@Slf4j
+public class ProcessedEventService implements IProcessedEventService {
+
+    private final ProcessedStripeEventRepository processedStripeEventRepository;
+
+    private final Map<String, Boolean> recentEvents;
+
+    @Value("${stripe.webhook.dedup.retention-days:30}")
+    private int retentionDays;
+
+    @Autowired
+    public ProcessedEventService(ProcessedStripeEventRepository processedStripeEventRepository,
+                                 @Value("${stripe.webhook.dedup.cache-size:10000}") int cacheSize) {
+        this.processedStripeEventRepository = processedStripeEventRepository;
+        this.recentEvents = Collections.synchronizedMap(new LinkedHashMap<String, Boolean>(cacheSize, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+                return size() > cacheSize;
+            }
+        });
+    }
+
+    @Override
+    public boolean isProcessed(String eventKey) {
+        if (recentEvents.containsKey(eventKey)) {
+            return true;
+        }
+
+        try {
+            if (processedStripeEventRepository.existsById(eventKey)) {
+                recentEvents.put(eventKey, Boolean.TRUE);
+                return true;
+            }
+        } catch (Exception e) {
+            // En cas d'indisponibilité de la base, on laisse le traitement se faire plutôt que de perdre l'événement
+            log.warn("Could not check processed event: {} - Error: {}", eventKey, e.getMessage());
+        }
+        return false;
+    }
+
+    @Override
+    public void markProcessed(String eventKey) {
+        recentEvents.put(eventKey, Boolean.TRUE);
+
+        try {
+            processedStripeEventRepository.save(new ProcessedStripeEvent(eventKey, LocalDateTime.now()));
+        } catch (DataIntegrityViolationException e) {
+            log.debug("Event already marked as processed: {}", eventKey);
+        } catch (Exception e) {
+            log.warn("Could not persist processed event: {} - Error: {}", eventKey, e.getMessage());
+        }
+    }
+
+    /**
+     * Purge les entrées plus anciennes que la durée de rétention (Stripe ne relivre plus au-delà de quelques jours).
+     */
+    @Scheduled(cron = "${stripe.webhook.dedup.purge-cron:0 30 3 * * *}")
+    public void purgeExpiredEvents() {
+        int deleted = processedStripeEventRepository.deleteProcessedBefore(LocalDateTime.now().minusDays(retentionDays));
+        log.info("{} processed Stripe events purged", deleted);
+    }
+}
@@ -0,0 +1,332 @@
+package com.etna.gpe.ms_payment_api.services;
+
+import com.etna.gpe.ms_payment_api.dto.RefundItemRequestDto;
+import com.etna.gpe.ms_payment_api.dto.RefundJobDto;
+import com.etna.gpe.ms_payment_api.dto.RefundJobItemDto;
+import com.etna.gpe.ms_payment_api.entity.Payment;
+import com.etna.gpe.ms_payment_api.entity.RefundJob;
+import com.etna.gpe.ms_payment_api.entity.RefundJobItem;
+import com.etna.gpe.ms_payment_api.enums.PaymentStatus;
+import com.etna.gpe.ms_payment_api.enums.RefundItemStatus;
+import com.etna.gpe.ms_payment_api.enums.RefundJobStatus;
+import com.etna.gpe.ms_payment_api.exceptions.PaymentNotFoundException;
+import com.etna.gpe.ms_payment_api.exceptions.StripeThrottledException;
+import com.etna.gpe.ms_payment_api.repositories.PaymentRepository;
+import com.etna.gpe.ms_payment_api.repositories.RefundJobItemRepository;
+import com.etna.gpe.ms_payment_api.repositories.RefundJobRepository;
+import com.stripe.exception.InvalidRequestException;
+import com.stripe.exception.RateLimitException;
+import io.github.resilience4j.ratelimiter.RateLimiter;
+import io.github.resilience4j.ratelimiter.RateLimiterRegistry;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Remboursements en masse.
+ * La requête se contente d'enregistrer le job et ses lignes ; un worker planifié réserve ensuite
+ * les lignes en attente et les rembourse dans un pool borné, sous un rate limiter dédié qui laisse
+ * aux checkouts une part du débit d'écriture Stripe (voir StripeRateLimiter). Chaque ligne utilise
+ * sa propre clé d'idempotence : une ligne rejouée après un échec ne crée jamais de second remboursement.
+ * Une ligne en échec temporaire est retentée après un backoff exponentiel.
+ */
+@Service
+@Slf4j
+public class RefundJobService implements IRefundJobService {
+
+    public static final String STRIPE_REFUNDS = "stripeRefunds";
+    public static final String BULK_REFUND_KEY_PREFIX = "bulk-refund-";
+    public static final String BULK_REFUND_ITEMS_METRIC = "payment.refund.bulk.items";
+
+    private static final int MAX_ERROR_LENGTH = 1000;
+    private static final List<RefundItemStatus> OPEN_STATUSES =
+            List.of(RefundItemStatus.PENDING, RefundItemStatus.PROCESSING);
+
+    @Value("${app.refunds.bulk.max-items:500}")
+    private int maxItems;
+
+    @Value("${app.refunds.bulk.batch-size:100}")
+    private int batchSize;
+
+    @Value("${app.refunds.bulk.max-attempts:5}")
+    private int maxAttempts;
+
+    @Value("${app.refunds.bulk.initial-backoff-ms:1000}")
+    private long initialBackoffMs;
+
+    @Value("${app.refunds.bulk.max-backoff-ms:300000}")
+    private long maxBackoffMs;
+
+    @Value("${app.refunds.bulk.stale-claim-timeout-ms:300000}")
+    private long staleClaimTimeoutMs;
+
+    @Value("${app.refunds.bulk.worker.pool-size:4}")
+    private int poolSize;
+
+    @Value("${app.refunds.bulk.worker.queue-capacity:50}")
+    private int queueCapacity;
+
+    private final RefundJobRepository refundJobRepository;
+    private final RefundJobItemRepository refundJobItemRepository;
+    private final PaymentRepository paymentRepository;
+    private final PaymentService paymentService;
+    private final RateLimiter rateLimiter;
+    private final MeterRegistry meterRegistry;
+
+    private ThreadPoolTaskExecutor executor;
+
+    @Autowired
+    public RefundJobService(RefundJobRepository refundJobRepository, RefundJobItemRepository refundJobItemRepository,
+                            PaymentRepository paymentRepository, PaymentService paymentService,
+                            RateLimiterRegistry rateLimiterRegistry, MeterRegistry meterRegistry) {
+        this.refundJobRepository = refundJobRepository;
+        this.refundJobItemRepository = refundJobItemRepository;
+        this.paymentRepository = paymentRepository;
+        this.paymentService = paymentService;
+        this.rateLimiter = rateLimiterRegistry.rateLimiter(STRIPE_REFUNDS);
+        this.meterRegistry = meterRegistry;
+    }
+
+    @PostConstruct
+    public void init() {
+        executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(poolSize);
+        executor.setMaxPoolSize(poolSize);
+        executor.setQueueCapacity(queueCapacity);
+        executor.setThreadNamePrefix("bulk-refund-");
+        executor.setWaitForTasksToCompleteOnShutdown(true);
+        executor.setAwaitTerminationSeconds(30);
+        executor.initialize();
+        log.info("Bulk refund workers started (workers: {}, queue: {})", poolSize, queueCapacity);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    @Override
+    @Transactional
+    public UUID submit(List<RefundItemRequestDto> items) {
+        if (items == null || items.isEmpty()) {
+            throw new IllegalArgumentException("Le remboursement en masse doit contenir au moins un paiement");
+        }
+        if (items.size() > maxItems) {
+            throw new IllegalArgumentException("Le remboursement en masse est limité à " + maxItems + " paiements");
+        }
+        Set<UUID> paymentIds = new HashSet<>();
+        for (RefundItemRequestDto item : items) {
+            if (item.getPaymentId() == null) {
+                throw new IllegalArgumentException("Chaque ligne doit référencer un paiement");
+            }
+            if (!paymentIds.add(item.getPaymentId())) {
+                throw new IllegalArgumentException("Le paiement " + item.getPaymentId() + " apparaît plusieurs fois");
+            }
+        }
+
+        Map<UUID, Payment> payments = paymentRepository.findAllById(paymentIds).stream()
+                .collect(Collectors.toMap(Payment::getId, Function.identity()));
+        List<Long> amounts = new ArrayList<>(items.size());
+        for (RefundItemRequestDto item : items) {
+            amounts.add(resolveAmount(item, payments.get(item.getPaymentId())));
+        }
+
+        LocalDateTime now = LocalDateTime.now();
+        RefundJob job = new RefundJob();
+        job.setStatus(RefundJobStatus.IN_PROGRESS);
+        job.setTotalItems(items.size());
+        job.setCreatedAt(now);
+        job = refundJobRepository.save(job);
+
+        List<RefundJobItem> jobItems = new ArrayList<>(items.size());
+        for (int i = 0; i < items.size(); i++) {
+            RefundJobItem jobItem = new RefundJobItem();
+            jobItem.setJobId(job.getId());
+            jobItem.setPaymentId(items.get(i).getPaymentId());
+            jobItem.setAmount(amounts.get(i));
+            jobItem.setStatus(RefundItemStatus.PENDING);
+            jobItem.setAttempts(0);
+            jobItem.setUpdatedAt(now);
+            jobItems.add(jobItem);
+        }
+        refundJobItemRepository.saveAll(jobItems);
+
+        log.info("Bulk refund job {} submitted with {} payments", job.getId(), items.size());
+        return job.getId();
+    }
+
+    /**
+     * Vérifie qu'une ligne peut être remboursée et fixe son montant : sans montant, Stripe rembourserait
+     * tout le PaymentIntent, partagé par toutes les lignes d'un checkout groupé.
+     */
+    private long resolveAmount(RefundItemRequestDto item, Payment payment) {
+        if (payment == null) {
+            throw new IllegalArgumentException("Paiement non trouvé avec l'ID: " + item.getPaymentId());
+        }
+        if (payment.getStatus() != PaymentStatus.COMPLETED) {
+            throw new IllegalArgumentException("Le paiement " + payment.getId() + " n'est pas complété ("
+                    + payment.getStatus() + ")");
+        }
+        long remaining = payment.getAmount() - payment.getRefundedAmount();
+        long amount = item.getAmount() != null ? item.getAmount() : remaining;
+        if (amount <= 0 || amount > remaining) {
+            throw new IllegalArgumentException("Le montant à rembourser pour le paiement " + payment.getId()
+                    + " doit être compris entre 1 et " + remaining);
+        }
+        return amount;
+    }
+
+    @Override
+    public RefundJobDto getJob(UUID jobId) {
+        RefundJob job = refundJobRepository.findById(jobId).orElse(null);
+        if (job == null) {
+            return null;
+        }
+
+        Map<RefundItemStatus, Long> counts = new EnumMap<>(RefundItemStatus.class);
+        for (Object[] row : refundJobItemRepository.countByStatus(jobId)) {
+            counts.put((RefundItemStatus) row[0], (Long) row[1]);
+        }
+        List<RefundJobItemDto> failures = refundJobItemRepository.findByJobIdAndStatus(jobId, RefundItemStatus.FAILED)
+                .stream()
+                .map(RefundJobItemDto::from)
+                .toList();
+
+        return new RefundJobDto(
+                job.getId(),
+                job.getStatus(),
+                job.getTotalItems(),
+                counts.getOrDefault(RefundItemStatus.PENDING, 0L) + counts.getOrDefault(RefundItemStatus.PROCESSING, 0L),
+                counts.getOrDefault(RefundItemStatus.SUCCEEDED, 0L),
+                counts.getOrDefault(RefundItemStatus.FAILED, 0L),
+                job.getCreatedAt(),
+                job.getCompletedAt(),
+                failures);
+    }
+
+    /**
+     * Réserve les lignes en attente et les distribue au pool de workers.
+     */
+    @Scheduled(fixedDelayString = "${app.refunds.bulk.poll-interval-ms:1000}")
+    public void drainQueue() {
+        List<RefundJobItem> pending = refundJobItemRepository.findReady(
+                RefundItemStatus.PENDING, LocalDateTime.now(), PageRequest.of(0, batchSize));
+
+        for (RefundJobItem item : pending) {
+            LocalDateTime now = LocalDateTime.now();
+            if (refundJobItemRepository.transition(item.getId(),
+                    RefundItemStatus.PENDING, RefundItemStatus.PROCESSING, now, now) == 0) {
+                // Déjà réservée par une autre instance
+                continue;
+            }
+
+            try {
+                executor.execute(() -> processItem(item));
+            } catch (TaskRejectedException e) {
+                log.debug("Bulk refund workers saturated, deferring remaining items");
+                release(item);
+                break;
+            }
+        }
+    }
+
+    /**
+     * Libère les lignes réservées par un worker qui n'a jamais terminé (arrêt brutal de l'instance).
+     */
+    @Scheduled(fixedDelayString = "${app.refunds.bulk.stale-claim-check-interval-ms:60000}")
+    public void releaseStaleClaims() {
+        LocalDateTime before = LocalDateTime.now().minus(Duration.ofMillis(staleClaimTimeoutMs));
+        int released = refundJobItemRepository.releaseStaleClaims(
+                RefundItemStatus.PENDING, RefundItemStatus.PROCESSING, before);
+        if (released > 0) {
+            log.warn("{} stale bulk refund items released back to the queue", released);
+        }
+    }
+
+    private void release(RefundJobItem item) {
+        refundJobItemRepository.transition(item.getId(),
+                RefundItemStatus.PROCESSING, RefundItemStatus.PENDING, null, LocalDateTime.now());
+    }
+
+    private void processItem(RefundJobItem item) {
+        if (!rateLimiter.acquirePermission()) {
+            // Débit Stripe atteint : la ligne repasse en attente sans consommer de tentative
+            log.debug("Stripe refund rate limit reached, deferring item {}", item.getId());
+            release(item);
+            return;
+        }
+
+        try {
+            String refundId = paymentService.createIdempotentRefund(
+                    item.getPaymentId(), item.getAmount(), BULK_REFUND_KEY_PREFIX + item.getId());
+            refundJobItemRepository.markSucceeded(item.getId(), RefundItemStatus.SUCCEEDED, refundId,
+                    LocalDateTime.now());
+            meterRegistry.counter(BULK_REFUND_ITEMS_METRIC, "result", "succeeded").increment();
+            log.info("Bulk refund job {}: payment {} refunded ({})", item.getJobId(), item.getPaymentId(), refundId);
+        } catch (StripeThrottledException e) {
+            // L'appel n'a pas été envoyé à Stripe : la ligne repasse en attente sans consommer de tentative
+            log.debug("Stripe API throttled, deferring item {}", item.getId());
+            release(item);
+            return;
+        } catch (Exception e) {
+            // Paiement inconnu, plus remboursable depuis la soumission ou requête refusée par Stripe : inutile de réessayer.
+            // RateLimitException (429) hérite d'InvalidRequestException mais reste temporaire
+            boolean permanent = e instanceof PaymentNotFoundException || e instanceof IllegalArgumentException
+                    || (e.getCause() instanceof InvalidRequestException && !(e.getCause() instanceof RateLimitException));
+            int attempt = item.getAttempts() + 1;
+            boolean exhausted = permanent || attempt >= maxAttempts;
+            RefundItemStatus nextStatus = exhausted ? RefundItemStatus.FAILED : RefundItemStatus.PENDING;
+            LocalDateTime now = LocalDateTime.now();
+            LocalDateTime nextAttemptAt = exhausted ? null : now.plus(backoff(attempt));
+            log.error("Bulk refund job {}: error refunding payment {} (attempt {}/{})",
+                    item.getJobId(), item.getPaymentId(), attempt, maxAttempts, e);
+            refundJobItemRepository.recordFailure(item.getId(), nextStatus, truncate(e.getMessage()),
+                    nextAttemptAt, now);
+            if (!exhausted) {
+                return;
+            }
+            meterRegistry.counter(BULK_REFUND_ITEMS_METRIC, "result", "failed").increment();
+        }
+
+        if (refundJobRepository.completeIfDone(item.getJobId(), RefundJobStatus.IN_PROGRESS,
+                RefundJobStatus.COMPLETED, OPEN_STATUSES, LocalDateTime.now()) > 0) {
+            log.info("Bulk refund job {} completed", item.getJobId());
+        }
+    }
+
+    /**
+     * Délai avant la tentative suivante : doublé à chaque échec, plafonné à max-backoff-ms.
+     */
+    private Duration backoff(int attempt) {
+        long delay = initialBackoffMs << Math.min(attempt - 1, 20);
+        return Duration.ofMillis(Math.min(delay, maxBackoffMs));
+    }
+
+    private String truncate(String message) {
+        if (message == null || message.length() <= MAX_ERROR_LENGTH) {
+            return message;
+        }
+        return message.substring(0, MAX_ERROR_LENGTH);
+    }
+}
@@ -0,0 +1,104 @@
+package com.etna.gpe.ms_payment_api.services;
+
+import com.etna.gpe.ms_payment_api.config.StripeFeeConfig;
+import com.etna.gpe.ms_payment_api.dto.DailyRevenueDto;
+import com.etna.gpe.ms_payment_api.dto.ShopRevenueSummaryDto;
+import com.etna.gpe.ms_payment_api.entity.Payment;
+import com.etna.gpe.ms_payment_api.entity.ShopDailyRevenue;
+import com.etna.gpe.ms_payment_api.enums.PaymentStatus;
+import com.etna.gpe.ms_payment_api.repositories.ShopDailyRevenueRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Maintient les agrégats journaliers de chiffre d'affaires des shops.
+ * Chaque changement de statut incrémente la ligne (shop, jour, devise) : le résumé d'une période
+ * se lit en O(jours) au lieu de parcourir la table payment.
+ */
+@Service
+@Slf4j
+public class ShopRevenueService implements IShopRevenueService {
+
+    private final ShopDailyRevenueRepository shopDailyRevenueRepository;
+    private final StripeFeeConfig stripeFeeConfig;
+
+    @Autowired
+    public ShopRevenueService(ShopDailyRevenueRepository shopDailyRevenueRepository, StripeFeeConfig stripeFeeConfig) {
+        this.shopDailyRevenueRepository = shopDailyRevenueRepository;
+        this.stripeFeeConfig = stripeFeeConfig;
+    }
+
+    @Override
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void recordCompleted(Payment payment) {
+        shopDailyRevenueRepository.increment(payment.getShopId(), LocalDate.now(), payment.getCurrency(),
+                payment.getAmount(), stripeFeeConfig.calculateFeeAmount(payment.getAmount()), 0, 1, 0);
+        log.debug("Revenue aggregate updated for completed payment: {}", payment.getId());
+    }
+
+    @Override
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void recordRefunded(Payment payment, long refundedAmount) {
+        if (payment.getStatus() != PaymentStatus.COMPLETED) {
+            // Jamais ajouté au chiffre d'affaires par recordCompleted : rien à retirer
+            log.debug("Refund of payment {} in status {} not counted in revenue", payment.getId(), payment.getStatus());
+            return;
+        }
+
+        long before = payment.getRefundedAmount();
+        long after = before + refundedAmount;
+        long feeRefunded = refundedFee(payment.getAmount(), after) - refundedFee(payment.getAmount(), before);
+        int refundedCount = after >= payment.getAmount() ? 1 : 0;
+        shopDailyRevenueRepository.increment(payment.getShopId(), LocalDate.now(), payment.getCurrency(),
+                0, -feeRefunded, refundedAmount, 0, refundedCount);
+        log.debug("Revenue aggregate updated for refund of {} on payment: {}", refundedAmount, payment.getId());
+    }
+
+    /**
+     * Part des frais correspondant au montant cumulé remboursé. Calculée sur le cumul plutôt que par
+     * remboursement : la somme des remboursements partiels retire exactement les frais du paiement.
+     */
+    private long refundedFee(long amount, long refunded) {
+        if (amount <= 0) {
+            return 0;
+        }
+        return stripeFeeConfig.calculateFeeAmount(amount) * Math.min(refunded, amount) / amount;
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public ShopRevenueSummaryDto getSummary(UUID shopId, LocalDate from, LocalDate to) {
+        List<DailyRevenueDto> days = new ArrayList<>();
+        Map<String, DailyRevenueDto> totals = new LinkedHashMap<>();
+
+        for (ShopDailyRevenue revenue : shopDailyRevenueRepository
+                .findByIdShopIdAndIdRevenueDateBetweenOrderByIdRevenueDateAsc(shopId, from, to)) {
+            String currency = revenue.getId().getCurrency();
+            days.add(new DailyRevenueDto(revenue.getId().getRevenueDate(), currency,
+                    revenue.getGrossAmount(), revenue.getFeeAmount(), revenue.getRefundedAmount(),
+                    revenue.getGrossAmount() - revenue.getFeeAmount() - revenue.getRefundedAmount(),
+                    revenue.getCompletedCount(), revenue.getRefundedCount()));
+
+            DailyRevenueDto total = totals.computeIfAbsent(currency,
+                    c -> new DailyRevenueDto(null, c, 0, 0, 0, 0, 0, 0));
+            total.setGrossAmount(total.getGrossAmount() + revenue.getGrossAmount());
+            total.setFeeAmount(total.getFeeAmount() + revenue.getFeeAmount());
+            total.setRefundedAmount(total.getRefundedAmount() + revenue.getRefundedAmount());
+            total.setNetAmount(total.getGrossAmount() - total.getFeeAmount() - total.getRefundedAmount());
+            total.setCompletedCount(total.getCompletedCount() + revenue.getCompletedCount());
+            total.setRefundedCount(total.getRefundedCount() + revenue.getRefundedCount());
+        }
+
+        return new ShopRevenueSummaryDto(shopId, from, to, new ArrayList<>(totals.values()), days);
+    }
+}
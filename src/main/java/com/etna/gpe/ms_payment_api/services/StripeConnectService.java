@@ -1,6 +1,8 @@
 package com.etna.gpe.ms_payment_api.services;
 
-import com.etna.gpe.mycloseshop.security_api.config.JwtTokenUtil;
+import com.etna.gpe.ms_payment_api.cache.ShopStripeAccountCache;
+import com.etna.gpe.ms_payment_api.clients.IShopApiClient;
+import com.etna.gpe.ms_payment_api.clients.StripeRateLimiter;
 import com.stripe.exception.StripeException;
 import com.stripe.model.Account;
 import com.stripe.model.AccountLink;
@@ -9,17 +11,8 @@ import com.stripe.param.AccountLinkCreateParams;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.http.HttpEntity;
-import org.springframework.http.HttpHeaders;
-import org.springframework.http.HttpMethod;
-import org.springframework.http.MediaType;
-import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Service;
-import org.springframework.web.client.RestTemplate;
 
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
 import java.util.UUID;
 
 /**
@@ -29,23 +22,22 @@ import java.util.UUID;
 @Slf4j
 public class StripeConnectService implements IStripeConnectService {
 
-    public static final String AUTHORIZATION = "Authorization";
-    public static final String BEARER = "Bearer ";
-
     @Value("${app.base-url}")
     private String baseUrl;
-    
-    @Value("${microservices.shop-api.url}")
-    private String shopApiUrl;
 
-    private final JwtTokenUtil jwtTokenUtil;
-    
-    private final RestTemplate restTemplate;
+
+    private final IShopApiClient shopApiClient;
+
+    private final ShopStripeAccountCache shopStripeAccountCache;
+
+    private final StripeRateLimiter stripeRateLimiter;
     
     @Autowired
-    public StripeConnectService(RestTemplate restTemplate, JwtTokenUtil jwtTokenUtil) {
-        this.restTemplate = restTemplate;
-        this.jwtTokenUtil = jwtTokenUtil;
+    public StripeConnectService(IShopApiClient shopApiClient, ShopStripeAccountCache shopStripeAccountCache,
+                                StripeRateLimiter stripeRateLimiter) {
+        this.shopApiClient = shopApiClient;
+        this.shopStripeAccountCache = shopStripeAccountCache;
+        this.stripeRateLimiter = stripeRateLimiter;
     }
 
     /**
@@ -61,7 +53,7 @@ public class StripeConnectService implements IStripeConnectService {
                 .setType(AccountCreateParams.Type.STANDARD)
                 .build();
 
-            Account account = Account.create(params);
+            Account account = stripeRateLimiter.write(null, () -> Account.create(params));
             String accountId = account.getId();
 
             log.info("Stripe connected account created: {} for shop: {}", accountId, shopId);
@@ -90,7 +82,7 @@ public class StripeConnectService implements IStripeConnectService {
                 .setType(AccountLinkCreateParams.Type.ACCOUNT_ONBOARDING)
                 .build();
 
-            AccountLink link = AccountLink.create(linkParams);
+            AccountLink link = stripeRateLimiter.write(null, () -> AccountLink.create(linkParams));
             String onboardingUrl = link.getUrl();
 
             log.info("Account link created for account: {}", accountId);
@@ -110,41 +102,18 @@ public class StripeConnectService implements IStripeConnectService {
         log.info("Updating Stripe account ID for shop: {}", shopId);
         
         try {
-            String url = shopApiUrl + "/shop/" + shopId + "/stripe-account";
-            log.debug("Calling ms-shop-api at: {}", url);
-            
-            // Générer un token JWT pour l'authentification
-            String tokenMs = jwtTokenUtil.generateTokenForMsWith("ms-payment-api", UUID.randomUUID(), List.of("ROLE_ADMIN"));
-            log.debug("Using token for ms-shop-api: {}", tokenMs);
-            
-            // Préparer les headers avec le token d'authentification
-            HttpHeaders headers = new HttpHeaders();
-            headers.setContentType(MediaType.APPLICATION_JSON);
-            headers.set(AUTHORIZATION, BEARER + tokenMs);
-            
-            // Préparer le corps de la requête
-            Map<String, String> requestBody = new HashMap<>();
-            requestBody.put("stripeAccountId", stripeAccountId);
             log.debug("Updating Stripe account ID for shop: {} with Stripe account ID: {}", shopId, stripeAccountId);
-            
-            // Créer l'entité de la requête
-            HttpEntity<Map<String, String>> requestEntity = new HttpEntity<>(requestBody, headers);
-            
-            // Faire l'appel API avec exchange au lieu de postForObject
-            ResponseEntity<String> response = restTemplate.exchange(
-                url,
-                HttpMethod.PUT,
-                requestEntity,
-                String.class
-            );
-            
-            if (response.getStatusCode().is2xxSuccessful()) {
-                log.info("Shop Stripe account ID updated successfully: {}", response.getBody());
+
+            if (shopApiClient.updateStripeAccountId(shopId, stripeAccountId)) {
+                log.info("Shop Stripe account ID updated successfully for shop: {}", shopId);
+                shopStripeAccountCache.put(shopId, stripeAccountId);
             } else {
-                log.warn("Failed to update Stripe account ID for shop: {}. Status code: {}", shopId, response.getStatusCode());
+                log.warn("Failed to update Stripe account ID for shop: {}", shopId);
+                shopStripeAccountCache.invalidate(shopId);
             }
         } catch (Exception e) {
             log.error("Error updating Stripe account ID for shop: {}", shopId, e);
+            shopStripeAccountCache.invalidate(shopId);
             // On continue même en cas d'erreur pour permettre l'onboarding
         }
     }
@@ -0,0 +1,146 @@
+package com.etna.gpe.ms_payment_api.services;
+
+import com.stripe.model.Charge;
+import com.stripe.model.Event;
+import com.stripe.model.PaymentIntent;
+import com.stripe.model.StripeObject;
+import com.stripe.model.checkout.Session;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+/**
+ * Traitement métier des événements Stripe, partagé entre le webhook synchrone et le worker de l'inbox.
+ */
+@Service
+@Slf4j
+public class StripeEventProcessor implements IStripeEventProcessor {
+
+    public static final String CHECKOUT_SESSION_COMPLETED = "checkout.session.completed";
+    public static final String CHARGE_SUCCEEDED = "charge.succeeded";
+    public static final String CHARGE_REFUNDED = "charge.refunded";
+    public static final String PAYMENT_INTENT_PAYMENT_FAILED = "payment_intent.payment_failed";
+
+    private final PaymentService paymentService;
+    private final IProcessedEventService processedEventService;
+
+    @Autowired
+    public StripeEventProcessor(PaymentService paymentService, IProcessedEventService processedEventService) {
+        this.paymentService = paymentService;
+        this.processedEventService = processedEventService;
+    }
+
+    @Override
+    public boolean supports(String eventType) {
+        return switch (eventType) {
+            case CHECKOUT_SESSION_COMPLETED, CHARGE_SUCCEEDED, CHARGE_REFUNDED, PAYMENT_INTENT_PAYMENT_FAILED -> true;
+            default -> false;
+        };
+    }
+
+    @Override
+    public String resolveOrderingKey(Event event) {
+        StripeObject object = event.getDataObjectDeserializer().getObject().orElse(null);
+        if (object instanceof Session session) {
+            // En mode payment, Stripe renseigne le PaymentIntent dès checkout.session.completed ; une session
+            // qui n'en a pas n'a pas donné lieu à un paiement et ne produira pas d'événement de charge à ordonner
+            return session.getPaymentIntent() != null ? session.getPaymentIntent() : session.getId();
+        }
+        if (object instanceof Charge charge && charge.getPaymentIntent() != null) {
+            return charge.getPaymentIntent();
+        }
+        if (object instanceof PaymentIntent paymentIntent) {
+            return paymentIntent.getId();
+        }
+        return event.getId();
+    }
+
+    @Override
+    public void process(Event event) {
+        String eventType = event.getType();
+        log.info("Processing Stripe event: {}", eventType);
+
+        switch (eventType) {
+            case CHECKOUT_SESSION_COMPLETED:
+                handleCheckoutSessionCompleted(event);
+                break;
+
+            case CHARGE_SUCCEEDED:
+                handleChargeSucceeded(event);
+                break;
+
+            case CHARGE_REFUNDED:
+                handleChargeRefunded(event);
+                break;
+
+            case PAYMENT_INTENT_PAYMENT_FAILED:
+                handlePaymentFailed(event);
+                break;
+
+            default:
+                log.info("Unhandled Stripe event type: {}", eventType);
+                break;
+        }
+    }
+
+    /**
+     * Traite l'événement checkout.session.completed.
+     * Indique que le client a complété le paiement avec succès.
+     */
+    private void handleCheckoutSessionCompleted(Event event) {
+        Session session = (Session) event.getDataObjectDeserializer().getObject().orElse(null);
+        if (session != null) {
+            if (session.getPaymentIntent() != null) {
+                // Avec les versions récentes de l'API, le PaymentIntent n'existe pas encore à la création de la session
+                paymentService.recordPaymentIntent(session.getId(), session.getPaymentIntent());
+            }
+            if (processedEventService.isProcessed(IProcessedEventService.checkoutKey(session.getId()))) {
+                log.info("Checkout session {} already completed, skipping", session.getId());
+                return;
+            }
+            log.info("Processing checkout.session.completed for session: {}", session.getId());
+            paymentService.handleCheckoutCompleted(session.getId());
+        } else {
+            log.error("Failed to deserialize checkout.session.completed event");
+        }
+    }
+
+    /**
+     * Traite l'événement charge.succeeded.
+     * Enregistre l'ID de la charge, utilisé ensuite pour résoudre les remboursements.
+     */
+    private void handleChargeSucceeded(Event event) {
+        Charge charge = (Charge) event.getDataObjectDeserializer().getObject().orElse(null);
+        if (charge != null && charge.getPaymentIntent() != null) {
+            log.info("Processing charge.succeeded for charge: {}", charge.getId());
+            paymentService.recordCharge(charge.getPaymentIntent(), charge.getId());
+        } else {
+            log.error("Failed to deserialize charge.succeeded event");
+        }
+    }
+
+    /**
+     * Traite l'événement charge.refunded.
+     * Indique qu'un remboursement a été effectué sur le paiement.
+     */
+    private void handleChargeRefunded(Event event) {
+        Charge charge = (Charge) event.getDataObjectDeserializer().getObject().orElse(null);
+        if (charge != null) {
+            log.info("Processing charge.refunded for charge: {}", charge.getId());
+            long amountRefunded = charge.getAmountRefunded() != null ? charge.getAmountRefunded() : 0L;
+            paymentService.handlePaymentRefunded(charge.getId(), charge.getPaymentIntent(), amountRefunded,
+                    Boolean.TRUE.equals(charge.getRefunded()));
+        } else {
+            log.error("Failed to deserialize charge.refunded event");
+        }
+    }
+
+    /**
+     * Traite l'événement payment_intent.payment_failed.
+     * Indique qu'un paiement a échoué.
+     */
+    private void handlePaymentFailed(Event event) {
+        log.info("Payment failed event received: {}", event.getId());
+        // Implementation future si nécessaire pour gérer les échecs de paiement
+    }
+}
@@ -0,0 +1,287 @@
+package com.etna.gpe.ms_payment_api.services;
+
+import com.etna.gpe.ms_payment_api.entity.StripeWebhookEvent;
+import com.etna.gpe.ms_payment_api.enums.WebhookEventStatus;
+import com.etna.gpe.ms_payment_api.exceptions.StripeThrottledException;
+import com.etna.gpe.ms_payment_api.repositories.StripeWebhookEventRepository;
+import com.stripe.model.Event;
+import com.stripe.net.ApiResource;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Inbox des webhooks Stripe.
+ * Le webhook se contente de vérifier la signature et d'insérer l'événement ; un worker planifié
+ * réserve ensuite les événements en attente et les traite dans un pool borné, séquentiellement
+ * par clé d'ordonnancement (un même paiement n'est jamais traité par deux threads à la fois).
+ * Un événement en échec est rejoué après un backoff exponentiel ; tant qu'il n'a pas été traité
+ * (y compris en échec définitif, jusqu'à son rejeu manuel), les événements suivants de sa clé attendent.
+ */
+@Service
+@Slf4j
+public class StripeWebhookInboxService implements IStripeWebhookInboxService {
+
+    private static final int MAX_ERROR_LENGTH = 1000;
+    private static final List<WebhookEventStatus> BLOCKING_STATUSES =
+            List.of(WebhookEventStatus.PROCESSING, WebhookEventStatus.FAILED);
+
+    @Value("${stripe.webhook.inbox.enabled:false}")
+    private boolean enabled;
+
+    @Value("${stripe.webhook.inbox.batch-size:100}")
+    private int batchSize;
+
+    @Value("${stripe.webhook.inbox.max-attempts:5}")
+    private int maxAttempts;
+
+    @Value("${stripe.webhook.inbox.initial-backoff-ms:1000}")
+    private long initialBackoffMs;
+
+    @Value("${stripe.webhook.inbox.max-backoff-ms:300000}")
+    private long maxBackoffMs;
+
+    @Value("${stripe.webhook.inbox.stale-claim-timeout-ms:300000}")
+    private long staleClaimTimeoutMs;
+
+    @Value("${stripe.webhook.inbox.worker.pool-size:4}")
+    private int poolSize;
+
+    @Value("${stripe.webhook.inbox.worker.queue-capacity:50}")
+    private int queueCapacity;
+
+    private final StripeWebhookEventRepository webhookEventRepository;
+    private final IStripeEventProcessor stripeEventProcessor;
+    private final IProcessedEventService processedEventService;
+
+    /**
+     * Clés d'ordonnancement en cours de traitement dans le pool.
+     */
+    private final Set<String> inFlightKeys = ConcurrentHashMap.newKeySet();
+
+    private ThreadPoolTaskExecutor executor;
+
+    @Autowired
+    public StripeWebhookInboxService(StripeWebhookEventRepository webhookEventRepository,
+                                     IStripeEventProcessor stripeEventProcessor,
+                                     IProcessedEventService processedEventService) {
+        this.webhookEventRepository = webhookEventRepository;
+        this.stripeEventProcessor = stripeEventProcessor;
+        this.processedEventService = processedEventService;
+    }
+
+    @PostConstruct
+    public void init() {
+        executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(poolSize);
+        executor.setMaxPoolSize(poolSize);
+        executor.setQueueCapacity(queueCapacity);
+        executor.setThreadNamePrefix("webhook-inbox-");
+        executor.setWaitForTasksToCompleteOnShutdown(true);
+        executor.setAwaitTerminationSeconds(30);
+        executor.initialize();
+        log.info("Stripe webhook inbox {} (workers: {}, queue: {})",
+                enabled ? "enabled" : "disabled", poolSize, queueCapacity);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    @Override
+    public void enqueue(Event event, String payload) {
+        StripeWebhookEvent inboxEvent = new StripeWebhookEvent();
+        inboxEvent.setEventId(event.getId());
+        inboxEvent.setEventType(event.getType());
+        inboxEvent.setOrderingKey(stripeEventProcessor.resolveOrderingKey(event));
+        inboxEvent.setPayload(payload);
+        inboxEvent.setStatus(WebhookEventStatus.PENDING);
+        inboxEvent.setAttempts(0);
+        inboxEvent.setReceivedAt(LocalDateTime.now());
+
+        try {
+            webhookEventRepository.save(inboxEvent);
+            log.info("Stripe event {} ({}) stored in inbox", event.getId(), event.getType());
+        } catch (DataIntegrityViolationException e) {
+            // Stripe livre au moins une fois : l'événement est déjà dans l'inbox
+            log.info("Stripe event {} already stored in inbox, ignoring duplicate delivery", event.getId());
+        }
+    }
+
+    @Override
+    public int replayFailedEvents() {
+        int requeued = webhookEventRepository.requeueFailed(WebhookEventStatus.PENDING, WebhookEventStatus.FAILED);
+        log.info("{} failed Stripe events requeued for processing", requeued);
+        return requeued;
+    }
+
+    /**
+     * Réserve les événements en attente et les distribue au pool de workers, groupés par clé d'ordonnancement.
+     */
+    @Scheduled(fixedDelayString = "${stripe.webhook.inbox.poll-interval-ms:500}")
+    public void drainInbox() {
+        if (!enabled) {
+            return;
+        }
+
+        List<StripeWebhookEvent> pending = webhookEventRepository.findReady(WebhookEventStatus.PENDING,
+                BLOCKING_STATUSES, LocalDateTime.now(), PageRequest.of(0, batchSize));
+        if (pending.isEmpty()) {
+            return;
+        }
+
+        Map<String, List<StripeWebhookEvent>> eventsByKey = new LinkedHashMap<>();
+        for (StripeWebhookEvent event : pending) {
+            eventsByKey.computeIfAbsent(event.getOrderingKey(), key -> new ArrayList<>()).add(event);
+        }
+
+        for (Map.Entry<String, List<StripeWebhookEvent>> entry : eventsByKey.entrySet()) {
+            String orderingKey = entry.getKey();
+            if (!inFlightKeys.add(orderingKey)) {
+                // Un worker traite déjà cette clé : les événements suivants attendront le prochain passage
+                continue;
+            }
+
+            List<StripeWebhookEvent> claimed = claim(entry.getValue());
+            if (claimed.isEmpty()) {
+                inFlightKeys.remove(orderingKey);
+                continue;
+            }
+
+            try {
+                executor.execute(() -> processGroup(orderingKey, claimed));
+            } catch (TaskRejectedException e) {
+                log.debug("Webhook inbox workers saturated, deferring remaining events");
+                release(claimed);
+                inFlightKeys.remove(orderingKey);
+                break;
+            }
+        }
+    }
+
+    /**
+     * Libère les événements réservés par un worker qui n'a jamais terminé (arrêt brutal de l'instance).
+     */
+    @Scheduled(fixedDelayString = "${stripe.webhook.inbox.stale-claim-check-interval-ms:60000}")
+    public void releaseStaleClaims() {
+        if (!enabled) {
+            return;
+        }
+
+        LocalDateTime before = LocalDateTime.now().minus(Duration.ofMillis(staleClaimTimeoutMs));
+        int released = webhookEventRepository.releaseStaleClaims(
+                WebhookEventStatus.PENDING, WebhookEventStatus.PROCESSING, before);
+        if (released > 0) {
+            log.warn("{} stale Stripe events released back to the inbox", released);
+        }
+    }
+
+    /**
+     * Réserve les événements d'une clé dans l'ordre ; s'arrête au premier événement déjà pris
+     * par une autre instance afin de ne jamais traiter un événement avant son prédécesseur.
+     */
+    private List<StripeWebhookEvent> claim(List<StripeWebhookEvent> events) {
+        List<StripeWebhookEvent> claimed = new ArrayList<>();
+        LocalDateTime now = LocalDateTime.now();
+        for (StripeWebhookEvent event : events) {
+            int updated = webhookEventRepository.transition(event.getEventId(),
+                    WebhookEventStatus.PENDING, WebhookEventStatus.PROCESSING, now);
+            if (updated == 0) {
+                break;
+            }
+            claimed.add(event);
+        }
+        return claimed;
+    }
+
+    private void release(List<StripeWebhookEvent> events) {
+        for (StripeWebhookEvent event : events) {
+            webhookEventRepository.transition(event.getEventId(),
+                    WebhookEventStatus.PROCESSING, WebhookEventStatus.PENDING, null);
+        }
+    }
+
+    private void processGroup(String orderingKey, List<StripeWebhookEvent> events) {
+        try {
+            for (int i = 0; i < events.size(); i++) {
+                if (!processEvent(events.get(i))) {
+                    // Préserver l'ordre : les événements suivants attendent le rejeu de celui en échec
+                    release(events.subList(i + 1, events.size()));
+                    return;
+                }
+            }
+        } finally {
+            inFlightKeys.remove(orderingKey);
+        }
+    }
+
+    private boolean processEvent(StripeWebhookEvent inboxEvent) {
+        try {
+            if (processedEventService.isProcessed(inboxEvent.getEventId())) {
+                log.info("Duplicate Stripe event {} skipped by inbox worker", inboxEvent.getEventId());
+            } else {
+                Event event = ApiResource.GSON.fromJson(inboxEvent.getPayload(), Event.class);
+                stripeEventProcessor.process(event);
+                processedEventService.markProcessed(inboxEvent.getEventId());
+            }
+            webhookEventRepository.markProcessed(inboxEvent.getEventId(),
+                    WebhookEventStatus.PROCESSED, LocalDateTime.now());
+            return true;
+        } catch (StripeThrottledException e) {
+            // Appel Stripe non traité faute de débit : l'événement est différé sans consommer de tentative
+            log.info("Stripe API throttled, deferring Stripe event {} by {} ms",
+                    inboxEvent.getEventId(), e.getRetryAfter().toMillis());
+            webhookEventRepository.defer(inboxEvent.getEventId(), WebhookEventStatus.PENDING,
+                    LocalDateTime.now().plus(e.getRetryAfter()));
+            return false;
+        } catch (Exception e) {
+            int attempt = inboxEvent.getAttempts() + 1;
+            boolean exhausted = attempt >= maxAttempts;
+            WebhookEventStatus nextStatus = exhausted ? WebhookEventStatus.FAILED : WebhookEventStatus.PENDING;
+            LocalDateTime nextAttemptAt = exhausted ? null : LocalDateTime.now().plus(backoff(attempt));
+            log.error("Error processing Stripe event {} from inbox (attempt {}/{})",
+                    inboxEvent.getEventId(), attempt, maxAttempts, e);
+            webhookEventRepository.recordFailure(inboxEvent.getEventId(), nextStatus, truncate(e.getMessage()),
+                    nextAttemptAt);
+            return false;
+        }
+    }
+
+    /**
+     * Délai avant la tentative suivante : doublé à chaque échec, plafonné à max-backoff-ms.
+     */
+    private Duration backoff(int attempt) {
+        long delay = initialBackoffMs << Math.min(attempt - 1, 20);
+        return Duration.ofMillis(Math.min(delay, maxBackoffMs));
+    }
+
+    private String truncate(String message) {
+        if (message == null || message.length() <= MAX_ERROR_LENGTH) {
+            return message;
+        }
+        return message.substring(0, MAX_ERROR_LENGTH);
+    }
+}
@@ -0,0 +1,5 @@
+-- Migration pour le listing des paiements d'un shop sans filtre de statut
+-- Tri (created_at, id) sans filesort : l'index (shop_id, status, created_at) ne couvre pas ce cas
+
+-- Création de l'index séparément pour compatibilité H2/MySQL
+CREATE INDEX idx_payment_shop_created ON payment(shop_id, created_at, id);
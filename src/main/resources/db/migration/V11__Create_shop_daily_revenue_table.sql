@@ -0,0 +1,12 @@
+-- Migration pour créer les agrégats journaliers de chiffre d'affaires des shops
+CREATE TABLE shop_daily_revenue (
+  shop_id BINARY(16) NOT NULL,
+  revenue_date DATE NOT NULL,
+  currency VARCHAR(3) NOT NULL,
+  gross_amount BIGINT NOT NULL DEFAULT 0,
+  fee_amount BIGINT NOT NULL DEFAULT 0,
+  refunded_amount BIGINT NOT NULL DEFAULT 0,
+  completed_count INT NOT NULL DEFAULT 0,
+  refunded_count INT NOT NULL DEFAULT 0,
+  PRIMARY KEY (shop_id, revenue_date, currency)
+);
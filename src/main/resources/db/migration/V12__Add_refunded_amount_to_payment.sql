@@ -0,0 +1,2 @@
+-- Migration pour suivre le montant déjà remboursé de chaque paiement (remboursements partiels)
+ALTER TABLE payment ADD COLUMN refunded_amount BIGINT NOT NULL DEFAULT 0;
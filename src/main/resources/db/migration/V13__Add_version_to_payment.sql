@@ -0,0 +1,2 @@
+-- Migration pour ajouter le verrou optimiste des paiements
+ALTER TABLE payment ADD COLUMN version BIGINT NOT NULL DEFAULT 0;
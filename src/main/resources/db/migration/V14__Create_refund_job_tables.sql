@@ -0,0 +1,26 @@
+-- Migration pour créer les jobs de remboursement en masse
+CREATE TABLE refund_job (
+  id BINARY(16) PRIMARY KEY,
+  status VARCHAR(20) NOT NULL,
+  total_items INT NOT NULL,
+  created_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+  completed_at TIMESTAMP NULL
+);
+
+CREATE TABLE refund_job_item (
+  id BINARY(16) PRIMARY KEY,
+  job_id BINARY(16) NOT NULL,
+  payment_id BINARY(16) NOT NULL,
+  amount BIGINT NOT NULL,
+  status VARCHAR(20) NOT NULL,
+  attempts INT NOT NULL DEFAULT 0,
+  stripe_refund_id VARCHAR(255),
+  last_error VARCHAR(1000),
+  next_attempt_at TIMESTAMP NULL,
+  claimed_at TIMESTAMP NULL,
+  updated_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP
+);
+
+-- Création des index séparément pour compatibilité H2/MySQL
+CREATE INDEX idx_refund_job_item_status_updated_at ON refund_job_item(status, updated_at);
+CREATE INDEX idx_refund_job_item_job_status ON refund_job_item(job_id, status);
@@ -0,0 +1,19 @@
+-- Migration pour créer l'inbox des webhooks Stripe (ingestion asynchrone et rejeu)
+CREATE TABLE stripe_webhook_inbox (
+  event_id VARCHAR(255) PRIMARY KEY,
+  event_type VARCHAR(100) NOT NULL,
+  ordering_key VARCHAR(255) NOT NULL,
+  payload LONGTEXT NOT NULL,
+  status VARCHAR(20) NOT NULL,
+  attempts INT NOT NULL DEFAULT 0,
+  last_error VARCHAR(1000),
+  received_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+  claimed_at TIMESTAMP NULL,
+  next_attempt_at TIMESTAMP NULL,
+  processed_at TIMESTAMP NULL
+);
+
+-- Création des index séparément pour compatibilité H2/MySQL
+CREATE INDEX idx_inbox_status_received_at ON stripe_webhook_inbox(status, received_at);
+-- Recherche des prédécesseurs d'un événement sur sa clé d'ordonnancement
+CREATE INDEX idx_inbox_ordering_key_received_at ON stripe_webhook_inbox(ordering_key, received_at);
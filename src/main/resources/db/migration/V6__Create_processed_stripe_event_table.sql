@@ -0,0 +1,8 @@
+-- Migration pour créer le registre des événements Stripe déjà traités (déduplication des livraisons)
+CREATE TABLE processed_stripe_event (
+  event_key VARCHAR(255) PRIMARY KEY,
+  processed_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP
+);
+
+-- Création des index séparément pour compatibilité H2/MySQL
+CREATE INDEX idx_processed_event_processed_at ON processed_stripe_event(processed_at);
@@ -0,0 +1,19 @@
+-- Migration pour créer l'outbox des événements de paiement publiés sur RabbitMQ
+CREATE TABLE payment_outbox (
+  id BIGINT AUTO_INCREMENT PRIMARY KEY,
+  payment_id BINARY(16) NOT NULL,
+  exchange VARCHAR(255) NOT NULL,
+  routing_key VARCHAR(255) NOT NULL,
+  payload BLOB NOT NULL,
+  content_type VARCHAR(100),
+  type_id VARCHAR(255),
+  status VARCHAR(20) NOT NULL DEFAULT 'PENDING',
+  attempts INT NOT NULL DEFAULT 0,
+  last_error VARCHAR(1000),
+  created_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+  claimed_at TIMESTAMP NULL
+);
+
+-- Création des index séparément pour compatibilité H2/MySQL
+CREATE INDEX idx_outbox_payment_id ON payment_outbox(payment_id);
+CREATE INDEX idx_outbox_status_id ON payment_outbox(status, id);
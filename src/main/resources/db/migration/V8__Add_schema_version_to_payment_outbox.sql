@@ -0,0 +1,2 @@
+-- Migration pour conserver la version de schéma des événements publiés depuis l'outbox
+ALTER TABLE payment_outbox ADD COLUMN schema_version INT;
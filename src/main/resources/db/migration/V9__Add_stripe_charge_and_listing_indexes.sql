@@ -0,0 +1,7 @@
+-- Migration pour indexer les IDs de charge Stripe et couvrir les requêtes de listing des paiements
+-- Les index Stripe restent non uniques : une session, un PaymentIntent et une charge peuvent couvrir plusieurs paiements
+
+-- Création des index séparément pour compatibilité H2/MySQL
+CREATE INDEX idx_payment_stripe_charge_id ON payment(stripe_charge_id);
+CREATE INDEX idx_payment_shop_status_created ON payment(shop_id, status, created_at);
+CREATE INDEX idx_payment_user_created ON payment(user_id, created_at);
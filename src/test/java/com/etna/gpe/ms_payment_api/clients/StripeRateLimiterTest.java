@@ -0,0 +1,102 @@
+package com.etna.gpe.ms_payment_api.clients;
+
+import com.etna.gpe.ms_payment_api.exceptions.StripeThrottledException;
+import com.stripe.exception.RateLimitException;
+import io.github.resilience4j.ratelimiter.RateLimiterConfig;
+import io.github.resilience4j.ratelimiter.RateLimiterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Mockito.mock;
+
+/**
+ * Tests du limiteur Stripe : rejeu après une 429, abandon après les rejeux et bucket par compte connecté.
+ */
+class StripeRateLimiterTest {
+
+    private static final int WRITE_LIMIT = 10;
+
+    private RateLimiterRegistry rateLimiterRegistry;
+    private SimpleMeterRegistry meterRegistry;
+    private StripeRateLimiter stripeRateLimiter;
+
+    @BeforeEach
+    void setUp() {
+        rateLimiterRegistry = RateLimiterRegistry.ofDefaults();
+        rateLimiterRegistry.rateLimiter(StripeRateLimiter.STRIPE_WRITE, RateLimiterConfig.custom()
+                .limitForPeriod(WRITE_LIMIT)
+                .limitRefreshPeriod(Duration.ofMinutes(1))
+                .timeoutDuration(Duration.ofSeconds(1))
+                .build());
+        rateLimiterRegistry.addConfiguration(StripeRateLimiter.STRIPE_ACCOUNT_CONFIG, RateLimiterConfig.custom()
+                .limitForPeriod(1)
+                .limitRefreshPeriod(Duration.ofMinutes(1))
+                .timeoutDuration(Duration.ZERO)
+                .build());
+        meterRegistry = new SimpleMeterRegistry();
+
+        stripeRateLimiter = new StripeRateLimiter(rateLimiterRegistry, meterRegistry, 100, Duration.ofMinutes(10));
+        ReflectionTestUtils.setField(stripeRateLimiter, "maxRetries", 2);
+        ReflectionTestUtils.setField(stripeRateLimiter, "initialBackoff", Duration.ofMillis(1));
+        ReflectionTestUtils.setField(stripeRateLimiter, "maxBackoff", Duration.ofMillis(2));
+    }
+
+    @Test
+    void callIsReplayedAfterA429() throws Exception {
+        RateLimitException rateLimited = mock(RateLimitException.class);
+        AtomicInteger calls = new AtomicInteger();
+
+        String result = stripeRateLimiter.write(null, () -> {
+            if (calls.incrementAndGet() == 1) {
+                throw rateLimited;
+            }
+            return "re_test";
+        });
+
+        assertEquals("re_test", result);
+        assertEquals(2, calls.get());
+        assertEquals(1.0, throttledCount("stripe"));
+    }
+
+    @Test
+    void persistent429IsReportedAsThrottledAfterTheRetries() {
+        RateLimitException rateLimited = mock(RateLimitException.class);
+        AtomicInteger calls = new AtomicInteger();
+
+        StripeThrottledException thrown = assertThrows(StripeThrottledException.class,
+                () -> stripeRateLimiter.write(null, () -> {
+                    calls.incrementAndGet();
+                    throw rateLimited;
+                }));
+
+        // Un premier appel puis max-retries rejeux
+        assertEquals(3, calls.get());
+        assertSame(rateLimited, thrown.getCause());
+        assertEquals(3.0, throttledCount("stripe"));
+    }
+
+    @Test
+    void accountOverItsLimitDoesNotConsumeThePlatformBucket() throws Exception {
+        stripeRateLimiter.write("acct_1", () -> "re_1");
+
+        assertThrows(StripeThrottledException.class, () -> stripeRateLimiter.write("acct_1", () -> "re_2"));
+
+        assertEquals(WRITE_LIMIT - 1, rateLimiterRegistry.rateLimiter(StripeRateLimiter.STRIPE_WRITE)
+                .getMetrics().getAvailablePermissions());
+        assertEquals(1.0, throttledCount("account"));
+        // Un autre shop garde son propre débit
+        assertEquals("re_3", stripeRateLimiter.write("acct_2", () -> "re_3"));
+    }
+
+    private double throttledCount(String source) {
+        return meterRegistry.counter(StripeRateLimiter.THROTTLED_METRIC, "access", "write", "source", source).count();
+    }
+}
@@ -0,0 +1,47 @@
+package com.etna.gpe.ms_payment_api.dto;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Tests de l'encodage du curseur de pagination.
+ */
+class PaymentCursorTest {
+
+    @Test
+    void encodedCursorDecodesToTheSamePosition() {
+        PaymentCursor cursor = new PaymentCursor(LocalDateTime.of(2024, 3, 1, 10, 15, 30, 123456000),
+                UUID.randomUUID());
+
+        assertEquals(cursor, PaymentCursor.decode(cursor.encode()));
+    }
+
+    @Test
+    void cursorIsBuiltFromTheLastPaymentOfThePage() {
+        PaymentSummaryDto payment = new PaymentSummaryDto(UUID.randomUUID(), UUID.randomUUID(), UUID.randomUUID(),
+                null, null, 1000, 0, "eur", null, LocalDateTime.of(2024, 3, 1, 10, 15));
+
+        PaymentCursor cursor = PaymentCursor.of(payment);
+
+        assertEquals(payment.getCreatedAt(), cursor.createdAt());
+        assertEquals(payment.getId(), cursor.id());
+    }
+
+    @Test
+    void missingCursorMeansFirstPage() {
+        assertNull(PaymentCursor.decode(null));
+        assertNull(PaymentCursor.decode(" "));
+    }
+
+    @Test
+    void malformedCursorIsRejected() {
+        assertThrows(IllegalArgumentException.class, () -> PaymentCursor.decode("not-a-cursor"));
+        assertThrows(IllegalArgumentException.class, () -> PaymentCursor.decode("%%%"));
+    }
+}
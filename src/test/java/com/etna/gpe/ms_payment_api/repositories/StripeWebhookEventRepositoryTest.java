@@ -0,0 +1,92 @@
+package com.etna.gpe.ms_payment_api.repositories;
+
+import com.etna.gpe.ms_payment_api.entity.StripeWebhookEvent;
+import com.etna.gpe.ms_payment_api.enums.WebhookEventStatus;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Tests de la requête de l'inbox : ordre des événements d'une clé et prédécesseurs bloquants.
+ */
+@DataJpaTest(properties = "spring.flyway.enabled=false")
+@ActiveProfiles("test")
+class StripeWebhookEventRepositoryTest {
+
+    private static final List<WebhookEventStatus> BLOCKING =
+            List.of(WebhookEventStatus.PROCESSING, WebhookEventStatus.FAILED);
+    private static final LocalDateTime RECEIVED_AT = LocalDateTime.of(2024, 3, 1, 10, 0);
+
+    @Autowired
+    private StripeWebhookEventRepository webhookEventRepository;
+
+    @Test
+    void eventsReceivedAtTheSameInstantAreOrderedByEventId() {
+        save("evt_b", WebhookEventStatus.PENDING, RECEIVED_AT, null);
+        save("evt_a", WebhookEventStatus.PENDING, RECEIVED_AT, null);
+
+        assertEquals(List.of("evt_a", "evt_b"), readyIds(RECEIVED_AT.plusMinutes(1)));
+    }
+
+    @Test
+    void predecessorReceivedAtTheSameInstantBlocksTheKey() {
+        save("evt_a", WebhookEventStatus.PROCESSING, RECEIVED_AT, null);
+        save("evt_b", WebhookEventStatus.PENDING, RECEIVED_AT, null);
+
+        assertEquals(List.of(), readyIds(RECEIVED_AT.plusMinutes(1)));
+    }
+
+    @Test
+    void eventWaitingForItsBackoffHoldsItsSuccessors() {
+        LocalDateTime now = RECEIVED_AT.plusMinutes(1);
+        save("evt_1", WebhookEventStatus.PENDING, RECEIVED_AT, now.plusSeconds(30));
+        save("evt_2", WebhookEventStatus.PENDING, RECEIVED_AT.plusSeconds(1), null);
+
+        assertEquals(List.of(), readyIds(now));
+        assertEquals(List.of("evt_1", "evt_2"), readyIds(now.plusMinutes(1)));
+    }
+
+    @Test
+    void failedEventHoldsItsKeyButNotTheOthers() {
+        save("evt_1", WebhookEventStatus.FAILED, RECEIVED_AT, null);
+        save("evt_2", WebhookEventStatus.PENDING, RECEIVED_AT.plusSeconds(1), null);
+        StripeWebhookEvent other = event("evt_3", WebhookEventStatus.PENDING, RECEIVED_AT.plusSeconds(2), null);
+        other.setOrderingKey("pi_other");
+        webhookEventRepository.saveAndFlush(other);
+
+        assertEquals(List.of("evt_3"), readyIds(RECEIVED_AT.plusMinutes(1)));
+    }
+
+    private List<String> readyIds(LocalDateTime now) {
+        return webhookEventRepository.findReady(WebhookEventStatus.PENDING, BLOCKING, now, PageRequest.of(0, 10))
+                .stream()
+                .map(StripeWebhookEvent::getEventId)
+                .toList();
+    }
+
+    private void save(String eventId, WebhookEventStatus status, LocalDateTime receivedAt,
+                      LocalDateTime nextAttemptAt) {
+        webhookEventRepository.saveAndFlush(event(eventId, status, receivedAt, nextAttemptAt));
+    }
+
+    private static StripeWebhookEvent event(String eventId, WebhookEventStatus status, LocalDateTime receivedAt,
+                                            LocalDateTime nextAttemptAt) {
+        StripeWebhookEvent event = new StripeWebhookEvent();
+        event.setEventId(eventId);
+        event.setEventType("charge.refunded");
+        event.setOrderingKey("pi_1");
+        event.setPayload("{}");
+        event.setStatus(status);
+        event.setAttempts(0);
+        event.setReceivedAt(receivedAt);
+        event.setNextAttemptAt(nextAttemptAt);
+        return event;
+    }
+}
@@ -0,0 +1,414 @@
+package com.etna.gpe.ms_payment_api.services;
+
+import com.etna.gpe.ms_payment_api.cache.PaymentLookupCache;
+import com.etna.gpe.ms_payment_api.cache.ServiceCatalogueCache;
+import com.etna.gpe.ms_payment_api.cache.ShopStripeAccountCache;
+import com.etna.gpe.ms_payment_api.clients.IShopApiClient;
+import com.etna.gpe.ms_payment_api.clients.StripeRateLimiter;
+import com.etna.gpe.ms_payment_api.config.StripeFeeConfig;
+import com.etna.gpe.ms_payment_api.dto.PaymentCursor;
+import com.etna.gpe.ms_payment_api.dto.PaymentPageDto;
+import com.etna.gpe.ms_payment_api.dto.PaymentSummaryDto;
+import com.etna.gpe.ms_payment_api.entity.Payment;
+import com.etna.gpe.ms_payment_api.enums.PaymentStatus;
+import com.etna.gpe.ms_payment_api.exceptions.StripePaymentException;
+import com.etna.gpe.ms_payment_api.repositories.PaymentRepository;
+import com.stripe.exception.ApiConnectionException;
+import com.stripe.model.Refund;
+import com.stripe.net.RequestOptions;
+import com.stripe.param.RefundCreateParams;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentMatcher;
+import org.mockito.Mock;
+import org.mockito.MockedStatic;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.mockStatic;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests des remboursements (annulation d'un rendez-vous, montant envoyé à Stripe, validation, suivi du montant
+ * remboursé par ligne) et de la pagination par curseur des listes de paiements.
+ */
+@ExtendWith(MockitoExtension.class)
+class PaymentServiceImplTest {
+
+    private static final String PAYMENT_INTENT_ID = "pi_shared";
+    private static final String CHARGE_ID = "ch_shared";
+
+    @Mock
+    private PaymentRepository paymentRepository;
+    @Mock
+    private IPaymentOutboxService paymentOutboxService;
+    @Mock
+    private IShopRevenueService shopRevenueService;
+    @Mock
+    private PlatformTransactionManager transactionManager;
+    @Mock
+    private StripeFeeConfig stripeFeeConfig;
+    @Mock
+    private IShopApiClient shopApiClient;
+    @Mock
+    private IProcessedEventService processedEventService;
+    @Mock
+    private ShopStripeAccountCache shopStripeAccountCache;
+    @Mock
+    private ServiceCatalogueCache serviceCatalogueCache;
+    @Mock
+    private PaymentLookupCache paymentLookupCache;
+    @Mock
+    private StripeRateLimiter stripeRateLimiter;
+
+    private PaymentServiceImpl paymentService;
+
+    @BeforeEach
+    void setUp() {
+        paymentService = new PaymentServiceImpl(paymentRepository, paymentOutboxService, shopRevenueService,
+                transactionManager, stripeFeeConfig, shopApiClient, processedEventService, shopStripeAccountCache,
+                serviceCatalogueCache, paymentLookupCache, stripeRateLimiter, new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(paymentService, "paymentExchange", "payment.exchange");
+        ReflectionTestUtils.setField(paymentService, "paymentRefundedRoutingKey", "payment.refunded");
+        ReflectionTestUtils.setField(paymentService, "maxPageSize", 100);
+    }
+
+    @Test
+    void cancellationRefundsEveryCompletedPaymentOfTheAppointment() throws Exception {
+        UUID appointmentId = UUID.randomUUID();
+        Payment first = payment("pi_1", 3000);
+        Payment second = payment("pi_2", 2000);
+        when(paymentRepository.findAllByAppointmentIdAndStatus(appointmentId, PaymentStatus.COMPLETED))
+                .thenReturn(List.of(first, second));
+
+        givenStripeCallsPassThrough();
+
+        try (MockedStatic<Refund> refunds = mockStatic(Refund.class)) {
+            refunds.when(() -> Refund.create(any(RefundCreateParams.class), any(RequestOptions.class)))
+                    .thenReturn(refund());
+
+            assertEquals(2, paymentService.refundCancelledAppointment(appointmentId));
+
+            refunds.verify(() -> Refund.create(any(RefundCreateParams.class), any(RequestOptions.class)), times(2));
+        }
+    }
+
+    @Test
+    void failedRefundStopsTheCancellationAfterTheRefundsAlreadyCreated() throws Exception {
+        UUID appointmentId = UUID.randomUUID();
+        Payment first = payment("pi_1", 3000);
+        Payment second = payment("pi_2", 2000);
+        Payment third = payment("pi_3", 1000);
+        when(paymentRepository.findAllByAppointmentIdAndStatus(appointmentId, PaymentStatus.COMPLETED))
+                .thenReturn(List.of(first, second, third));
+
+        givenStripeCallsPassThrough();
+
+        try (MockedStatic<Refund> refunds = mockStatic(Refund.class)) {
+            refunds.when(() -> Refund.create(any(RefundCreateParams.class), any(RequestOptions.class)))
+                    .thenReturn(refund())
+                    .thenThrow(new ApiConnectionException("connection reset"));
+
+            // L'exception remonte pour que l'annonce soit relivrée
+            assertThrows(StripePaymentException.class,
+                    () -> paymentService.refundCancelledAppointment(appointmentId));
+
+            refunds.verify(() -> Refund.create(argThat(hasPaymentIntent("pi_1")), any(RequestOptions.class)));
+            refunds.verify(() -> Refund.create(argThat(hasPaymentIntent("pi_2")), any(RequestOptions.class)));
+            refunds.verify(() -> Refund.create(argThat(hasPaymentIntent("pi_3")), any(RequestOptions.class)),
+                    never());
+        }
+    }
+
+    @Test
+    void cancellationRefundSendsOnlyTheLineAmountForASharedPaymentIntent() throws Exception {
+        Payment payment = payment(3000, 0, PaymentStatus.COMPLETED);
+        payment.setAppointmentId(UUID.randomUUID());
+        when(paymentRepository.findAllByAppointmentIdAndStatus(payment.getAppointmentId(), PaymentStatus.COMPLETED))
+                .thenReturn(List.of(payment));
+        when(paymentRepository.findById(payment.getId())).thenReturn(Optional.of(payment));
+        when(paymentRepository.countByStripePaymentIntentId(PAYMENT_INTENT_ID)).thenReturn(3L);
+        givenRefundRecorded(payment, 3000, PaymentStatus.REFUNDED);
+
+        givenStripeCallsPassThrough();
+
+        try (MockedStatic<Refund> refunds = mockStatic(Refund.class)) {
+            refunds.when(() -> Refund.create(any(RefundCreateParams.class), any(RequestOptions.class)))
+                    .thenReturn(refund());
+
+            paymentService.refundCancelledAppointment(payment.getAppointmentId());
+
+            // Sans montant, Stripe rembourserait tout le PaymentIntent partagé par les autres lignes
+            refunds.verify(() -> Refund.create(argThat((RefundCreateParams params) ->
+                    PAYMENT_INTENT_ID.equals(params.getPaymentIntent()) && params.getAmount() == 3000L),
+                    any(RequestOptions.class)));
+        }
+        assertEquals(PaymentStatus.REFUNDED, payment.getStatus());
+        assertEquals(CHARGE_ID, payment.getStripeChargeId());
+        verify(paymentOutboxService).enqueue(eq("payment.exchange"), eq("payment.refunded"), any());
+        verify(paymentLookupCache).invalidate(payment);
+    }
+
+    @Test
+    void partialRefundOnSharedPaymentIntentKeepsTheLineCompleted() throws Exception {
+        Payment payment = payment(3000, 0, PaymentStatus.COMPLETED);
+        when(paymentRepository.findById(payment.getId())).thenReturn(Optional.of(payment));
+        when(paymentRepository.countByStripePaymentIntentId(PAYMENT_INTENT_ID)).thenReturn(2L);
+        givenRefundRecorded(payment, 1000, PaymentStatus.COMPLETED);
+
+        givenStripeCallsPassThrough();
+
+        try (MockedStatic<Refund> refunds = mockStatic(Refund.class)) {
+            refunds.when(() -> Refund.create(any(RefundCreateParams.class), any(RequestOptions.class)))
+                    .thenReturn(refund());
+
+            paymentService.refundPayment(payment.getId(), 1000);
+        }
+
+        assertEquals(PaymentStatus.COMPLETED, payment.getStatus());
+        assertEquals(1000, payment.getRefundedAmount());
+        verify(shopRevenueService).recordRefunded(payment, 1000);
+        verify(paymentOutboxService, never()).enqueue(any(), any(), any());
+    }
+
+    @Test
+    void refundCoveringTheRemainderMarksTheLineRefunded() throws Exception {
+        Payment payment = payment(3000, 2000, PaymentStatus.COMPLETED);
+        when(paymentRepository.findById(payment.getId())).thenReturn(Optional.of(payment));
+        when(paymentRepository.countByStripePaymentIntentId(PAYMENT_INTENT_ID)).thenReturn(2L);
+        givenRefundRecorded(payment, 1000, PaymentStatus.REFUNDED);
+
+        givenStripeCallsPassThrough();
+
+        try (MockedStatic<Refund> refunds = mockStatic(Refund.class)) {
+            refunds.when(() -> Refund.create(any(RefundCreateParams.class), any(RequestOptions.class)))
+                    .thenReturn(refund());
+
+            paymentService.refundPayment(payment.getId(), 1000);
+        }
+
+        assertEquals(PaymentStatus.REFUNDED, payment.getStatus());
+        assertEquals(3000, payment.getRefundedAmount());
+        verify(paymentOutboxService).enqueue(eq("payment.exchange"), eq("payment.refunded"), any());
+    }
+
+    @Test
+    void refundAboveTheRemainingAmountIsRejectedBeforeCallingStripe() {
+        Payment payment = payment(3000, 2500, PaymentStatus.COMPLETED);
+        when(paymentRepository.findById(payment.getId())).thenReturn(Optional.of(payment));
+
+        try (MockedStatic<Refund> refunds = mockStatic(Refund.class)) {
+            UUID paymentId = payment.getId();
+            assertThrows(IllegalArgumentException.class, () -> paymentService.refundPayment(paymentId, 1000));
+            refunds.verifyNoInteractions();
+        }
+    }
+
+    @Test
+    void refundOfANonCompletedPaymentIsRejected() {
+        Payment payment = payment(3000, 0, PaymentStatus.PENDING);
+        when(paymentRepository.findById(payment.getId())).thenReturn(Optional.of(payment));
+
+        try (MockedStatic<Refund> refunds = mockStatic(Refund.class)) {
+            UUID paymentId = payment.getId();
+            assertThrows(IllegalArgumentException.class, () -> paymentService.refundPayment(paymentId, 1000));
+            refunds.verifyNoInteractions();
+        }
+    }
+
+    @Test
+    void refundOfASinglePaymentIsRecordedByTheWebhook() throws Exception {
+        Payment payment = payment(3000, 0, PaymentStatus.COMPLETED);
+        when(paymentRepository.findById(payment.getId())).thenReturn(Optional.of(payment));
+        when(paymentRepository.countByStripePaymentIntentId(PAYMENT_INTENT_ID)).thenReturn(1L);
+
+        givenStripeCallsPassThrough();
+
+        try (MockedStatic<Refund> refunds = mockStatic(Refund.class)) {
+            refunds.when(() -> Refund.create(any(RefundCreateParams.class), any(RequestOptions.class)))
+                    .thenReturn(refund());
+
+            paymentService.refundPayment(payment.getId(), 1000);
+        }
+
+        verify(paymentRepository, never()).recordRefund(any(), any(), anyLong(), any(), any(), any());
+        assertEquals(0, payment.getRefundedAmount());
+    }
+
+    @Test
+    void partialChargeRefundedWebhookAddsOnlyTheNewlyRefundedAmount() {
+        Payment payment = payment(3000, 1000, PaymentStatus.COMPLETED);
+        when(paymentRepository.findAllByStripeChargeId(CHARGE_ID)).thenReturn(List.of(payment));
+        when(paymentRepository.findById(payment.getId())).thenReturn(Optional.of(payment));
+        givenRefundRecorded(payment, 500, PaymentStatus.COMPLETED);
+
+        paymentService.handlePaymentRefunded(CHARGE_ID, PAYMENT_INTENT_ID, 1500, false);
+
+        assertEquals(1500, payment.getRefundedAmount());
+        assertEquals(PaymentStatus.COMPLETED, payment.getStatus());
+        verify(shopRevenueService).recordRefunded(payment, 500);
+    }
+
+    @Test
+    void refundIsRecomputedOnTheLockedRowWhenTheLineChangedMeanwhile() {
+        Payment stale = payment(3000, 0, PaymentStatus.COMPLETED);
+        Payment current = payment(3000, 1000, PaymentStatus.COMPLETED);
+        current.setId(stale.getId());
+        current.setVersion(1L);
+        when(paymentRepository.findAllByStripeChargeId(CHARGE_ID)).thenReturn(List.of(stale));
+        when(paymentRepository.findById(stale.getId())).thenReturn(Optional.of(stale));
+        when(paymentRepository.findByIdForUpdate(stale.getId())).thenReturn(Optional.of(current));
+        // Un autre remboursement a modifié la ligne entre la lecture et l'UPDATE
+        when(paymentRepository.recordRefund(eq(stale.getId()), eq(0L), anyLong(), any(), any(), any()))
+                .thenReturn(0);
+        when(paymentRepository.recordRefund(eq(stale.getId()), eq(1L), eq(500L), eq(PaymentStatus.COMPLETED),
+                eq(CHARGE_ID), any())).thenReturn(1);
+
+        paymentService.handlePaymentRefunded(CHARGE_ID, PAYMENT_INTENT_ID, 1500, false);
+
+        // Seule la part pas encore enregistrée sur la ligne relue est ajoutée
+        verify(shopRevenueService).recordRefunded(current, 500);
+        verify(shopRevenueService, never()).recordRefunded(eq(stale), anyLong());
+        assertEquals(1500, current.getRefundedAmount());
+    }
+
+    @Test
+    void checkoutAlreadyCompletedIsNotRecordedTwice() {
+        Payment payment = payment(3000, 0, PaymentStatus.COMPLETED);
+        payment.setStripeSessionId("cs_1");
+        when(paymentRepository.findAllByStripeSessionId("cs_1")).thenReturn(List.of(payment));
+        // La redirection ou une autre livraison du webhook a déjà fait la transition
+        when(paymentRepository.transitionSessionStatus(eq("cs_1"), eq(PaymentStatus.PENDING),
+                eq(PaymentStatus.COMPLETED), any())).thenReturn(0);
+
+        paymentService.handleCheckoutCompleted("cs_1");
+
+        verifyNoInteractions(shopRevenueService, paymentOutboxService, paymentLookupCache);
+    }
+
+    @Test
+    void partialRefundOnSharedChargeDoesNotTouchTheLines() {
+        Payment first = payment(3000, 1000, PaymentStatus.COMPLETED);
+        Payment second = payment(2000, 0, PaymentStatus.COMPLETED);
+        when(paymentRepository.findAllByStripeChargeId(CHARGE_ID)).thenReturn(List.of(first, second));
+
+        paymentService.handlePaymentRefunded(CHARGE_ID, PAYMENT_INTENT_ID, 1000, false);
+
+        verify(paymentRepository, never()).recordRefund(any(), any(), anyLong(), any(), any(), any());
+        verifyNoInteractions(shopRevenueService);
+    }
+
+    @Test
+    void pageReadsOneExtraRowAndReturnsACursorOnTheLastItem() {
+        UUID shopId = UUID.randomUUID();
+        List<PaymentSummaryDto> rows = summaries(3);
+        when(paymentRepository.findShopPaymentSummaries(shopId, null, null, null, null, 3)).thenReturn(rows);
+
+        PaymentPageDto page = paymentService.listShopPayments(shopId, null, null, null, null, 2);
+
+        assertEquals(rows.subList(0, 2), page.getItems());
+        assertEquals(PaymentCursor.of(rows.get(1)).encode(), page.getNextCursor());
+    }
+
+    @Test
+    void nextPageStartsAfterTheCursor() {
+        UUID shopId = UUID.randomUUID();
+        List<PaymentSummaryDto> rows = summaries(1);
+        PaymentCursor cursor = new PaymentCursor(LocalDateTime.of(2024, 3, 1, 10, 0), UUID.randomUUID());
+        when(paymentRepository.findShopPaymentSummaries(shopId, PaymentStatus.COMPLETED, null, null, cursor, 3))
+                .thenReturn(rows);
+
+        PaymentPageDto page = paymentService.listShopPayments(shopId, PaymentStatus.COMPLETED, null, null,
+                cursor.encode(), 2);
+
+        // Moins de lignes que demandé : dernière page
+        assertEquals(rows, page.getItems());
+        assertNull(page.getNextCursor());
+    }
+
+    @Test
+    void pageSizeIsClampedToTheConfiguredMaximum() {
+        UUID shopId = UUID.randomUUID();
+
+        paymentService.listShopPayments(shopId, null, null, null, null, 10_000);
+        paymentService.listShopPayments(shopId, null, null, null, null, 0);
+
+        verify(paymentRepository).findShopPaymentSummaries(shopId, null, null, null, null, 101);
+        verify(paymentRepository).findShopPaymentSummaries(shopId, null, null, null, null, 2);
+    }
+
+    private void givenStripeCallsPassThrough() throws Exception {
+        // Le rate limiter exécute directement l'appel Stripe (mocké)
+        when(stripeRateLimiter.write(isNull(), any())).thenAnswer(invocation ->
+                invocation.<StripeRateLimiter.StripeCall<Refund>>getArgument(1).call());
+    }
+
+    private void givenRefundRecorded(Payment payment, long refunded, PaymentStatus status) {
+        when(paymentRepository.recordRefund(eq(payment.getId()), eq(0L), eq(refunded), eq(status), eq(CHARGE_ID),
+                any())).thenReturn(1);
+    }
+
+    private static ArgumentMatcher<RefundCreateParams> hasPaymentIntent(String paymentIntentId) {
+        return params -> params != null && paymentIntentId.equals(params.getPaymentIntent());
+    }
+
+    private static Payment payment(String paymentIntentId, long amount) {
+        Payment payment = new Payment();
+        payment.setId(UUID.randomUUID());
+        payment.setAmount(amount);
+        payment.setCurrency("eur");
+        payment.setUserId(UUID.randomUUID());
+        payment.setShopId(UUID.randomUUID());
+        payment.setStatus(PaymentStatus.COMPLETED);
+        payment.setStripePaymentIntentId(paymentIntentId);
+        payment.setCreatedAt(LocalDateTime.now());
+        payment.setUpdatedAt(LocalDateTime.now());
+        payment.setVersion(0L);
+        return payment;
+    }
+
+    private static Payment payment(long amount, long refundedAmount, PaymentStatus status) {
+        Payment payment = payment(PAYMENT_INTENT_ID, amount);
+        payment.setRefundedAmount(refundedAmount);
+        payment.setStatus(status);
+        return payment;
+    }
+
+    private static List<PaymentSummaryDto> summaries(int count) {
+        List<PaymentSummaryDto> summaries = new ArrayList<>();
+        LocalDateTime createdAt = LocalDateTime.of(2024, 3, 1, 10, 0);
+        for (int i = 0; i < count; i++) {
+            summaries.add(new PaymentSummaryDto(UUID.randomUUID(), UUID.randomUUID(), UUID.randomUUID(), null, null,
+                    1000, 0, "eur", PaymentStatus.COMPLETED, createdAt.minusMinutes(i)));
+        }
+        return summaries;
+    }
+
+    private static Refund refund() {
+        Refund refund = new Refund();
+        refund.setId("re_test");
+        refund.setCharge(CHARGE_ID);
+        return refund;
+    }
+}
@@ -0,0 +1,130 @@
+package com.etna.gpe.ms_payment_api.services;
+
+import com.etna.gpe.ms_payment_api.entity.RefundJobItem;
+import com.etna.gpe.ms_payment_api.enums.RefundItemStatus;
+import com.etna.gpe.ms_payment_api.exceptions.StripePaymentException;
+import com.etna.gpe.ms_payment_api.repositories.PaymentRepository;
+import com.etna.gpe.ms_payment_api.repositories.RefundJobItemRepository;
+import com.etna.gpe.ms_payment_api.repositories.RefundJobRepository;
+import com.stripe.exception.ApiConnectionException;
+import com.stripe.exception.RateLimitException;
+import io.github.resilience4j.ratelimiter.RateLimiter;
+import io.github.resilience4j.ratelimiter.RateLimiterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.UUID;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests du worker des remboursements en masse : backoff des lignes en échec temporaire, échecs définitifs.
+ */
+@ExtendWith(MockitoExtension.class)
+class RefundJobServiceTest {
+
+    @Mock
+    private RefundJobRepository refundJobRepository;
+    @Mock
+    private RefundJobItemRepository refundJobItemRepository;
+    @Mock
+    private PaymentRepository paymentRepository;
+    @Mock
+    private PaymentService paymentService;
+    @Mock
+    private RateLimiterRegistry rateLimiterRegistry;
+
+    private RefundJobService refundJobService;
+
+    @BeforeEach
+    void setUp() {
+        RateLimiter rateLimiter = mock(RateLimiter.class);
+        when(rateLimiter.acquirePermission()).thenReturn(true);
+        when(rateLimiterRegistry.rateLimiter(RefundJobService.STRIPE_REFUNDS)).thenReturn(rateLimiter);
+        refundJobService = new RefundJobService(refundJobRepository, refundJobItemRepository, paymentRepository,
+                paymentService, rateLimiterRegistry, new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(refundJobService, "batchSize", 100);
+        ReflectionTestUtils.setField(refundJobService, "maxAttempts", 5);
+        ReflectionTestUtils.setField(refundJobService, "initialBackoffMs", 1000L);
+        ReflectionTestUtils.setField(refundJobService, "maxBackoffMs", 60000L);
+        // Exécution dans le thread du test
+        ReflectionTestUtils.setField(refundJobService, "executor", new ThreadPoolTaskExecutor() {
+            @Override
+            public void execute(Runnable task) {
+                task.run();
+            }
+        });
+    }
+
+    @Test
+    void transientFailureIsRetriedAfterAnExponentialBackoff() {
+        RefundJobItem item = givenClaimedItem(2);
+        when(paymentService.createIdempotentRefund(eq(item.getPaymentId()), eq(1000L), anyString()))
+                .thenThrow(new StripePaymentException("Impossible d'effectuer le remboursement Stripe",
+                        new ApiConnectionException("connection reset")));
+
+        LocalDateTime before = LocalDateTime.now();
+        refundJobService.drainQueue();
+
+        // Troisième échec : 4 s avant la tentative suivante
+        verify(refundJobItemRepository).recordFailure(eq(item.getId()), eq(RefundItemStatus.PENDING), any(),
+                argThat(next -> !next.isBefore(before.plusSeconds(4)) && next.isBefore(before.plusSeconds(5))),
+                any());
+    }
+
+    @Test
+    void stripeRateLimitIsRetriedEvenThoughItIsAnInvalidRequest() {
+        RefundJobItem item = givenClaimedItem(0);
+        when(paymentService.createIdempotentRefund(eq(item.getPaymentId()), eq(1000L), anyString()))
+                .thenThrow(new StripePaymentException("Impossible d'effectuer le remboursement Stripe",
+                        new RateLimitException("Too many requests", null, "req_1", null, 429, null)));
+
+        refundJobService.drainQueue();
+
+        verify(refundJobItemRepository).recordFailure(eq(item.getId()), eq(RefundItemStatus.PENDING), any(),
+                any(LocalDateTime.class), any());
+    }
+
+    @Test
+    void paymentNoLongerRefundableFailsWithoutRetry() {
+        RefundJobItem item = givenClaimedItem(0);
+        when(paymentService.createIdempotentRefund(eq(item.getPaymentId()), anyLong(), anyString()))
+                .thenThrow(new IllegalArgumentException("Seul un paiement complété peut être remboursé"));
+
+        refundJobService.drainQueue();
+
+        verify(refundJobItemRepository).recordFailure(eq(item.getId()), eq(RefundItemStatus.FAILED), any(),
+                isNull(), any());
+    }
+
+    private RefundJobItem givenClaimedItem(int attempts) {
+        RefundJobItem item = new RefundJobItem();
+        item.setId(UUID.randomUUID());
+        item.setJobId(UUID.randomUUID());
+        item.setPaymentId(UUID.randomUUID());
+        item.setAmount(1000);
+        item.setStatus(RefundItemStatus.PENDING);
+        item.setAttempts(attempts);
+        when(refundJobItemRepository.findReady(eq(RefundItemStatus.PENDING), any(), any()))
+                .thenReturn(List.of(item));
+        when(refundJobItemRepository.transition(eq(item.getId()), eq(RefundItemStatus.PENDING),
+                eq(RefundItemStatus.PROCESSING), any(), any())).thenReturn(1);
+        return item;
+    }
+}
@@ -0,0 +1,111 @@
+package com.etna.gpe.ms_payment_api.services;
+
+import com.etna.gpe.ms_payment_api.config.StripeFeeConfig;
+import com.etna.gpe.ms_payment_api.entity.Payment;
+import com.etna.gpe.ms_payment_api.enums.PaymentStatus;
+import com.etna.gpe.ms_payment_api.repositories.ShopDailyRevenueRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.UUID;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+/**
+ * Tests des montants ajoutés à l'agrégat journalier.
+ */
+@ExtendWith(MockitoExtension.class)
+class ShopRevenueServiceTest {
+
+    @Mock
+    private ShopDailyRevenueRepository shopDailyRevenueRepository;
+
+    private ShopRevenueService shopRevenueService;
+
+    @BeforeEach
+    void setUp() {
+        StripeFeeConfig stripeFeeConfig = new StripeFeeConfig();
+        ReflectionTestUtils.setField(stripeFeeConfig, "platformFeePercentage", 5.0);
+        shopRevenueService = new ShopRevenueService(shopDailyRevenueRepository, stripeFeeConfig);
+    }
+
+    @Test
+    void completedPaymentRecordsTheGrossAmountAndTheFee() {
+        Payment payment = payment(10000, 0, PaymentStatus.COMPLETED);
+
+        shopRevenueService.recordCompleted(payment);
+
+        verify(shopDailyRevenueRepository).increment(eq(payment.getShopId()), any(), eq("eur"),
+                eq(10000L), eq(500L), eq(0L), eq(1), eq(0));
+    }
+
+    @Test
+    void fullRefundRecordsTheRefundedAmountAndRemovesTheFee() {
+        Payment payment = payment(10000, 0, PaymentStatus.COMPLETED);
+
+        shopRevenueService.recordRefunded(payment, 10000);
+
+        // Frais de 5 % sur 100,00 : 5,00 retirés, un paiement remboursé
+        verify(shopDailyRevenueRepository).increment(eq(payment.getShopId()), any(), eq("eur"),
+                eq(0L), eq(-500L), eq(10000L), eq(0), eq(1));
+    }
+
+    @Test
+    void partialRefundRecordsOnlyTheRefundedAmount() {
+        Payment payment = payment(10000, 0, PaymentStatus.COMPLETED);
+
+        shopRevenueService.recordRefunded(payment, 2500);
+
+        verify(shopDailyRevenueRepository).increment(eq(payment.getShopId()), any(), eq("eur"),
+                eq(0L), eq(-125L), eq(2500L), eq(0), eq(0));
+    }
+
+    @Test
+    void successivePartialRefundsRemoveExactlyTheFee() {
+        // Frais de 5 % sur 0,99 : 5 cents, non divisibles en trois remboursements égaux
+        Payment first = payment(99, 0, PaymentStatus.COMPLETED);
+        Payment second = payment(99, 33, PaymentStatus.COMPLETED);
+        Payment third = payment(99, 66, PaymentStatus.COMPLETED);
+
+        shopRevenueService.recordRefunded(first, 33);
+        shopRevenueService.recordRefunded(second, 33);
+        shopRevenueService.recordRefunded(third, 33);
+
+        verify(shopDailyRevenueRepository).increment(eq(first.getShopId()), any(), eq("eur"),
+                eq(0L), eq(-1L), eq(33L), eq(0), eq(0));
+        verify(shopDailyRevenueRepository).increment(eq(second.getShopId()), any(), eq("eur"),
+                eq(0L), eq(-2L), eq(33L), eq(0), eq(0));
+        verify(shopDailyRevenueRepository).increment(eq(third.getShopId()), any(), eq("eur"),
+                eq(0L), eq(-2L), eq(33L), eq(0), eq(1));
+    }
+
+    @Test
+    void refundOfAPaymentNeverCountedAsCompletedIsIgnored() {
+        Payment payment = payment(10000, 0, PaymentStatus.PENDING);
+
+        shopRevenueService.recordRefunded(payment, 10000);
+
+        verify(shopDailyRevenueRepository, never()).increment(any(), any(), any(),
+                anyLong(), anyLong(), anyLong(), anyInt(), anyInt());
+    }
+
+    private static Payment payment(long amount, long refundedAmount, PaymentStatus status) {
+        Payment payment = new Payment();
+        payment.setId(UUID.randomUUID());
+        payment.setShopId(UUID.randomUUID());
+        payment.setAmount(amount);
+        payment.setRefundedAmount(refundedAmount);
+        payment.setCurrency("eur");
+        payment.setStatus(status);
+        return payment;
+    }
+}
@@ -0,0 +1,187 @@
+package com.etna.gpe.ms_payment_api.services;
+
+import com.etna.gpe.ms_payment_api.entity.StripeWebhookEvent;
+import com.etna.gpe.ms_payment_api.enums.WebhookEventStatus;
+import com.etna.gpe.ms_payment_api.exceptions.StripeThrottledException;
+import com.etna.gpe.ms_payment_api.repositories.StripeWebhookEventRepository;
+import com.stripe.model.Event;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentMatcher;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests de l'inbox des webhooks : réservation et ordre par clé, backoff et différé sans tentative.
+ */
+@ExtendWith(MockitoExtension.class)
+class StripeWebhookInboxServiceTest {
+
+    private static final String ORDERING_KEY = "pi_1";
+
+    @Mock
+    private StripeWebhookEventRepository webhookEventRepository;
+    @Mock
+    private IStripeEventProcessor stripeEventProcessor;
+    @Mock
+    private IProcessedEventService processedEventService;
+
+    private StripeWebhookInboxService inboxService;
+
+    @BeforeEach
+    void setUp() {
+        inboxService = new StripeWebhookInboxService(webhookEventRepository, stripeEventProcessor,
+                processedEventService);
+        ReflectionTestUtils.setField(inboxService, "enabled", true);
+        ReflectionTestUtils.setField(inboxService, "batchSize", 100);
+        ReflectionTestUtils.setField(inboxService, "maxAttempts", 3);
+        ReflectionTestUtils.setField(inboxService, "initialBackoffMs", 1000L);
+        ReflectionTestUtils.setField(inboxService, "maxBackoffMs", 60000L);
+        // Exécution dans le thread du test
+        ReflectionTestUtils.setField(inboxService, "executor", new ThreadPoolTaskExecutor() {
+            @Override
+            public void execute(Runnable task) {
+                task.run();
+            }
+        });
+    }
+
+    @Test
+    void drainOnlyReadsEventsWhoseKeyIsNotBlocked() {
+        inboxService.drainInbox();
+
+        verify(webhookEventRepository).findReady(eq(WebhookEventStatus.PENDING),
+                eq(List.of(WebhookEventStatus.PROCESSING, WebhookEventStatus.FAILED)), any(), any());
+    }
+
+    @Test
+    void eventsOfAKeyAreProcessedInReceptionOrder() {
+        StripeWebhookEvent first = event("evt_1", 0);
+        StripeWebhookEvent second = event("evt_2", 0);
+        givenReady(first, second);
+        givenClaimable("evt_1", "evt_2");
+
+        inboxService.drainInbox();
+
+        InOrder order = inOrder(stripeEventProcessor);
+        order.verify(stripeEventProcessor).process(argThat(hasId("evt_1")));
+        order.verify(stripeEventProcessor).process(argThat(hasId("evt_2")));
+        verify(webhookEventRepository).markProcessed(eq("evt_1"), eq(WebhookEventStatus.PROCESSED), any());
+        verify(webhookEventRepository).markProcessed(eq("evt_2"), eq(WebhookEventStatus.PROCESSED), any());
+    }
+
+    @Test
+    void claimStopsAtTheFirstEventTakenByAnotherInstance() {
+        StripeWebhookEvent first = event("evt_1", 0);
+        StripeWebhookEvent second = event("evt_2", 0);
+        StripeWebhookEvent third = event("evt_3", 0);
+        givenReady(first, second, third);
+        givenClaimable("evt_1");
+        // evt_2 est déjà réservé par une autre instance
+        lenient().when(webhookEventRepository.transition(eq("evt_2"), eq(WebhookEventStatus.PENDING),
+                eq(WebhookEventStatus.PROCESSING), any())).thenReturn(0);
+
+        inboxService.drainInbox();
+
+        verify(webhookEventRepository, never()).transition(eq("evt_3"), any(), any(), any());
+        verify(stripeEventProcessor).process(argThat(hasId("evt_1")));
+        verify(stripeEventProcessor, never()).process(argThat(hasId("evt_3")));
+    }
+
+    @Test
+    void failedEventIsRetriedAfterABackoffAndHoldsTheFollowingEvents() {
+        StripeWebhookEvent first = event("evt_1", 1);
+        StripeWebhookEvent second = event("evt_2", 0);
+        givenReady(first, second);
+        givenClaimable("evt_1", "evt_2");
+        doThrow(new IllegalStateException("boom")).when(stripeEventProcessor).process(argThat(hasId("evt_1")));
+
+        LocalDateTime before = LocalDateTime.now();
+        inboxService.drainInbox();
+
+        // Deuxième échec : 2 s avant la tentative suivante
+        verify(webhookEventRepository).recordFailure(eq("evt_1"), eq(WebhookEventStatus.PENDING), eq("boom"),
+                argThat(next -> !next.isBefore(before.plusSeconds(2)) && next.isBefore(before.plusSeconds(3))));
+        verify(webhookEventRepository).transition("evt_2", WebhookEventStatus.PROCESSING,
+                WebhookEventStatus.PENDING, null);
+        verify(stripeEventProcessor, never()).process(argThat(hasId("evt_2")));
+    }
+
+    @Test
+    void eventIsMarkedFailedAfterTheLastAttempt() {
+        StripeWebhookEvent event = event("evt_1", 2);
+        givenReady(event);
+        givenClaimable("evt_1");
+        doThrow(new IllegalStateException("boom")).when(stripeEventProcessor).process(any());
+
+        inboxService.drainInbox();
+
+        verify(webhookEventRepository).recordFailure(eq("evt_1"), eq(WebhookEventStatus.FAILED), eq("boom"),
+                isNull());
+    }
+
+    @Test
+    void throttledEventIsDeferredWithoutCountingAnAttempt() {
+        StripeWebhookEvent event = event("evt_1", 0);
+        givenReady(event);
+        givenClaimable("evt_1");
+        doThrow(new StripeThrottledException("throttled", Duration.ofSeconds(5)))
+                .when(stripeEventProcessor).process(any());
+
+        LocalDateTime before = LocalDateTime.now();
+        inboxService.drainInbox();
+
+        verify(webhookEventRepository).defer(eq("evt_1"), eq(WebhookEventStatus.PENDING),
+                argThat(next -> !next.isBefore(before.plusSeconds(5))));
+        verify(webhookEventRepository, never()).recordFailure(anyString(), any(), any(), any());
+    }
+
+    private void givenReady(StripeWebhookEvent... events) {
+        when(webhookEventRepository.findReady(eq(WebhookEventStatus.PENDING), any(), any(), any()))
+                .thenReturn(List.of(events));
+    }
+
+    private void givenClaimable(String... eventIds) {
+        for (String eventId : eventIds) {
+            // lenient : la libération des événements suivants passe par la même méthode
+            lenient().when(webhookEventRepository.transition(eq(eventId), eq(WebhookEventStatus.PENDING),
+                    eq(WebhookEventStatus.PROCESSING), any())).thenReturn(1);
+        }
+    }
+
+    private static ArgumentMatcher<Event> hasId(String eventId) {
+        return event -> event != null && eventId.equals(event.getId());
+    }
+
+    private static StripeWebhookEvent event(String eventId, int attempts) {
+        StripeWebhookEvent event = new StripeWebhookEvent();
+        event.setEventId(eventId);
+        event.setEventType("charge.refunded");
+        event.setOrderingKey(ORDERING_KEY);
+        event.setPayload("{\"id\":\"" + eventId + "\",\"object\":\"event\",\"type\":\"charge.refunded\"}");
+        event.setStatus(WebhookEventStatus.PENDING);
+        event.setAttempts(attempts);
+        event.setReceivedAt(LocalDateTime.now());
+        return event;
+    }
+}